@@ -38,8 +38,11 @@ import net.sourceforge.pmd.lang.LanguageVersionHandler;
 import net.sourceforge.pmd.lang.Parser;
 import net.sourceforge.pmd.lang.ParserOptions;
 import net.sourceforge.pmd.processor.AbstractPMDProcessor;
+import net.sourceforge.pmd.processor.BoundedMultiThreadProcessor;
+import net.sourceforge.pmd.processor.ForkJoinProcessor;
 import net.sourceforge.pmd.processor.MonoThreadProcessor;
 import net.sourceforge.pmd.processor.MultiThreadProcessor;
+import net.sourceforge.pmd.processor.VirtualThreadProcessor;
 import net.sourceforge.pmd.renderers.Renderer;
 import net.sourceforge.pmd.stat.Metric;
 import net.sourceforge.pmd.util.ClasspathClassLoader;
@@ -346,7 +349,28 @@ public class PMD {
      * "-threads 0" command line option.
      */
     private static AbstractPMDProcessor newFileProcessor(final PMDConfiguration configuration) {
-        return configuration.getThreads() > 0 ? new MultiThreadProcessor(configuration) : new MonoThreadProcessor(configuration);
+        if (configuration.getThreads() <= 0) {
+            return new MonoThreadProcessor(configuration);
+        }
+        if ((configuration.isVirtualThreads() ? 1 : 0) + (configuration.isScheduleByCost() ? 1 : 0)
+                + (configuration.getMaxFilesInFlight() > 0 ? 1 : 0) > 1) {
+            LOG.warning("Virtual threads, scheduling by cost and a maximum number of files in flight can't be "
+                    + "combined, only the first of them is used");
+        }
+        if (configuration.isVirtualThreads()) {
+            if (VirtualThreadProcessor.isSupported()) {
+                return new VirtualThreadProcessor(configuration);
+            }
+            LOG.warning("Virtual threads are not supported by this Java runtime, using "
+                    + configuration.getThreads() + " threads instead");
+        }
+        if (configuration.isScheduleByCost()) {
+            return new ForkJoinProcessor(configuration);
+        }
+        if (configuration.getMaxFilesInFlight() > 0) {
+            return new BoundedMultiThreadProcessor(configuration);
+        }
+        return new MultiThreadProcessor(configuration);
     }
 
     /**
@@ -11,8 +11,11 @@ import java.util.List;
 import java.util.Properties;
 
 import net.sourceforge.pmd.cache.AnalysisCache;
+import net.sourceforge.pmd.cache.DirectoryAnalysisCacheBackend;
 import net.sourceforge.pmd.cache.FileAnalysisCache;
 import net.sourceforge.pmd.cache.NoopAnalysisCache;
+import net.sourceforge.pmd.cache.SharedAnalysisCache;
+import net.sourceforge.pmd.lang.Language;
 import net.sourceforge.pmd.lang.LanguageRegistry;
 import net.sourceforge.pmd.lang.LanguageVersion;
 import net.sourceforge.pmd.lang.LanguageVersionDiscoverer;
@@ -31,6 +34,15 @@ import net.sourceforge.pmd.util.IOUtil;
  * defaults to {@link PMD#SUPPRESS_MARKER}. {@link #getSuppressMarker()}</li>
  * <li>The number of threads to create when invoking on multiple files, defaults
  * one thread per available processor. {@link #getThreads()}</li>
+ * <li>The maximum number of files, that are analyzed or waiting to be rendered
+ * at the same time, defaults to unbounded. {@link #getMaxFilesInFlight()}</li>
+ * <li>An indicator of whether the files should be scheduled by their expected
+ * cost, most expensive first, defaults to <code>false</code>. {@link #isScheduleByCost()}</li>
+ * <li>An indicator of whether the source files should be read on virtual threads,
+ * defaults to <code>false</code>. {@link #isVirtualThreads()}</li>
+ * <li>The number of threads to apply the thread-safe rules to a single file
+ * concurrently, defaults to <code>0</code>, which applies the rules one
+ * after another. {@link #getRuleThreads()}</li>
  * <li>A ClassLoader to use when loading classes during Rule processing (e.g.
  * during type resolution), defaults to ClassLoader of the Configuration class.
  * {@link #getClassLoader()}</li>
@@ -83,6 +95,10 @@ public class PMDConfiguration extends AbstractConfiguration {
     // General behavior options
     private String suppressMarker = PMD.SUPPRESS_MARKER;
     private int threads = Runtime.getRuntime().availableProcessors();
+    private int maxFilesInFlight = 0;
+    private boolean scheduleByCost = false;
+    private boolean virtualThreads = false;
+    private int ruleThreads = 0;
     private ClassLoader classLoader = getClass().getClassLoader();
     private LanguageVersionDiscoverer languageVersionDiscoverer = new LanguageVersionDiscoverer();
 
@@ -147,6 +163,107 @@ public class PMDConfiguration extends AbstractConfiguration {
         this.threads = threads;
     }
 
+    /**
+     * Get the maximum number of files, that are analyzed or whose reports are
+     * waiting to be rendered at the same time. A value of <code>0</code>
+     * means, that there is no limit and all files are submitted at once.
+     *
+     * @return The maximum number of files in flight.
+     */
+    public int getMaxFilesInFlight() {
+        return maxFilesInFlight;
+    }
+
+    /**
+     * Set the maximum number of files, that are analyzed or whose reports are
+     * waiting to be rendered at the same time. If set to a positive value,
+     * the report of each file is rendered as soon as it is available, which
+     * keeps the memory usage constant regardless of the number of files.
+     * The value is only considered, if more than one thread is used. Values
+     * below the number of threads are raised to the number of threads, so
+     * that every thread has a file to analyze.
+     *
+     * @param maxFilesInFlight
+     *            The maximum number of files in flight, <code>0</code> for no limit.
+     */
+    public void setMaxFilesInFlight(int maxFilesInFlight) {
+        this.maxFilesInFlight = maxFilesInFlight;
+    }
+
+    /**
+     * Return whether the files are scheduled by their expected cost, the most
+     * expensive files first.
+     *
+     * @return <code>true</code> if the files are scheduled by their cost.
+     */
+    public boolean isScheduleByCost() {
+        return scheduleByCost;
+    }
+
+    /**
+     * Set whether the files are scheduled by their expected cost, the most
+     * expensive files first. This avoids that a single big file is analyzed
+     * at the end, while the other threads are idle. The cost of a file is
+     * its size, files which are unchanged according to the analysis cache
+     * are scheduled last. The value is only considered, if more than one
+     * thread is used.
+     *
+     * @param scheduleByCost
+     *            <code>true</code> to schedule the files by their cost.
+     */
+    public void setScheduleByCost(boolean scheduleByCost) {
+        this.scheduleByCost = scheduleByCost;
+    }
+
+    /**
+     * Return whether the source files are read on virtual threads.
+     *
+     * @return <code>true</code> if virtual threads are used.
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Set whether the source files are read on virtual threads. Blocking
+     * I/O, e.g. when reading from a database, doesn't occupy one of the
+     * analysis threads then. The analysis itself uses one thread per available
+     * processor. If the Java runtime doesn't support virtual threads, the
+     * configured number of threads is used as before. The value is only
+     * considered, if more than one thread is used.
+     *
+     * @param virtualThreads
+     *            <code>true</code> to use virtual threads.
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Get the number of threads used to apply the rules to a single file
+     * concurrently. A value of <code>0</code> means, that the rules are applied
+     * one after another.
+     *
+     * @return The number of threads applying the rules of a file.
+     */
+    public int getRuleThreads() {
+        return ruleThreads;
+    }
+
+    /**
+     * Set the number of threads used to apply the rules to a single file
+     * concurrently. The threads are shared by all files. Only rule chain rules,
+     * that are annotated with {@link net.sourceforge.pmd.lang.rule.ThreadSafe},
+     * are applied concurrently, the other rules are still applied one after
+     * another. This helps, if a few big files take much longer than the rest.
+     *
+     * @param ruleThreads
+     *            The number of threads, <code>0</code> to apply the rules one after another.
+     */
+    public void setRuleThreads(int ruleThreads) {
+        this.ruleThreads = ruleThreads;
+    }
+
     /**
      * Get the ClassLoader being used by PMD when processing Rules.
      *
@@ -240,17 +357,19 @@ public class PMDConfiguration extends AbstractConfiguration {
      *
      * @param fileName
      *            Name of the file, can be absolute, or simple.
-     * @return the LanguageVersion
+     * @return the LanguageVersion, or null if the file is unrecognized and
+     *            java isn't available
      */
     // FUTURE Delete this? I can't think of a good reason to keep it around.
     // Failure to determine the LanguageVersion for a file should be a hard
     // error, or simply cause the file to be skipped?
     public LanguageVersion getLanguageVersionOfFile(String fileName) {
         LanguageVersion languageVersion = languageVersionDiscoverer.getDefaultLanguageVersionForFile(fileName);
-        if (languageVersion == null) {
+        Language java = LanguageRegistry.getLanguage("Java");
+        if (languageVersion == null && java != null) {
             // For compatibility with older code that does not always pass in
             // a correct filename.
-            languageVersion = languageVersionDiscoverer.getDefaultLanguageVersion(LanguageRegistry.getLanguage("Java"));
+            languageVersion = languageVersionDiscoverer.getDefaultLanguageVersion(java);
         }
         return languageVersion;
     }
@@ -620,6 +739,21 @@ public class PMDConfiguration extends AbstractConfiguration {
                                  : new FileAnalysisCache(new File(cacheLocation)));
     }
 
+    /**
+     * Sets the location of a shared analysis cache to be used. The cache is stored
+     * in the given directory, which may be shared by several analyses, e.g. of
+     * different branches or on different machines.
+     *
+     * @param cacheDirectory The directory of the shared analysis cache
+     *
+     * @see SharedAnalysisCache
+     */
+    public void setSharedAnalysisCacheLocation(final String cacheDirectory) {
+        setAnalysisCache(cacheDirectory == null
+                                 ? new NoopAnalysisCache()
+                                 : new SharedAnalysisCache(new DirectoryAnalysisCacheBackend(new File(cacheDirectory)), this));
+    }
+
 
     /**
      * Sets whether the user has explicitly disabled incremental analysis or not.
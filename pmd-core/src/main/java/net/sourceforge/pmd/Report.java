@@ -34,15 +34,17 @@ import net.sourceforge.pmd.util.NumericConstants;
 public class Report implements Iterable<RuleViolation> {
 
     /*
-     * The idea is to store the violations in a tree instead of a list, to do
-     * better and faster sort and filter mechanism and to visualize the result
-     * as tree. (ide plugins).
+     * The violations are additionally stored in a tree, to visualize the result
+     * as tree (ide plugins). As it is rarely used, the tree is only built, when
+     * it is requested.
      */
-    private final ReportTree violationTree = new ReportTree();
+    private ReportTree violationTree;
 
-    // Note that this and the above data structure are both being maintained for
-    // a bit
-    private final List<RuleViolation> violations = new ArrayList<>();
+    /*
+     * The violations are only appended while they are collected, they are sorted
+     * once they are requested.
+     */
+    private final ViolationStore violations = new ViolationStore(RuleViolationComparator.INSTANCE);
     private final Set<Metric> metrics = new HashSet<>();
     private final List<ThreadSafeReportListener> listeners = new ArrayList<>();
     private List<ProcessingError> errors;
@@ -261,7 +263,7 @@ public class Report implements Iterable<RuleViolation> {
      */
     public Map<String, Integer> getCountSummary() {
         Map<String, Integer> summary = new HashMap<>();
-        for (RuleViolation rv : violationTree) {
+        for (RuleViolation rv : getViolationTree()) {
             String key = keyFor(rv);
             Integer o = summary.get(key);
             summary.put(key, o == null ? NumericConstants.ONE : o + 1);
@@ -270,6 +272,13 @@ public class Report implements Iterable<RuleViolation> {
     }
 
     public ReportTree getViolationTree() {
+        if (violationTree == null) {
+            // the violations are added in the same order, as if the tree had been built all along
+            violationTree = new ReportTree();
+            for (Iterator<RuleViolation> i = violations.insertionOrderIterator(); i.hasNext();) {
+                violationTree.addRuleViolation(i.next());
+            }
+        }
         return this.violationTree;
     }
 
@@ -326,14 +335,19 @@ public class Report implements Iterable<RuleViolation> {
             return;
         }
 
-        int index = Collections.binarySearch(violations, violation, RuleViolationComparator.INSTANCE);
-        violations.add(index < 0 ? -index - 1 : index, violation);
-        violationTree.addRuleViolation(violation);
+        addToViolations(violation);
         for (ThreadSafeReportListener listener : listeners) {
             listener.ruleViolationAdded(violation);
         }
     }
 
+    private void addToViolations(RuleViolation violation) {
+        violations.add(violation);
+        if (violationTree != null) {
+            violationTree.addRuleViolation(violation);
+        }
+    }
+
     /**
      * Adds a new metric to the report and notify the listeners
      *
@@ -400,10 +414,7 @@ public class Report implements Iterable<RuleViolation> {
         }
         Iterator<RuleViolation> v = r.iterator();
         while (v.hasNext()) {
-            RuleViolation violation = v.next();
-            int index = Collections.binarySearch(violations, violation, RuleViolationComparator.INSTANCE);
-            violations.add(index < 0 ? -index - 1 : index, violation);
-            violationTree.addRuleViolation(violation);
+            addToViolations(v.next());
         }
         Iterator<SuppressedViolation> s = r.getSuppressedRuleViolations().iterator();
         while (s.hasNext()) {
@@ -437,7 +448,7 @@ public class Report implements Iterable<RuleViolation> {
     }
 
     public boolean isEmpty() {
-        return !violations.iterator().hasNext() && !hasErrors();
+        return violations.isEmpty() && !hasErrors();
     }
 
     /**
@@ -467,7 +478,7 @@ public class Report implements Iterable<RuleViolation> {
      *         <code>false</code> otherwise
      */
     public boolean treeIsEmpty() {
-        return !violationTree.iterator().hasNext();
+        return !getViolationTree().iterator().hasNext();
     }
 
     /**
@@ -476,7 +487,7 @@ public class Report implements Iterable<RuleViolation> {
      * @return an iterator
      */
     public Iterator<RuleViolation> treeIterator() {
-        return violationTree.iterator();
+        return getViolationTree().iterator();
     }
 
     @Override
@@ -508,7 +519,7 @@ public class Report implements Iterable<RuleViolation> {
      * @return number of violations.
      */
     public int treeSize() {
-        return violationTree.size();
+        return getViolationTree().size();
     }
 
     /**
@@ -7,9 +7,14 @@ package net.sourceforge.pmd;
 import java.io.File;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Logger;
 
+import net.sourceforge.pmd.annotation.Experimental;
+import net.sourceforge.pmd.annotation.InternalApi;
 import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.MultifileDataCodec;
+import net.sourceforge.pmd.lang.ast.xpath.saxon.DocumentNode;
 
 /**
  * The RuleContext provides access to Rule processing state. This information
@@ -36,6 +41,11 @@ public class RuleContext {
     private LanguageVersion languageVersion;
     private final ConcurrentMap<String, Object> attributes;
     private boolean ignoreExceptions = true;
+    private ExecutorService ruleExecutor;
+    /** The Saxon tree of the current file, built once for all XPath rules. Not shared with other contexts. */
+    private DocumentNode xpathDocument;
+    /** The multifile data of the current analysis, for the language of the current file. Not shared with other contexts. */
+    private MultifileDataCodec multifileData;
 
     /**
      * Default constructor.
@@ -45,8 +55,8 @@ public class RuleContext {
     }
 
     /**
-     * Constructor which shares attributes and report listeners with the given
-     * RuleContext.
+     * Constructor which shares attributes, report listeners and the rule executor
+     * with the given RuleContext.
      *
      * @param ruleContext
      *            the context from which the values are shared
@@ -54,6 +64,7 @@ public class RuleContext {
     public RuleContext(RuleContext ruleContext) {
         this.attributes = ruleContext.attributes;
         this.report.addListeners(ruleContext.getReport().getListeners());
+        this.ruleExecutor = ruleContext.ruleExecutor;
     }
 
     /**
@@ -247,4 +258,75 @@ public class RuleContext {
     public boolean isIgnoreExceptions() {
         return ignoreExceptions;
     }
+
+    /**
+     * Get the executor, that applies thread-safe rules to a single file
+     * concurrently.
+     *
+     * @return The executor, or <code>null</code> if the rules are applied
+     *         one after another.
+     * @see net.sourceforge.pmd.lang.rule.ThreadSafe
+     */
+    @Experimental
+    public ExecutorService getRuleExecutor() {
+        return ruleExecutor;
+    }
+
+    /**
+     * Set the executor, that applies thread-safe rules to a single file
+     * concurrently.
+     *
+     * @param ruleExecutor
+     *            The executor, <code>null</code> to apply the rules one after another.
+     */
+    @Experimental
+    public void setRuleExecutor(ExecutorService ruleExecutor) {
+        this.ruleExecutor = ruleExecutor;
+    }
+
+    /**
+     * Get the Saxon tree of the file, that is currently processed.
+     *
+     * @return The tree, or <code>null</code> if no XPath 2.0 rule has been applied yet
+     */
+    @InternalApi
+    public DocumentNode getXPathDocument() {
+        return xpathDocument;
+    }
+
+    /**
+     * Set the Saxon tree of the file, that is currently processed. It's
+     * reused by all XPath 2.0 rules applied to the file.
+     *
+     * @param xpathDocument
+     *            The tree, <code>null</code> to drop it once the file is processed.
+     */
+    @InternalApi
+    public void setXPathDocument(DocumentNode xpathDocument) {
+        this.xpathDocument = xpathDocument;
+    }
+
+    /**
+     * Get the multifile data of all files of the current analysis, for the
+     * language of the file, that is currently processed.
+     *
+     * @return The frozen multifile data, or <code>null</code> if the multifile
+     *         analysis of all files didn't run before the file is processed
+     */
+    @Experimental
+    public MultifileDataCodec getMultifileData() {
+        return multifileData;
+    }
+
+    /**
+     * Set the multifile data of all files of the current analysis, for the
+     * language of the file, that is currently processed.
+     *
+     * @param multifileData
+     *            The frozen multifile data, <code>null</code> if there is none.
+     */
+    @Experimental
+    public void setMultifileData(MultifileDataCodec multifileData) {
+        this.multifileData = multifileData;
+    }
 }
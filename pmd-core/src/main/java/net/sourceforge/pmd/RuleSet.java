@@ -28,6 +28,7 @@ import net.sourceforge.pmd.lang.Language;
 import net.sourceforge.pmd.lang.LanguageVersion;
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.rule.RuleReference;
+import net.sourceforge.pmd.properties.PropertyDescriptor;
 import net.sourceforge.pmd.util.filter.Filter;
 import net.sourceforge.pmd.util.filter.Filters;
 
@@ -771,4 +772,63 @@ public class RuleSet implements ChecksumAware {
     public long getChecksum() {
         return checksum;
     }
+
+    /**
+     * Retrieves a checksum of the given rule of this ruleset, computed from its
+     * {@link #getRuleFingerprint(Rule) fingerprint}.
+     *
+     * @param rule The rule, must be part of this ruleset
+     * @return The checksum of the rule
+     */
+    /* package */ long getRuleChecksum(Rule rule) {
+        long ruleChecksum = 1;
+        String fingerprint = getRuleFingerprint(rule);
+        for (int i = 0; i < fingerprint.length(); i++) {
+            ruleChecksum = ruleChecksum * 31 + fingerprint.charAt(i);
+        }
+        return ruleChecksum;
+    }
+
+    /**
+     * Retrieves a fingerprint of the given rule of this ruleset. The fingerprint
+     * covers everything, that influences the violations found by the rule:
+     * the rule class, name, language, language versions, message, priority,
+     * property values and the file patterns of this ruleset. Each part is
+     * prefixed by its length, so that different rules never share a fingerprint.
+     *
+     * @param rule The rule, must be part of this ruleset
+     * @return The fingerprint of the rule
+     */
+    /* package */ String getRuleFingerprint(Rule rule) {
+        StringBuilder fingerprint = new StringBuilder();
+        appendFingerprintPart(fingerprint, String.valueOf(rule.getRuleClass()));
+        appendFingerprintPart(fingerprint, rule.getName());
+        appendFingerprintPart(fingerprint, rule.getLanguage().getTerseName());
+        appendFingerprintPart(fingerprint, String.valueOf(rule.getMinimumLanguageVersion()));
+        appendFingerprintPart(fingerprint, String.valueOf(rule.getMaximumLanguageVersion()));
+        appendFingerprintPart(fingerprint, String.valueOf(rule.getMessage()));
+        appendFingerprintPart(fingerprint, String.valueOf(rule.getPriority()));
+        for (PropertyDescriptor<?> descriptor : rule.getPropertyDescriptors()) {
+            appendFingerprintPart(fingerprint, descriptor.name());
+            appendFingerprintPart(fingerprint, getPropertyValue(rule, descriptor));
+        }
+        fingerprint.append(excludePatterns.size()).append(';');
+        for (Pattern pattern : excludePatterns) {
+            appendFingerprintPart(fingerprint, pattern.pattern());
+        }
+        for (Pattern pattern : includePatterns) {
+            appendFingerprintPart(fingerprint, pattern.pattern());
+        }
+        return fingerprint.toString();
+    }
+
+    private static void appendFingerprintPart(StringBuilder fingerprint, String part) {
+        fingerprint.append(part.length()).append(':').append(part);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static <T> String getPropertyValue(Rule rule, PropertyDescriptor<T> descriptor) {
+        // the string representation is stable between runs, other than the hashCode of some values
+        return descriptor.asDelimitedString(rule.getProperty(descriptor));
+    }
 }
@@ -9,7 +9,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import net.sourceforge.pmd.lang.Language;
@@ -268,4 +270,43 @@ public class RuleSets {
         }
         return checksum;
     }
+
+    /**
+     * Retrieves a checksum of each rule being used. Contrary to {@link #getChecksum()},
+     * only changes that influence the violations found by a rule change its checksum.
+     * If the same rule is used by several rulesets, the checksums are combined.
+     *
+     * @return The checksum of each rule of this ruleset collection.
+     */
+    public Map<Rule, Long> getRuleChecksums() {
+        final Map<Rule, Long> checksums = new LinkedHashMap<>();
+        for (final RuleSet ruleSet : ruleSets) {
+            for (final Rule rule : ruleSet.getRules()) {
+                final Long previous = checksums.get(rule);
+                final long checksum = ruleSet.getRuleChecksum(rule);
+                checksums.put(rule, previous == null ? checksum : previous * 31 + checksum);
+            }
+        }
+        return checksums;
+    }
+
+    /**
+     * Retrieves a fingerprint of each rule being used, which covers the same as the
+     * checksums of {@link #getRuleChecksums()}. Other than the checksums, the fingerprints
+     * can be hashed with a collision resistant digest. If the same rule is used by several
+     * rulesets, the fingerprints are concatenated.
+     *
+     * @return The fingerprint of each rule of this ruleset collection.
+     */
+    public Map<Rule, String> getRuleFingerprints() {
+        final Map<Rule, String> fingerprints = new LinkedHashMap<>();
+        for (final RuleSet ruleSet : ruleSets) {
+            for (final Rule rule : ruleSet.getRules()) {
+                final String previous = fingerprints.get(rule);
+                final String fingerprint = ruleSet.getRuleFingerprint(rule);
+                fingerprints.put(rule, previous == null ? fingerprint : previous + fingerprint);
+            }
+        }
+        return fingerprints;
+    }
 }
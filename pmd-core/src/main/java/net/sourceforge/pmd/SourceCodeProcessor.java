@@ -4,19 +4,33 @@
 
 package net.sourceforge.pmd;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import org.apache.commons.io.IOUtils;
+
+import net.sourceforge.pmd.RuleSet.RuleSetBuilder;
+import net.sourceforge.pmd.annotation.Experimental;
 import net.sourceforge.pmd.benchmark.TimeTracker;
 import net.sourceforge.pmd.benchmark.TimedOperation;
 import net.sourceforge.pmd.benchmark.TimedOperationCategory;
+import net.sourceforge.pmd.cache.AbstractAnalysisCache;
+import net.sourceforge.pmd.cache.MultifileIndexCache;
+import net.sourceforge.pmd.lang.AbstractLanguageVersionHandler;
 import net.sourceforge.pmd.lang.Language;
 import net.sourceforge.pmd.lang.LanguageVersion;
 import net.sourceforge.pmd.lang.LanguageVersionHandler;
+import net.sourceforge.pmd.lang.MultifileDataCodec;
 import net.sourceforge.pmd.lang.Parser;
 import net.sourceforge.pmd.lang.VisitorStarter;
 import net.sourceforge.pmd.lang.ast.Node;
@@ -26,11 +40,168 @@ import net.sourceforge.pmd.lang.xpath.Initializer;
 public class SourceCodeProcessor {
 
     private final PMDConfiguration configuration;
+    /** Whether the multifile analysis of all files ran already, before any file is processed. */
+    private boolean multifileIndexBuilt;
+    /** The multifile data of the analysis, by language. Each analysis uses its own processor. */
+    private final ConcurrentMap<Language, MultifileDataCodec> multifileData = new ConcurrentHashMap<>();
 
     public SourceCodeProcessor(PMDConfiguration configuration) {
         this.configuration = configuration;
     }
 
+    /**
+     * Runs the multifile analysis of the given source code, without applying
+     * any rule. This is the first phase of the multifile analysis: it can
+     * run for all files concurrently, before any file is processed. Once it
+     * ran for all files, call {@link #setMultifileIndexBuilt(boolean)}, so
+     * that the rules only query the complete multifile data, and it isn't
+     * gathered again while the files are processed.
+     *
+     * <p>Nothing is done, if no rule for the language of the file uses
+     * multifile analysis.
+     *
+     * @param sourceCode
+     *            The InputStream to index.
+     * @param ruleSets
+     *            The collection of rules to process against the file.
+     * @param ctx
+     *            The context of the file. Its report is not used.
+     * @throws PMDException
+     *             if the input stream could not be read or parsed
+     */
+    @Experimental
+    public void indexSourceCode(InputStream sourceCode, RuleSets ruleSets, RuleContext ctx) throws PMDException {
+        indexSourceCode(sourceCode, ruleSets, ctx, null);
+    }
+
+    /**
+     * Runs the multifile analysis of the given source code like
+     * {@link #indexSourceCode(InputStream, RuleSets, RuleContext)}, but
+     * reuses the stored multifile data of the file, if the file didn't
+     * change. Otherwise the file is parsed, and its multifile data is
+     * stored in the index. The index is only used, if the language of
+     * the file supports it, see {@link AbstractLanguageVersionHandler#getMultifileDataCodec()}.
+     *
+     * @param sourceCode
+     *            The InputStream to index.
+     * @param ruleSets
+     *            The collection of rules to process against the file.
+     * @param ctx
+     *            The context of the file. Its report is not used.
+     * @param multifileIndex
+     *            The stored multifile data, may be null
+     * @throws PMDException
+     *             if the input stream could not be read or parsed
+     */
+    @Experimental
+    public void indexSourceCode(InputStream sourceCode, RuleSets ruleSets, RuleContext ctx,
+            MultifileIndexCache multifileIndex) throws PMDException {
+        determineLanguage(ctx);
+        LanguageVersion languageVersion = ctx.getLanguageVersion();
+        if (languageVersion == null || !ruleSets.usesMultifile(languageVersion.getLanguage())
+                || !ruleSets.applies(ctx.getSourceCodeFile())) {
+            return;
+        }
+
+        LanguageVersionHandler languageVersionHandler = languageVersion.getLanguageVersionHandler();
+        MultifileDataCodec codec = getMultifileData(languageVersion);
+        try {
+            if (codec == null) {
+                try (Reader streamReader = new InputStreamReader(sourceCode, configuration.getSourceEncoding())) {
+                    multifileFacade(parseForIndex(ctx, streamReader, languageVersion), languageVersionHandler);
+                }
+                return;
+            }
+
+            byte[] content = IOUtils.toByteArray(sourceCode);
+            String fileName = String.valueOf(ctx.getSourceCodeFile());
+            // the data gathered from the AST may depend on the language version
+            String version = languageVersion.getTerseName();
+            long checksum = 0;
+            if (multifileIndex != null) {
+                checksum = MultifileIndexCache.computeChecksum(content);
+                byte[] data = multifileIndex.get(fileName, version, checksum);
+                if (data != null && restoreMultifileData(codec, data)) {
+                    return;
+                }
+            }
+
+            Node rootNode = parseForIndex(ctx, new InputStreamReader(new ByteArrayInputStream(content),
+                    configuration.getSourceEncoding()), languageVersion);
+            ByteArrayOutputStream gathered = new ByteArrayOutputStream();
+            try (TimedOperation to = TimeTracker.startOperation(TimedOperationCategory.MULTIFILE_ANALYSIS)) {
+                codec.gather(rootNode, new DataOutputStream(gathered));
+            }
+            if (multifileIndex != null) {
+                multifileIndex.put(fileName, version, checksum, gathered.toByteArray());
+            }
+        } catch (IOException e) {
+            throw new PMDException("IO exception: " + e.getMessage(), e);
+        } catch (ParseException pe) {
+            throw new PMDException("Error while parsing " + ctx.getSourceCodeFile(), pe);
+        }
+    }
+
+    /**
+     * Returns the multifile data of this analysis for the language of the
+     * given version, or null if the language doesn't support it.
+     */
+    private MultifileDataCodec getMultifileData(LanguageVersion languageVersion) {
+        Language language = languageVersion.getLanguage();
+        MultifileDataCodec codec = multifileData.get(language);
+        if (codec == null) {
+            LanguageVersionHandler handler = languageVersion.getLanguageVersionHandler();
+            MultifileDataCodec created = handler instanceof AbstractLanguageVersionHandler
+                    ? ((AbstractLanguageVersionHandler) handler).getMultifileDataCodec()
+                    : null;
+            if (created == null) {
+                return null;
+            }
+            codec = multifileData.putIfAbsent(language, created);
+            if (codec == null) {
+                codec = created;
+            }
+        }
+        return codec;
+    }
+
+    private Node parseForIndex(RuleContext ctx, Reader sourceCode, LanguageVersion languageVersion) {
+        LanguageVersionHandler languageVersionHandler = languageVersion.getLanguageVersionHandler();
+        Node rootNode = parse(ctx, sourceCode, PMD.parserFor(languageVersion, configuration));
+        // the signatures need the qualified names and the scopes, but no DFA or type resolution
+        resolveQualifiedNames(rootNode, languageVersionHandler);
+        symbolFacade(rootNode, languageVersionHandler);
+        return rootNode;
+    }
+
+    private static boolean restoreMultifileData(MultifileDataCodec codec, byte[] data) {
+        try (TimedOperation to = TimeTracker.startOperation(TimedOperationCategory.MULTIFILE_ANALYSIS)) {
+            codec.restore(new DataInputStream(new ByteArrayInputStream(data)));
+            return true;
+        } catch (IOException e) {
+            // e.g. truncated data, gather it from the file again
+            return false;
+        }
+    }
+
+    /**
+     * Sets whether the multifile analysis of all files ran already, see
+     * {@link #indexSourceCode(InputStream, RuleSets, RuleContext)}. Once it
+     * ran, the multifile data is frozen and handed to the rules with
+     * {@link RuleContext#setMultifileData(MultifileDataCodec)}.
+     *
+     * @param multifileIndexBuilt Whether the multifile analysis ran already
+     */
+    @Experimental
+    public void setMultifileIndexBuilt(boolean multifileIndexBuilt) {
+        this.multifileIndexBuilt = multifileIndexBuilt;
+        if (multifileIndexBuilt) {
+            for (MultifileDataCodec codec : multifileData.values()) {
+                codec.freeze();
+            }
+        }
+    }
+
     /**
      * Processes the input stream against a rule set using the given input
      * encoding.
@@ -85,6 +256,12 @@ public class SourceCodeProcessor {
         if (ruleSets.applies(ctx.getSourceCodeFile())) {
             if (isCacheUpToDate(ctx)) {
                 reportCachedRuleViolations(ctx);
+
+                // rules, that changed since the cache was created, still need to be applied
+                final RuleSets outdatedRuleSets = getOutdatedRuleSets(ruleSets);
+                if (outdatedRuleSets != null) {
+                    processSourceCodeWithoutCache(sourceCode, outdatedRuleSets, ctx);
+                }
             } else {
                 processSourceCodeWithoutCache(sourceCode, ruleSets, ctx);
             }
@@ -101,6 +278,43 @@ public class SourceCodeProcessor {
         }
     }
 
+    /**
+     * Returns the rules of the given rulesets, whose cached violations are not up to date.
+     *
+     * @return The outdated rules, or null if all rules are up to date
+     */
+    private RuleSets getOutdatedRuleSets(final RuleSets ruleSets) {
+        if (!(configuration.getAnalysisCache() instanceof AbstractAnalysisCache)) {
+            // other caches are invalidated by any change of the rules
+            return null;
+        }
+        final AbstractAnalysisCache cache = (AbstractAnalysisCache) configuration.getAnalysisCache();
+        RuleSets outdatedRuleSets = null;
+        for (final RuleSet ruleSet : ruleSets.getAllRuleSets()) {
+            RuleSetBuilder builder = null;
+            for (final Rule rule : ruleSet.getRules()) {
+                if (!cache.isUpToDate(rule)) {
+                    if (builder == null) {
+                        builder = new RuleSetBuilder(ruleSet.getChecksum())
+                                .withName(ruleSet.getName())
+                                .withDescription(ruleSet.getDescription())
+                                .withFileName(ruleSet.getFileName())
+                                .replaceFileExclusions(ruleSet.getFileExclusions())
+                                .replaceFileInclusions(ruleSet.getFileInclusions());
+                    }
+                    builder.addRule(rule);
+                }
+            }
+            if (builder != null) {
+                if (outdatedRuleSets == null) {
+                    outdatedRuleSets = new RuleSets();
+                }
+                outdatedRuleSets.addRuleSet(builder.build());
+            }
+        }
+        return outdatedRuleSets;
+    }
+
     private void processSourceCodeWithoutCache(final Reader sourceCode, final RuleSets ruleSets, final RuleContext ctx) throws PMDException {
         try {
             ruleSets.start(ctx);
@@ -169,10 +383,15 @@ public class SourceCodeProcessor {
     private void usesMultifile(Node rootNode, LanguageVersionHandler languageVersionHandler, RuleSets ruleSets,
                                Language language) {
 
-        if (ruleSets.usesMultifile(language)) {
-            try (TimedOperation to = TimeTracker.startOperation(TimedOperationCategory.MULTIFILE_ANALYSIS)) {
-                languageVersionHandler.getMultifileFacade().start(rootNode);
-            }
+        // if the index has been built already, the rules only query it
+        if (!multifileIndexBuilt && ruleSets.usesMultifile(language)) {
+            multifileFacade(rootNode, languageVersionHandler);
+        }
+    }
+
+    private void multifileFacade(Node rootNode, LanguageVersionHandler languageVersionHandler) {
+        try (TimedOperation to = TimeTracker.startOperation(TimedOperationCategory.MULTIFILE_ANALYSIS)) {
+            languageVersionHandler.getMultifileFacade().start(rootNode);
         }
     }
 
@@ -191,7 +410,14 @@ public class SourceCodeProcessor {
         usesMultifile(rootNode, languageVersionHandler, ruleSets, language);
 
         List<Node> acus = Collections.singletonList(rootNode);
-        ruleSets.apply(acus, ctx, language);
+        ctx.setMultifileData(multifileIndexBuilt ? multifileData.get(language) : null);
+        try {
+            ruleSets.apply(acus, ctx, language);
+        } finally {
+            // the Saxon tree is dropped together with the AST
+            ctx.setXPathDocument(null);
+            ctx.setMultifileData(null);
+        }
     }
 
     private void determineLanguage(RuleContext ctx) {
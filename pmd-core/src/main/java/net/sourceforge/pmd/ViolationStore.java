@@ -0,0 +1,165 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Stores the violations of a {@link Report}. Adding a violation only appends
+ * it to the last chunk, so nothing is copied or shifted while violations are
+ * collected. The violations are sorted once, when they are iterated in order
+ * for the first time after they changed. Big stores are sorted in parallel.
+ */
+final class ViolationStore implements Iterable<RuleViolation> {
+
+    private static final int CHUNK_SIZE = 1024;
+    /** Stores with fewer violations are sorted on the current thread. */
+    private static final int PARALLEL_SORT_THRESHOLD = 8 * CHUNK_SIZE;
+
+    private final Comparator<RuleViolation> comparator;
+    private final List<RuleViolation[]> chunks = new ArrayList<>();
+    private int size;
+    /** The violations in order, <code>null</code> if they changed since the last sort. */
+    private RuleViolation[] sorted;
+
+    ViolationStore(Comparator<RuleViolation> comparator) {
+        this.comparator = comparator;
+    }
+
+    public void add(RuleViolation violation) {
+        int indexInChunk = size % CHUNK_SIZE;
+        if (indexInChunk == 0) {
+            chunks.add(new RuleViolation[CHUNK_SIZE]);
+        }
+        chunks.get(chunks.size() - 1)[indexInChunk] = violation;
+        size++;
+        sorted = null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the violations in order.
+     */
+    @Override
+    public Iterator<RuleViolation> iterator() {
+        if (sorted == null) {
+            sorted = toArray();
+            sort(sorted, comparator);
+        }
+        return Collections.unmodifiableList(Arrays.asList(sorted)).iterator();
+    }
+
+    /**
+     * Returns the violations in the order they have been added.
+     */
+    public Iterator<RuleViolation> insertionOrderIterator() {
+        return new Iterator<RuleViolation>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public RuleViolation next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                RuleViolation next = chunks.get(index / CHUNK_SIZE)[index % CHUNK_SIZE];
+                index++;
+                return next;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private RuleViolation[] toArray() {
+        RuleViolation[] array = new RuleViolation[size];
+        for (int i = 0; i < chunks.size(); i++) {
+            System.arraycopy(chunks.get(i), 0, array, i * CHUNK_SIZE, Math.min(CHUNK_SIZE, size - i * CHUNK_SIZE));
+        }
+        return array;
+    }
+
+    private static void sort(RuleViolation[] violations, Comparator<RuleViolation> comparator) {
+        if (violations.length < PARALLEL_SORT_THRESHOLD) {
+            Arrays.sort(violations, comparator);
+            return;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            pool.invoke(new MergeSort(violations, violations.clone(), 0, violations.length, comparator));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * A stable merge sort, which sorts both halves in parallel. The sorted
+     * range ends up in the target array, the source array is used as buffer.
+     */
+    private static final class MergeSort extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final RuleViolation[] target;
+        private final RuleViolation[] source;
+        private final int from;
+        private final int to;
+        private final Comparator<RuleViolation> comparator;
+
+        MergeSort(RuleViolation[] target, RuleViolation[] source, int from, int to,
+                Comparator<RuleViolation> comparator) {
+            this.target = target;
+            this.source = source;
+            this.from = from;
+            this.to = to;
+            this.comparator = comparator;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from < PARALLEL_SORT_THRESHOLD) {
+                Arrays.sort(target, from, to, comparator);
+                return;
+            }
+
+            // sort the halves into the buffer, then merge them into the target
+            int middle = (from + to) >>> 1;
+            invokeAll(new MergeSort(source, target, from, middle, comparator),
+                    new MergeSort(source, target, middle, to, comparator));
+
+            int left = from;
+            int right = middle;
+            for (int i = from; i < to; i++) {
+                if (right >= to || left < middle && comparator.compare(source[left], source[right]) <= 0) {
+                    target[i] = source[left++];
+                } else {
+                    target[i] = source[right++];
+                }
+            }
+        }
+    }
+}
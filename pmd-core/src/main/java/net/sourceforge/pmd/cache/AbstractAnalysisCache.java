@@ -5,7 +5,6 @@
 package net.sourceforge.pmd.cache;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URL;
 import java.net.URLClassLoader;
@@ -18,16 +17,17 @@ import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.zip.Adler32;
-import java.util.zip.CheckedInputStream;
 
 import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.io.IOUtils;
 
 import net.sourceforge.pmd.PMDVersion;
 import net.sourceforge.pmd.Rule;
@@ -50,9 +50,23 @@ public abstract class AbstractAnalysisCache implements AnalysisCache {
     protected final ConcurrentMap<String, AnalysisResult> fileResultsCache;
     protected final ConcurrentMap<String, AnalysisResult> updatedResultsCache;
     protected final CachedRuleMapper ruleMapper = new CachedRuleMapper();
+    /* package */ final ClassPathFingerprints classPathFingerprints = new ClassPathFingerprints();
+    /**
+     * @deprecated Not used anymore, the cached results are validated by the
+     *     checksums of the individual rules, see {@link #ruleChecksums}.
+     */
+    @Deprecated
     protected long rulesetChecksum;
     protected long auxClassPathChecksum;
     protected long executionClassPathChecksum;
+    protected Map<String, Long> ruleChecksums = new HashMap<>();
+    /** The entries of the auxclasspath of the current analysis. */
+    /* package */ URL[] auxClassPathEntries = new URL[0];
+
+    /** Rules, that are new or whose checksum changed. These have to be applied again. */
+    private Set<String> changedRules = Collections.emptySet();
+    /** Rules, that were removed or whose checksum changed. Their cached violations are outdated. */
+    private Set<String> outdatedRules = Collections.emptySet();
 
     /**
      * Creates a new empty cache
@@ -65,13 +79,18 @@ public abstract class AbstractAnalysisCache implements AnalysisCache {
 
     @Override
     public boolean isUpToDate(final File sourceFile) {
+        final AnalysisResult analysisResult = fileResultsCache.get(sourceFile.getPath());
+
         // There is a new file being analyzed, prepare entry in updated cache
-        final AnalysisResult updatedResult = new AnalysisResult(sourceFile);
+        // If size and modification time didn't change, the file doesn't need to be read
+        final AnalysisResult updatedResult;
+        if (analysisResult != null && analysisResult.hasSameMetadata(sourceFile)) {
+            updatedResult = new AnalysisResult(analysisResult, new CachedViolationList(ruleMapper));
+        } else {
+            updatedResult = new AnalysisResult(sourceFile, new CachedViolationList(ruleMapper));
+        }
         updatedResultsCache.put(sourceFile.getPath(), updatedResult);
 
-        // Now check the old cache
-        final AnalysisResult analysisResult = fileResultsCache.get(sourceFile.getPath());
-
         // is this a known file? has it changed?
         final boolean result = analysisResult != null
                 && analysisResult.getFileChecksum() == updatedResult.getFileChecksum();
@@ -88,6 +107,41 @@ public abstract class AbstractAnalysisCache implements AnalysisCache {
         return result;
     }
 
+    /**
+     * Returns true, if the cached result of the file is probably still valid, i.e. the size and
+     * modification time of the file didn't change and no rule changed. Unlike
+     * {@link #isUpToDate(File)}, this doesn't read the file and doesn't change the cache.
+     * This needs to be called after {@link #checkValidity(RuleSets, ClassLoader)}.
+     *
+     * @param sourceFile The file to check in the cache
+     * @return True if the cached result can probably be used
+     */
+    public boolean isProbablyUpToDate(final File sourceFile) {
+        final AnalysisResult analysisResult = fileResultsCache.get(sourceFile.getPath());
+        return analysisResult != null && analysisResult.hasSameMetadata(sourceFile) && areAllRulesUpToDate();
+    }
+
+    /**
+     * Checks if the cached violations of the given rule are up to date. Cached violations are
+     * only returned for rules, that are up to date. All other rules still need to be applied
+     * to files, that are up to date according to {@link #isUpToDate(File)}.
+     * This needs to be called after {@link #checkValidity(RuleSets, ClassLoader)}.
+     *
+     * @param rule The rule to check in the cache
+     * @return True if the rule didn't change since the cache was created
+     */
+    public boolean isUpToDate(final Rule rule) {
+        return changedRules.isEmpty() || !changedRules.contains(CachedRuleMapper.getRuleKey(rule));
+    }
+
+    /**
+     * Returns true if all rules are up to date, that is, the cached violations
+     * of an unchanged file are still complete and valid.
+     */
+    protected boolean areAllRulesUpToDate() {
+        return changedRules.isEmpty() && outdatedRules.isEmpty();
+    }
+
     @Override
     public List<RuleViolation> getCachedViolations(final File sourceFile) {
         final AnalysisResult analysisResult = fileResultsCache.get(sourceFile.getPath());
@@ -97,7 +151,19 @@ public abstract class AbstractAnalysisCache implements AnalysisCache {
             return Collections.emptyList();
         }
 
-        return analysisResult.getViolations();
+        if (outdatedRules.isEmpty()) {
+            return analysisResult.getViolations();
+        }
+
+        // only keep the violations of rules, that didn't change
+        final List<RuleViolation> violations = new ArrayList<>();
+        for (final RuleViolation violation : analysisResult.getViolations()) {
+            if (!(violation instanceof CachedRuleViolation)
+                    || !outdatedRules.contains(((CachedRuleViolation) violation).getRuleKey())) {
+                violations.add(violation);
+            }
+        }
+        return violations;
     }
 
     @Override
@@ -112,22 +178,40 @@ public abstract class AbstractAnalysisCache implements AnalysisCache {
      */
     protected abstract boolean cacheExists();
 
+    /**
+     * Returns the cache for the multifile data of the analyzed files, which is persisted
+     * together with this cache.
+     *
+     * @return The multifile index, or null if this cache doesn't store the multifile data
+     */
+    public MultifileIndexCache getMultifileIndex() {
+        return null;
+    }
+
+    /**
+     * Returns the index of the auxclasspath used by type resolution, which is persisted
+     * together with this cache. Only valid after {@link #checkValidity(RuleSets, ClassLoader)}.
+     *
+     * @return The auxclasspath index, or null if this cache doesn't store it
+     */
+    public AuxClasspathIndex getAuxClasspathIndex() {
+        return null;
+    }
+
 
     @Override
     public void checkValidity(final RuleSets ruleSets, final ClassLoader auxclassPathClassLoader) {
         boolean cacheIsValid = cacheExists();
-
-        if (cacheIsValid && ruleSets.getChecksum() != rulesetChecksum) {
-            LOG.info("Analysis cache invalidated, rulesets changed.");
-            cacheIsValid = false;
-        }
+        ruleMapper.initialize(ruleSets);
+        final Map<String, Long> currentRuleChecksums = ruleMapper.getRuleChecksums();
 
         final long currentAuxClassPathChecksum;
         if (auxclassPathClassLoader instanceof URLClassLoader) {
             // we don't want to close our aux classpath loader - we still need it...
             @SuppressWarnings("PMD.CloseResource")
             final URLClassLoader urlClassLoader = (URLClassLoader) auxclassPathClassLoader;
-            currentAuxClassPathChecksum = computeClassPathHash(urlClassLoader.getURLs());
+            auxClassPathEntries = urlClassLoader.getURLs();
+            currentAuxClassPathChecksum = computeClassPathHash(auxClassPathEntries);
 
             if (cacheIsValid && currentAuxClassPathChecksum != auxClassPathChecksum) {
                 // Do we even care?
@@ -140,6 +224,7 @@ public abstract class AbstractAnalysisCache implements AnalysisCache {
                 }
             }
         } else {
+            auxClassPathEntries = new URL[0];
             currentAuxClassPathChecksum = 0;
         }
 
@@ -152,13 +237,35 @@ public abstract class AbstractAnalysisCache implements AnalysisCache {
         if (!cacheIsValid) {
             // Clear the cache
             fileResultsCache.clear();
+            changedRules = Collections.emptySet();
+            outdatedRules = Collections.emptySet();
+        } else {
+            // a changed rule only invalidates its own violations
+            changedRules = getChangedRules(currentRuleChecksums, ruleChecksums);
+            outdatedRules = getChangedRules(ruleChecksums, currentRuleChecksums);
+            if (!changedRules.isEmpty() || !outdatedRules.isEmpty()) {
+                LOG.info("Analysis cache partially invalidated, " + changedRules.size() + " rules changed or added, "
+                        + outdatedRules.size() + " rules changed or removed.");
+            }
         }
 
         // Update the local checksums
-        rulesetChecksum = ruleSets.getChecksum();
         auxClassPathChecksum = currentAuxClassPathChecksum;
         executionClassPathChecksum = currentExecutionClassPathChecksum;
-        ruleMapper.initialize(ruleSets);
+        ruleChecksums = new HashMap<>(currentRuleChecksums);
+    }
+
+    /**
+     * Returns the keys of the given rules, that are not contained with the same checksum in the other rules.
+     */
+    private static Set<String> getChangedRules(final Map<String, Long> rules, final Map<String, Long> otherRules) {
+        final Set<String> changed = new HashSet<>();
+        for (final Map.Entry<String, Long> rule : rules.entrySet()) {
+            if (!rule.getValue().equals(otherRules.get(rule.getKey()))) {
+                changed.add(rule.getKey());
+            }
+        }
+        return changed;
     }
 
     private static boolean isClassPathWildcard(String entry) {
@@ -214,22 +321,7 @@ public abstract class AbstractAnalysisCache implements AnalysisCache {
     }
 
     private long computeClassPathHash(final URL... classpathEntry) {
-        final Adler32 adler32 = new Adler32();
-        for (final URL url : classpathEntry) {
-            try (CheckedInputStream inputStream = new CheckedInputStream(url.openStream(), adler32)) {
-                // Just read it, the CheckedInputStream will update the checksum on it's own
-                while (IOUtils.skip(inputStream, Long.MAX_VALUE) == Long.MAX_VALUE) {
-                    // just loop
-                }
-            } catch (final FileNotFoundException ignored) {
-                LOG.warning("Auxclasspath entry " + url.toString() + " doesn't exist, ignoring it");
-            } catch (final IOException e) {
-                // Can this even happen?
-                LOG.log(Level.SEVERE, "Incremental analysis can't check auxclasspath contents", e);
-                throw new RuntimeException(e);
-            }
-        }
-        return adler32.getValue();
+        return classPathFingerprints.computeHash(classpathEntry);
     }
 
     @Override
@@ -0,0 +1,42 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache;
+
+import java.io.IOException;
+
+import net.sourceforge.pmd.annotation.Experimental;
+
+/**
+ * A store for the entries of a {@link SharedAnalysisCache}. Entries are
+ * addressed by a key, that is derived from the content of the analyzed file
+ * and the configuration of the analysis, so an entry never changes once it
+ * has been stored. The store may be shared by several analyses running at
+ * the same time, implementations have to be thread-safe.
+ *
+ * @see DirectoryAnalysisCacheBackend
+ */
+@Experimental
+public interface AnalysisCacheBackend {
+
+    /**
+     * Retrieves the entry stored for the given key.
+     *
+     * @param key The key of the entry, consists only of letters, digits and dashes
+     * @return The entry, or null if there is no entry for the key
+     * @throws IOException If the store can't be read
+     */
+    byte[] get(String key) throws IOException;
+
+    /**
+     * Stores an entry for the given key. Readers must never see a partially
+     * stored entry. If there is an entry for the key already, it may be kept
+     * or replaced, both have the same content.
+     *
+     * @param key   The key of the entry, consists only of letters, digits and dashes
+     * @param entry The entry to store
+     * @throws IOException If the store can't be written
+     */
+    void put(String key, byte[] entry) throws IOException;
+}
@@ -21,22 +21,69 @@ import net.sourceforge.pmd.annotation.InternalApi;
 /**
  * The result of a single file analysis.
  * Includes a checksum of the file and the complete list of violations detected.
+ * The size and last modification time of the file are recorded as well, so that
+ * an unchanged file can be recognized without computing the checksum.
  * @deprecated This is internal API, will be hidden with 7.0.0
  */
 @Deprecated
 @InternalApi
 public class AnalysisResult {
 
+    /**
+     * Modification times this close to the time the checksum was computed are not
+     * trusted, as the file could be modified again without changing the timestamp.
+     * This is the worst timestamp resolution of common file systems.
+     */
+    private static final long MODIFICATION_TIME_RESOLUTION = 2000L;
+
+    /** Marks an unknown file size or modification time. */
+    /* package */ static final long UNKNOWN = -1L;
+
     private final long fileChecksum;
+    private final long fileSize;
+    private final long fileLastModified;
     private final List<RuleViolation> violations;
 
     public AnalysisResult(final long fileChecksum, final List<RuleViolation> violations) {
+        this(fileChecksum, UNKNOWN, UNKNOWN, violations);
+    }
+
+    /* package */ AnalysisResult(final long fileChecksum, final long fileSize, final long fileLastModified,
+            final List<RuleViolation> violations) {
         this.fileChecksum = fileChecksum;
+        this.fileSize = fileSize;
+        this.fileLastModified = fileLastModified;
         this.violations = violations;
     }
 
     public AnalysisResult(final File sourceFile) {
-        this(computeFileChecksum(sourceFile), new ArrayList<RuleViolation>());
+        this(sourceFile, new ArrayList<RuleViolation>());
+    }
+
+    /* package */ AnalysisResult(final File sourceFile, final List<RuleViolation> violations) {
+        this(sourceFile, sourceFile.length(), trustedLastModified(sourceFile), violations);
+    }
+
+    private AnalysisResult(final File sourceFile, final long fileSize, final long fileLastModified,
+            final List<RuleViolation> violations) {
+        this(computeFileChecksum(sourceFile), fileSize, fileLastModified, violations);
+    }
+
+    /**
+     * Creates the result of a file, that is known to be unchanged since the given
+     * previous analysis. The checksum of the previous analysis is reused.
+     */
+    /* package */ AnalysisResult(final AnalysisResult unchangedResult, final List<RuleViolation> violations) {
+        this(unchangedResult.fileChecksum, unchangedResult.fileSize, unchangedResult.fileLastModified, violations);
+    }
+
+    /* package */ static long trustedLastModified(final File sourceFile) {
+        final long lastModified = sourceFile.lastModified();
+        if (lastModified == 0L || System.currentTimeMillis() - lastModified < MODIFICATION_TIME_RESOLUTION) {
+            // the file doesn't exist or could still be modified unnoticed
+            return UNKNOWN;
+        }
+        return lastModified;
     }
 
     private static long computeFileChecksum(final File sourceFile) {
@@ -59,6 +106,28 @@ public class AnalysisResult {
         return System.currentTimeMillis();
     }
 
+    /**
+     * Checks whether the given file still has the size and modification time
+     * recorded in this result. If so, the file is considered unchanged without
+     * reading it.
+     *
+     * @param sourceFile The file to check
+     * @return True if the file is unchanged according to its metadata
+     */
+    /* package */ boolean hasSameMetadata(final File sourceFile) {
+        return fileLastModified != UNKNOWN
+                && fileLastModified == sourceFile.lastModified()
+                && fileSize == sourceFile.length();
+    }
+
+    /* package */ long getFileSize() {
+        return fileSize;
+    }
+
+    /* package */ long getFileLastModified() {
+        return fileLastModified;
+    }
+
     public long getFileChecksum() {
         return fileChecksum;
     }
@@ -0,0 +1,261 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+import net.sourceforge.pmd.PMDVersion;
+import net.sourceforge.pmd.annotation.InternalApi;
+
+/**
+ * Stores what type resolution learned about the auxclasspath in a file next to
+ * the {@link FileAnalysisCache}, so that the next analysis doesn't need to read
+ * the same class files again.
+ *
+ * <p>For each jar, the imported classes of the classes read from it are stored,
+ * together with the checksum of the jar. They are reused as long as the
+ * checksum of the jar doesn't change. Additionally, the names, that couldn't
+ * be found on the classpath at all, are stored. These are only reused, if
+ * the checksum of the whole classpath didn't change, and only if the
+ * auxclasspath consists of jars only, since the checksum of a directory doesn't
+ * reflect its content.
+ *
+ * <p>The data may be requested and added concurrently.
+ */
+@InternalApi
+public class AuxClasspathIndex {
+
+    private static final Logger LOG = Logger.getLogger(AuxClasspathIndex.class.getName());
+
+    /** "PMDX", the beginning of the file. */
+    private static final int MAGIC = 0x504D4458;
+    private static final int FORMAT_VERSION = 1;
+
+    private final File file;
+    private final long classpathChecksum;
+    private final boolean keepMissingNames;
+    /** The checksums of the jars on the auxclasspath, by URL. */
+    private final Map<String, Long> jarChecksums;
+    /** The imported classes by class name. */
+    private final ConcurrentMap<String, ImportedClasses> importedClasses = new ConcurrentHashMap<>();
+    private final Set<String> missingNames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    /** Whether data has been added, only read once all data has been added. */
+    private boolean changed;
+
+    /**
+     * Creates a new index backed by the given file, and loads the data, that is still valid.
+     *
+     * @param file              The file in which the data is stored
+     * @param classpathChecksum The checksum of the whole classpath
+     * @param jarChecksums      The checksums of the jars on the auxclasspath, by URL
+     * @param keepMissingNames  Whether the missing names can be reused, if the classpath checksum didn't change
+     */
+    public AuxClasspathIndex(final File file, final long classpathChecksum, final Map<String, Long> jarChecksums,
+            final boolean keepMissingNames) {
+        this.file = file;
+        this.classpathChecksum = classpathChecksum;
+        this.jarChecksums = new HashMap<>(jarChecksums);
+        this.keepMissingNames = keepMissingNames;
+        load();
+    }
+
+    private void load() {
+        if (!file.isFile()) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION
+                    || !PMDVersion.VERSION.equals(in.readUTF())
+                    || !System.getProperty("java.version").equals(in.readUTF())) {
+                LOG.info("Auxclasspath index invalidated, PMD version, Java version or format changed.");
+                changed = true;
+                return;
+            }
+
+            final boolean sameClasspath = in.readLong() == classpathChecksum && keepMissingNames;
+            final int countMissing = in.readInt();
+            for (int i = 0; i < countMissing; i++) {
+                final String name = in.readUTF();
+                if (sameClasspath) {
+                    missingNames.add(name);
+                }
+            }
+
+            final int countJars = in.readInt();
+            for (int i = 0; i < countJars; i++) {
+                final String jar = in.readUTF();
+                final long checksum = in.readLong();
+                final boolean upToDate = Long.valueOf(checksum).equals(jarChecksums.get(jar));
+                final int countClasses = in.readInt();
+                for (int j = 0; j < countClasses; j++) {
+                    final String className = in.readUTF();
+                    final Map<String, String> imports = new HashMap<>();
+                    final int countImports = in.readInt();
+                    for (int k = 0; k < countImports; k++) {
+                        imports.put(in.readUTF(), in.readUTF());
+                    }
+                    if (upToDate) {
+                        importedClasses.put(className, new ImportedClasses(jar, Collections.unmodifiableMap(imports)));
+                    }
+                }
+                changed |= !upToDate;
+            }
+            changed |= !sameClasspath && countMissing > 0;
+        } catch (final IOException e) {
+            LOG.warning("Could not load the auxclasspath index " + file.getPath() + ". " + e.getMessage());
+            importedClasses.clear();
+            missingNames.clear();
+            changed = true;
+        }
+    }
+
+    /**
+     * Returns true, if the given name couldn't be found on the classpath before.
+     *
+     * @param name The binary name of the class
+     * @return true if the class is known to be missing
+     */
+    public boolean isMissing(final String name) {
+        return missingNames.contains(name);
+    }
+
+    /**
+     * Records, that the given name can't be found on the classpath.
+     *
+     * @param name The binary name of the class
+     */
+    public void addMissing(final String name) {
+        if (keepMissingNames && missingNames.add(name)) {
+            changed = true;
+        }
+    }
+
+    /**
+     * Returns the stored imported classes of the given class, if the jar it was read from didn't change.
+     *
+     * @param className The binary name of the class
+     * @return The imported classes by simple name, or null if they are unknown
+     */
+    public Map<String, String> getImportedClasses(final String className) {
+        final ImportedClasses entry = importedClasses.get(className);
+        return entry == null ? null : entry.imports;
+    }
+
+    /**
+     * Stores the imported classes of the given class. They are only stored,
+     * if the class file is contained in a jar on the auxclasspath.
+     *
+     * @param className The binary name of the class
+     * @param classFile The URL of the class file, that has been read
+     * @param imports   The imported classes by simple name
+     */
+    public void putImportedClasses(final String className, final URL classFile, final Map<String, String> imports) {
+        final String jar = getJar(classFile);
+        if (jar != null && jarChecksums.containsKey(jar)) {
+            final Map<String, String> copy = Collections.unmodifiableMap(new HashMap<>(imports));
+            importedClasses.put(className, new ImportedClasses(jar, copy));
+            changed = true;
+        }
+    }
+
+    /**
+     * Returns the URL of the jar of a "jar:" URL, e.g. "file:/lib/a.jar" for "jar:file:/lib/a.jar!/a/A.class".
+     */
+    private static String getJar(final URL classFile) {
+        if (classFile == null || !"jar".equals(classFile.getProtocol())) {
+            return null;
+        }
+        final String path = classFile.getPath();
+        final int separator = path.indexOf("!/");
+        return separator < 0 ? null : path.substring(0, separator);
+    }
+
+    /**
+     * Writes the data to the file, unless nothing changed.
+     */
+    public void persist() {
+        if (!changed) {
+            return;
+        }
+
+        final Map<String, Map<String, Map<String, String>>> byJar = new HashMap<>();
+        for (final Map.Entry<String, ImportedClasses> entry : importedClasses.entrySet()) {
+            Map<String, Map<String, String>> classes = byJar.get(entry.getValue().jar);
+            if (classes == null) {
+                classes = new HashMap<>();
+                byJar.put(entry.getValue().jar, classes);
+            }
+            classes.put(entry.getKey(), entry.getValue().imports);
+        }
+
+        final File tempFile = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tempFile.toPath())))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(PMDVersion.VERSION);
+                out.writeUTF(System.getProperty("java.version"));
+                out.writeLong(classpathChecksum);
+                out.writeInt(missingNames.size());
+                for (final String name : missingNames) {
+                    out.writeUTF(name);
+                }
+                out.writeInt(byJar.size());
+                for (final Map.Entry<String, Map<String, Map<String, String>>> jar : byJar.entrySet()) {
+                    out.writeUTF(jar.getKey());
+                    out.writeLong(jarChecksums.get(jar.getKey()));
+                    out.writeInt(jar.getValue().size());
+                    for (final Map.Entry<String, Map<String, String>> classEntry : jar.getValue().entrySet()) {
+                        out.writeUTF(classEntry.getKey());
+                        out.writeInt(classEntry.getValue().size());
+                        for (final Map.Entry<String, String> imported : classEntry.getValue().entrySet()) {
+                            out.writeUTF(imported.getKey());
+                            out.writeUTF(imported.getValue());
+                        }
+                    }
+                }
+            }
+
+            try {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tempFile.toPath());
+            }
+        } catch (final IOException e) {
+            LOG.severe("Could not persist the auxclasspath index to file. " + e.getMessage());
+        }
+    }
+
+    private static final class ImportedClasses {
+        private final String jar;
+        private final Map<String, String> imports;
+
+        ImportedClasses(final String jar, final Map<String, String> imports) {
+            this.jar = jar;
+            this.imports = imports;
+        }
+    }
+}
@@ -21,6 +21,7 @@ import net.sourceforge.pmd.annotation.InternalApi;
 public class CachedRuleMapper {
 
     private final Map<String, Rule> cachedRulesInstances = new HashMap<>();
+    private final Map<String, Long> ruleChecksums = new HashMap<>();
 
     /**
      * Finds a rule instance for the given rule class name, name and target language
@@ -39,11 +40,26 @@ public class CachedRuleMapper {
      */
     public void initialize(final RuleSets rs) {
         for (final Rule r : rs.getAllRules()) {
-            cachedRulesInstances.put(getRuleKey(r.getRuleClass(), r.getName(), r.getLanguage().getTerseName()), r);
+            cachedRulesInstances.put(getRuleKey(r), r);
         }
+        for (final Map.Entry<Rule, Long> entry : rs.getRuleChecksums().entrySet()) {
+            ruleChecksums.put(getRuleKey(entry.getKey()), entry.getValue());
+        }
+    }
+
+    /**
+     * Returns the checksums of the rules this mapper was initialized with, by rule key.
+     * @see RuleSets#getRuleChecksums()
+     */
+    /* package */ Map<String, Long> getRuleChecksums() {
+        return ruleChecksums;
+    }
+
+    /* package */ static String getRuleKey(final Rule rule) {
+        return getRuleKey(rule.getRuleClass(), rule.getName(), rule.getLanguage().getTerseName());
     }
-    
-    private String getRuleKey(final String className, final String ruleName, final String languageName) {
+
+    /* package */ static String getRuleKey(final String className, final String ruleName, final String languageName) {
         return className + "$$" + ruleName + "$$" + languageName;
     }
 }
@@ -37,7 +37,7 @@ public final class CachedRuleViolation implements RuleViolation {
     private final String methodName;
     private final String variableName;
 
-    private CachedRuleViolation(final CachedRuleMapper mapper, final String description,
+    /* package */ CachedRuleViolation(final CachedRuleMapper mapper, final String description,
             final String fileName, final String ruleClassName, final String ruleName,
             final String ruleTargetLanguage, final int beginLine, final int beginColumn,
             final int endLine, final int endColumn, final String packageName,
@@ -64,6 +64,26 @@ public final class CachedRuleViolation implements RuleViolation {
         return mapper.getRuleForClass(ruleClassName, ruleName, ruleTargetLanguage);
     }
 
+    /**
+     * Returns the key of the rule, that reported this violation.
+     * @see CachedRuleMapper#getRuleKey(String, String, String)
+     */
+    /* package */ String getRuleKey() {
+        return CachedRuleMapper.getRuleKey(ruleClassName, ruleName, ruleTargetLanguage);
+    }
+
+    /* package */ String getRuleClassName() {
+        return ruleClassName;
+    }
+
+    /* package */ String getRuleName() {
+        return ruleName;
+    }
+
+    /* package */ String getRuleTargetLanguage() {
+        return ruleTargetLanguage;
+    }
+
     @Override
     public String getDescription() {
         return description;
@@ -119,38 +139,11 @@ public final class CachedRuleViolation implements RuleViolation {
         return variableName;
     }
 
-    /**
-     * Helper method to load a {@link CachedRuleViolation} from an input stream.
-     *
-     * @param stream The stream from which to load the violation.
-     * @param fileName The name of the file on which this rule was reported.
-     * @param mapper The mapper to be used to obtain rule instances from the active rulesets.
-     * @return The loaded rule violation.
-     * @throws IOException
-     */
-    /* package */ static CachedRuleViolation loadFromStream(final DataInputStream stream,
-            final String fileName, final CachedRuleMapper mapper) throws IOException {
-        final String description = stream.readUTF();
-        final String ruleClassName = stream.readUTF();
-        final String ruleName = stream.readUTF();
-        final String ruleTargetLanguage = stream.readUTF();
-        final int beginLine = stream.readInt();
-        final int beginColumn = stream.readInt();
-        final int endLine = stream.readInt();
-        final int endColumn = stream.readInt();
-        final String packageName = stream.readUTF();
-        final String className = stream.readUTF();
-        final String methodName = stream.readUTF();
-        final String variableName = stream.readUTF();
-
-        return new CachedRuleViolation(mapper, description, fileName, ruleClassName, ruleName, ruleTargetLanguage,
-                beginLine, beginColumn, endLine, endColumn, packageName, className, methodName, variableName);
-    }
-
     /**
      * Helper method to store a {@link RuleViolation} in an output stream to be later
      * retrieved as a {@link CachedRuleViolation}
      *
+     * @see CachedViolationList#addFromStream(DataInputStream, String)
      * @param stream The stream on which to store the violation.
      * @param violation The rule violation to cache.
      * @throws IOException
@@ -158,9 +151,17 @@ public final class CachedRuleViolation implements RuleViolation {
     /* package */ static void storeToStream(final DataOutputStream stream,
             final RuleViolation violation) throws IOException {
         stream.writeUTF(getValueOrEmpty(violation.getDescription()));
-        stream.writeUTF(getValueOrEmpty(violation.getRule().getRuleClass()));
-        stream.writeUTF(getValueOrEmpty(violation.getRule().getName()));
-        stream.writeUTF(getValueOrEmpty(violation.getRule().getLanguage().getTerseName()));
+        if (violation instanceof CachedRuleViolation) {
+            // no need to look up the rule
+            final CachedRuleViolation cached = (CachedRuleViolation) violation;
+            stream.writeUTF(getValueOrEmpty(cached.ruleClassName));
+            stream.writeUTF(getValueOrEmpty(cached.ruleName));
+            stream.writeUTF(getValueOrEmpty(cached.ruleTargetLanguage));
+        } else {
+            stream.writeUTF(getValueOrEmpty(violation.getRule().getRuleClass()));
+            stream.writeUTF(getValueOrEmpty(violation.getRule().getName()));
+            stream.writeUTF(getValueOrEmpty(violation.getRule().getLanguage().getTerseName()));
+        }
         stream.writeInt(violation.getBeginLine());
         stream.writeInt(violation.getBeginColumn());
         stream.writeInt(violation.getEndLine());
@@ -0,0 +1,162 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sourceforge.pmd.RuleViolation;
+
+/**
+ * The violations of a single file in a compact, columnar layout. Every
+ * violation only takes a few ints, the strings are stored once per file in a
+ * string table, and the ints are offsets into that table. The violations are
+ * only materialized as {@link CachedRuleViolation} views, when they are read.
+ *
+ * <p>Violations, that are added, are converted to this layout, the list
+ * doesn't keep a reference to them.
+ */
+/* package */ final class CachedViolationList extends AbstractList<RuleViolation> {
+
+    private static final int FILE_NAME = 0;
+    private static final int DESCRIPTION = 1;
+    private static final int RULE_CLASS_NAME = 2;
+    private static final int RULE_NAME = 3;
+    private static final int RULE_TARGET_LANGUAGE = 4;
+    private static final int BEGIN_LINE = 5;
+    private static final int BEGIN_COLUMN = 6;
+    private static final int END_LINE = 7;
+    private static final int END_COLUMN = 8;
+    private static final int PACKAGE_NAME = 9;
+    private static final int CLASS_NAME = 10;
+    private static final int METHOD_NAME = 11;
+    private static final int VARIABLE_NAME = 12;
+    private static final int FIELD_COUNT = 13;
+
+    /** Marks a null string. */
+    private static final int NULL = -1;
+
+    private final CachedRuleMapper mapper;
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, Integer> stringIndexes = new HashMap<>();
+    private int[] fields;
+    private int size;
+
+    /* package */ CachedViolationList(final CachedRuleMapper mapper) {
+        this(mapper, 0);
+    }
+
+    /* package */ CachedViolationList(final CachedRuleMapper mapper, final int initialCapacity) {
+        this.mapper = mapper;
+        this.fields = new int[Math.max(initialCapacity, 4) * FIELD_COUNT];
+    }
+
+    @Override
+    public RuleViolation get(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        final int offset = index * FIELD_COUNT;
+        return new CachedRuleViolation(mapper, string(offset + DESCRIPTION), string(offset + FILE_NAME),
+                string(offset + RULE_CLASS_NAME), string(offset + RULE_NAME), string(offset + RULE_TARGET_LANGUAGE),
+                fields[offset + BEGIN_LINE], fields[offset + BEGIN_COLUMN],
+                fields[offset + END_LINE], fields[offset + END_COLUMN],
+                string(offset + PACKAGE_NAME), string(offset + CLASS_NAME),
+                string(offset + METHOD_NAME), string(offset + VARIABLE_NAME));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean add(final RuleViolation violation) {
+        final int offset = nextOffset();
+        fields[offset + FILE_NAME] = index(violation.getFilename());
+        fields[offset + DESCRIPTION] = index(violation.getDescription());
+        if (violation instanceof CachedRuleViolation) {
+            // don't look up the rule, it might not even be part of the current rulesets
+            final CachedRuleViolation cached = (CachedRuleViolation) violation;
+            fields[offset + RULE_CLASS_NAME] = index(cached.getRuleClassName());
+            fields[offset + RULE_NAME] = index(cached.getRuleName());
+            fields[offset + RULE_TARGET_LANGUAGE] = index(cached.getRuleTargetLanguage());
+        } else {
+            fields[offset + RULE_CLASS_NAME] = index(violation.getRule().getRuleClass());
+            fields[offset + RULE_NAME] = index(violation.getRule().getName());
+            fields[offset + RULE_TARGET_LANGUAGE] = index(violation.getRule().getLanguage().getTerseName());
+        }
+        fields[offset + BEGIN_LINE] = violation.getBeginLine();
+        fields[offset + BEGIN_COLUMN] = violation.getBeginColumn();
+        fields[offset + END_LINE] = violation.getEndLine();
+        fields[offset + END_COLUMN] = violation.getEndColumn();
+        fields[offset + PACKAGE_NAME] = index(violation.getPackageName());
+        fields[offset + CLASS_NAME] = index(violation.getClassName());
+        fields[offset + METHOD_NAME] = index(violation.getMethodName());
+        fields[offset + VARIABLE_NAME] = index(violation.getVariableName());
+        size++;
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Reads a violation stored with {@link CachedRuleViolation#storeToStream(java.io.DataOutputStream, RuleViolation)}
+     * and adds it to this list, without creating an intermediate violation.
+     *
+     * @param stream   The stream from which to load the violation.
+     * @param fileName The name of the file on which the rule was reported.
+     * @throws IOException If the stream can't be read
+     */
+    /* package */ void addFromStream(final DataInputStream stream, final String fileName) throws IOException {
+        final int offset = nextOffset();
+        fields[offset + FILE_NAME] = index(fileName);
+        fields[offset + DESCRIPTION] = index(stream.readUTF());
+        fields[offset + RULE_CLASS_NAME] = index(stream.readUTF());
+        fields[offset + RULE_NAME] = index(stream.readUTF());
+        fields[offset + RULE_TARGET_LANGUAGE] = index(stream.readUTF());
+        fields[offset + BEGIN_LINE] = stream.readInt();
+        fields[offset + BEGIN_COLUMN] = stream.readInt();
+        fields[offset + END_LINE] = stream.readInt();
+        fields[offset + END_COLUMN] = stream.readInt();
+        fields[offset + PACKAGE_NAME] = index(stream.readUTF());
+        fields[offset + CLASS_NAME] = index(stream.readUTF());
+        fields[offset + METHOD_NAME] = index(stream.readUTF());
+        fields[offset + VARIABLE_NAME] = index(stream.readUTF());
+        size++;
+        modCount++;
+    }
+
+    private int nextOffset() {
+        final int offset = size * FIELD_COUNT;
+        if (offset + FIELD_COUNT > fields.length) {
+            fields = Arrays.copyOf(fields, Math.max(offset + FIELD_COUNT, fields.length + (fields.length >> 1)));
+        }
+        return offset;
+    }
+
+    private int index(final String string) {
+        if (string == null) {
+            return NULL;
+        }
+        Integer index = stringIndexes.get(string);
+        if (index == null) {
+            index = strings.size();
+            strings.add(string);
+            stringIndexes.put(string, index);
+        }
+        return index;
+    }
+
+    private String string(final int field) {
+        final int index = fields[field];
+        return index == NULL ? null : strings.get(index);
+    }
+}
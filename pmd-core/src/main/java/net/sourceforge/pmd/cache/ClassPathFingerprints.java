@@ -0,0 +1,163 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Adler32;
+import java.util.zip.CheckedInputStream;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Computes the checksums of classpath entries. The checksum of a file is
+ * remembered together with its size and modification time, so that it only
+ * needs to be computed again, when the file changed.
+ */
+final class ClassPathFingerprints {
+
+    private static final Logger LOG = Logger.getLogger(ClassPathFingerprints.class.getName());
+
+    /** The fingerprints known from the previous analysis. */
+    private final Map<String, Fingerprint> previousFingerprints = new HashMap<>();
+    /** The fingerprints of the entries used in the current analysis. */
+    private final Map<String, Fingerprint> currentFingerprints = new LinkedHashMap<>();
+
+    /**
+     * Computes a checksum over the contents of the given classpath entries.
+     * Entries, that don't exist, are ignored.
+     *
+     * @param classpathEntries The classpath entries
+     * @return The combined checksum
+     */
+    public long computeHash(final URL... classpathEntries) {
+        long checksum = 1;
+        for (final URL url : classpathEntries) {
+            try {
+                checksum = checksum * 31 + getChecksum(url);
+            } catch (final FileNotFoundException ignored) {
+                LOG.warning("Auxclasspath entry " + url.toString() + " doesn't exist, ignoring it");
+            } catch (final IOException e) {
+                // Can this even happen?
+                LOG.log(Level.SEVERE, "Incremental analysis can't check auxclasspath contents", e);
+                throw new RuntimeException(e);
+            }
+        }
+        return checksum;
+    }
+
+    /**
+     * Returns the checksum of the given local file, if it was computed in the current analysis.
+     *
+     * @param url The classpath entry
+     * @return The checksum, or null if it's unknown
+     */
+    public Long getCurrentChecksum(final URL url) {
+        final Fingerprint fingerprint = currentFingerprints.get(url.toString());
+        return fingerprint == null ? null : fingerprint.checksum;
+    }
+
+    private long getChecksum(final URL url) throws IOException {
+        final String key = url.toString();
+        final File file = toFile(url);
+        if (file == null) {
+            // not a local file, we can't tell whether it changed
+            return computeChecksum(url);
+        }
+        if (!file.exists()) {
+            throw new FileNotFoundException(file.getPath());
+        }
+
+        final long size = file.length();
+        final long lastModified = AnalysisResult.trustedLastModified(file);
+        final Fingerprint previous = previousFingerprints.get(key);
+        final Fingerprint current;
+        if (previous != null && lastModified != AnalysisResult.UNKNOWN
+                && previous.lastModified == lastModified && previous.size == size) {
+            current = previous;
+        } else {
+            current = new Fingerprint(size, lastModified, computeChecksum(url));
+        }
+        currentFingerprints.put(key, current);
+        return current.checksum;
+    }
+
+    private static File toFile(final URL url) {
+        if (!"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return new File(url.toURI());
+        } catch (final URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static long computeChecksum(final URL url) throws IOException {
+        try (CheckedInputStream inputStream = new CheckedInputStream(url.openStream(), new Adler32())) {
+            // Just read it, the CheckedInputStream will update the checksum on it's own
+            while (IOUtils.skip(inputStream, Long.MAX_VALUE) == Long.MAX_VALUE) {
+                // just loop
+            }
+            return inputStream.getChecksum().getValue();
+        }
+    }
+
+    /**
+     * Loads the fingerprints of a previous analysis.
+     *
+     * @param stream The stream to read from
+     * @throws IOException If the stream can't be read
+     */
+    public void load(final DataInputStream stream) throws IOException {
+        final int count = stream.readInt();
+        for (int i = 0; i < count; i++) {
+            final String key = stream.readUTF();
+            previousFingerprints.put(key, new Fingerprint(stream.readLong(), stream.readLong(), stream.readLong()));
+        }
+    }
+
+    /**
+     * Stores the fingerprints of the entries used in the current analysis.
+     * If no checksum was computed in the current analysis, the previous
+     * fingerprints are stored.
+     *
+     * @param stream The stream to write to
+     * @throws IOException If the stream can't be written
+     */
+    public void store(final DataOutputStream stream) throws IOException {
+        final Map<String, Fingerprint> fingerprints = currentFingerprints.isEmpty()
+                ? previousFingerprints : currentFingerprints;
+        stream.writeInt(fingerprints.size());
+        for (final Map.Entry<String, Fingerprint> entry : fingerprints.entrySet()) {
+            stream.writeUTF(entry.getKey());
+            stream.writeLong(entry.getValue().size);
+            stream.writeLong(entry.getValue().lastModified);
+            stream.writeLong(entry.getValue().checksum);
+        }
+    }
+
+    private static final class Fingerprint {
+        /* default */ final long size;
+        /* default */ final long lastModified;
+        /* default */ final long checksum;
+
+        Fingerprint(final long size, final long lastModified, final long checksum) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.checksum = checksum;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import net.sourceforge.pmd.annotation.Experimental;
+
+/**
+ * Stores the entries of a {@link SharedAnalysisCache} as files in a directory,
+ * e.g. on a network share used by several developers and build agents. Each entry
+ * is written to a temporary file first, which is then atomically renamed,
+ * so concurrent readers and writers never see incomplete entries.
+ */
+@Experimental
+public class DirectoryAnalysisCacheBackend implements AnalysisCacheBackend {
+
+    /** Number of key characters used as name of the subdirectory, which keeps the directories small. */
+    private static final int SHARD_LENGTH = 2;
+
+    private final File directory;
+
+    public DirectoryAnalysisCacheBackend(final File directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public byte[] get(final String key) throws IOException {
+        try {
+            return Files.readAllBytes(getEntryPath(key));
+        } catch (final NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void put(final String key, final byte[] entry) throws IOException {
+        final Path entryPath = getEntryPath(key);
+        final Path shard = entryPath.getParent();
+        Files.createDirectories(shard);
+
+        // the temporary file must be on the same file system, otherwise it can't be renamed atomically
+        final Path tempFile = Files.createTempFile(shard, key, ".tmp");
+        try {
+            Files.write(tempFile, entry);
+            try {
+                Files.move(tempFile, entryPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, entryPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private Path getEntryPath(final String key) {
+        if (key.length() <= SHARD_LENGTH || !key.matches("[a-zA-Z0-9-]+")) {
+            throw new IllegalArgumentException("Invalid cache key: " + key);
+        }
+        return new File(new File(directory, key.substring(0, SHARD_LENGTH)), key).toPath();
+    }
+}
@@ -4,15 +4,27 @@
 
 package net.sourceforge.pmd.cache;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -23,13 +35,50 @@ import net.sourceforge.pmd.annotation.InternalApi;
 /**
  * An analysis cache backed by a regular file.
  *
+ * <p>The file starts with a fixed size header, followed by the PMD version,
+ * the cached results of each file and an index pointing to these results.
+ * The header only contains the offset of the current index. The index contains
+ * the checksums of the rules and classpath, that produced the results. Only the
+ * index is loaded into memory. The file is kept open, the violations of a file
+ * are read from it and decoded, when they are requested, so that the heap only
+ * holds the violations of the files in use. The file is not memory mapped,
+ * because a mapping can't be released before the file is replaced, which fails
+ * on Windows. The open file is closed, when the cache is persisted.
+ *
+ * <p>When persisted, only the changed results are appended to the file together
+ * with a new index, unless too much space is wasted by outdated results. The
+ * appended data is forced to the disk, before the index offset in the header
+ * is updated with a single write. Until then, readers still see the previous
+ * index, which only points to data, that is never overwritten.
+ *
  * @deprecated This is internal API, will be hidden with 7.0.0
  */
 @Deprecated
 @InternalApi
 public class FileAnalysisCache extends AbstractAnalysisCache {
 
+    /** "PMDC", distinguishes the indexed format from the old stream format. */
+    private static final int MAGIC = 0x504D4443;
+    private static final int FORMAT_VERSION = 7;
+
+    /** Position of the index offset, the last field of the header. */
+    private static final int INDEX_OFFSET_POSITION = 8;
+    private static final int FIXED_HEADER_SIZE = INDEX_OFFSET_POSITION + 8;
+
+    /** Outdated results and indexes are only removed, once they take up more space than this. */
+    private static final long MAX_WASTED_BYTES = 1024 * 1024;
+
     private final File cacheFile;
+    /** The multifile data, stored next to the cache file, only loaded when requested. */
+    private MultifileIndexCache multifileIndex;
+    /** The knowledge about the auxclasspath, stored next to the cache file, only loaded when requested. */
+    private AuxClasspathIndex auxClasspathIndex;
+
+    /** The size of the loaded cache file, or -1 if no cache in the current format was loaded. */
+    private long loadedFileSize = -1;
+    private long loadedDataStart;
+    /** The loaded cache file, from which the violations are read, or null if it isn't open. */
+    private RandomAccessFile loadedFile;
 
     /**
      * Creates a new cache backed by the given file, and attempts to load pre-existing data from it.
@@ -48,42 +97,87 @@ public class FileAnalysisCache extends AbstractAnalysisCache {
      */
     private void loadFromFile(final File cacheFile) {
         if (cacheExists()) {
-            try (
-                DataInputStream inputStream = new DataInputStream(
-                    new BufferedInputStream(Files.newInputStream(cacheFile.toPath())));
-            ) {
-                final String cacheVersion = inputStream.readUTF();
+            @SuppressWarnings("PMD.CloseResource") // kept open for the stored results, closed when persisted
+            RandomAccessFile file = null;
+            try {
+                file = new RandomAccessFile(cacheFile, "r");
+                final long size = file.length();
+                if (size > Integer.MAX_VALUE) {
+                    LOG.warning("Cache file " + cacheFile.getPath() + " is too big, will not be used for current analysis");
+                    return;
+                }
+
+                if (size < FIXED_HEADER_SIZE || file.readInt() != MAGIC || file.readInt() != FORMAT_VERSION) {
+                    LOG.info("Analysis cache invalidated, cache format changed.");
+                    return;
+                }
+
+                final long indexOffset = file.readLong();
+                final String cacheVersion = file.readUTF();
 
                 if (PMDVersion.VERSION.equals(cacheVersion)) {
                     // Cache seems valid, load the rest
+                    final long dataStart = file.getFilePointer();
+                    if (indexOffset < dataStart || indexOffset > size) {
+                        throw new EOFException();
+                    }
+
+                    // Index of the cached results, the results themselves are read lazily
+                    final byte[] indexBytes = new byte[(int) (size - indexOffset)];
+                    file.seek(indexOffset);
+                    file.readFully(indexBytes);
+                    @SuppressWarnings("PMD.CloseResource") // only wraps the bytes
+                    final DataInputStream index = new DataInputStream(new ByteArrayInputStream(indexBytes));
 
                     // Get checksums
-                    rulesetChecksum = inputStream.readLong();
-                    auxClassPathChecksum = inputStream.readLong();
-                    executionClassPathChecksum = inputStream.readLong();
-
-                    // Cached results
-                    while (inputStream.available() > 0) {
-                        final String fileName = inputStream.readUTF();
-                        final long checksum = inputStream.readLong();
-
-                        final int countViolations = inputStream.readInt();
-                        final List<RuleViolation> violations = new ArrayList<>(countViolations);
-                        for (int i = 0; i < countViolations; i++) {
-                            violations.add(CachedRuleViolation.loadFromStream(inputStream, fileName, ruleMapper));
+                    auxClassPathChecksum = index.readLong();
+                    executionClassPathChecksum = index.readLong();
+
+                    // Checksums of the rules, that produced the cached results
+                    final int countRules = index.readInt();
+                    for (int i = 0; i < countRules; i++) {
+                        final String ruleKey = index.readUTF();
+                        ruleChecksums.put(ruleKey, index.readLong());
+                    }
+
+                    // Fingerprints of the classpath entries, so unchanged entries are not read again
+                    classPathFingerprints.load(index);
+
+                    final int countEntries = index.readInt();
+                    for (int i = 0; i < countEntries; i++) {
+                        final String fileName = index.readUTF();
+                        final long checksum = index.readLong();
+                        final long fileSize = index.readLong();
+                        final long fileLastModified = index.readLong();
+                        final int offset = index.readInt();
+                        final int length = index.readInt();
+                        if (offset < dataStart || length < 0 || offset + (long) length > indexOffset) {
+                            throw new EOFException();
                         }
 
-                        fileResultsCache.put(fileName, new AnalysisResult(checksum, violations));
+                        fileResultsCache.put(fileName,
+                                new StoredAnalysisResult(checksum, fileSize, fileLastModified, fileName, file,
+                                        offset, length, ruleMapper));
                     }
 
+                    loadedFileSize = size;
+                    loadedDataStart = dataStart;
+                    // the stored results read their violations from the file
+                    loadedFile = file;
                     LOG.info("Analysis cache loaded");
                 } else {
                     LOG.info("Analysis cache invalidated, PMD version changed.");
                 }
             } catch (final EOFException e) {
+                fileResultsCache.clear();
                 LOG.warning("Cache file " + cacheFile.getPath() + " is malformed, will not be used for current analysis");
             } catch (final IOException e) {
+                fileResultsCache.clear();
                 LOG.severe("Could not load analysis cache from file. " + e.getMessage());
+            } finally {
+                if (loadedFile == null) {
+                    closeQuietly(file);
+                }
             }
         } else if (cacheFile.isDirectory()) {
             LOG.severe("The configured cache location must be the path to a file, but is a directory.");
@@ -108,40 +202,303 @@ public class FileAnalysisCache extends AbstractAnalysisCache {
             }
         }
 
+        try {
+            if (cacheFileShouldBeCreated || !appendToFile()) {
+                rewriteFile();
+            }
+            if (cacheFileShouldBeCreated) {
+                LOG.info("Analysis cache created");
+            } else {
+                LOG.info("Analysis cache updated");
+            }
+        } catch (final IOException e) {
+            LOG.severe("Could not persist analysis cache to file. " + e.getMessage());
+        } finally {
+            closeLoadedFile();
+        }
+
+        if (multifileIndex != null) {
+            multifileIndex.persist();
+        }
+        if (auxClasspathIndex != null) {
+            auxClasspathIndex.persist();
+        }
+    }
+
+    @Override
+    public MultifileIndexCache getMultifileIndex() {
+        if (multifileIndex == null) {
+            multifileIndex = new MultifileIndexCache(new File(cacheFile.getPath() + ".multifile"));
+        }
+        return multifileIndex;
+    }
+
+    @Override
+    public AuxClasspathIndex getAuxClasspathIndex() {
+        if (auxClasspathIndex == null) {
+            // the checksums of the jars were computed, when the validity of the cache was checked
+            final Map<String, Long> jarChecksums = new LinkedHashMap<>();
+            for (final URL entry : auxClassPathEntries) {
+                final Long checksum = classPathFingerprints.getCurrentChecksum(entry);
+                if (checksum != null && isFile(entry)) {
+                    jarChecksums.put(entry.toString(), checksum);
+                }
+            }
+            auxClasspathIndex = new AuxClasspathIndex(new File(cacheFile.getPath() + ".auxclasspath"),
+                    auxClassPathChecksum * 31 + executionClassPathChecksum, jarChecksums,
+                    jarChecksums.size() == auxClassPathEntries.length);
+        }
+        return auxClasspathIndex;
+    }
+
+    private static boolean isFile(final URL url) {
+        try {
+            return new File(url.toURI()).isFile();
+        } catch (final URISyntaxException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Appends the changed results and a new index to the loaded cache file.
+     * The results of unchanged files are still referenced at their old position.
+     *
+     * @return false if the file needs to be rewritten instead
+     */
+    private boolean appendToFile() throws IOException {
+        if (loadedFileSize < 0 || cacheFile.length() != loadedFileSize || !areAllRulesUpToDate()) {
+            return false;
+        }
+
+        final Map<String, StoredAnalysisResult> reused = new LinkedHashMap<>();
+        final ByteArrayOutputStream appended = new ByteArrayOutputStream();
+        final DataOutputStream appendedStream = new DataOutputStream(appended);
+        final Map<String, AnalysisResult> appendedResults = new LinkedHashMap<>();
+        final Map<String, long[]> appendedEntries = new LinkedHashMap<>();
+        long liveBytes = 0;
+
+        for (final Map.Entry<String, AnalysisResult> resultEntry : updatedResultsCache.entrySet()) {
+            final AnalysisResult previous = fileResultsCache.get(resultEntry.getKey());
+            if (previous instanceof StoredAnalysisResult
+                    && previous.getFileChecksum() == resultEntry.getValue().getFileChecksum()) {
+                // cache hit, the stored violations are still valid
+                final StoredAnalysisResult stored = (StoredAnalysisResult) previous;
+                reused.put(resultEntry.getKey(), stored);
+                liveBytes += stored.length;
+            } else {
+                final int start = appendedStream.size();
+                writeViolations(appendedStream, resultEntry.getValue().getViolations());
+                appendedResults.put(resultEntry.getKey(), resultEntry.getValue());
+                appendedEntries.put(resultEntry.getKey(), new long[] {start, appendedStream.size() - start});
+            }
+        }
+        liveBytes += appended.size();
+
+        final long wastedBytes = loadedFileSize - loadedDataStart + appended.size() - liveBytes;
+        if (reused.isEmpty() || wastedBytes > liveBytes && wastedBytes > MAX_WASTED_BYTES
+                || loadedFileSize + appended.size() > Integer.MAX_VALUE) {
+            // most of the file would be outdated results, better start from scratch
+            return false;
+        }
+
+        final ByteArrayOutputStream index = new ByteArrayOutputStream();
+        final DataOutputStream indexStream = new DataOutputStream(index);
+        writeChecksums(indexStream);
+        writeRuleChecksums(indexStream);
+        classPathFingerprints.store(indexStream);
+        indexStream.writeInt(reused.size() + appendedEntries.size());
+        for (final Map.Entry<String, StoredAnalysisResult> entry : reused.entrySet()) {
+            // the metadata of the updated result might be more recent
+            writeIndexEntry(indexStream, entry.getKey(), updatedResultsCache.get(entry.getKey()),
+                    entry.getValue().offset, entry.getValue().length);
+        }
+        for (final Map.Entry<String, long[]> entry : appendedEntries.entrySet()) {
+            final long[] value = entry.getValue();
+            writeIndexEntry(indexStream, entry.getKey(), appendedResults.get(entry.getKey()),
+                    loadedFileSize + value[0], value[1]);
+        }
+
+        try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.WRITE);
+             FileLock ignored = channel.lock()) {
+            if (channel.size() != loadedFileSize) {
+                // another run changed the file since it was loaded
+                return false;
+            }
+            final long indexOffset = loadedFileSize + appended.size();
+            writeFully(channel, ByteBuffer.wrap(appended.toByteArray()), loadedFileSize);
+            writeFully(channel, ByteBuffer.wrap(index.toByteArray()), indexOffset);
+            channel.force(false);
+
+            // the new data is complete on disk, now let the header point to it
+            final ByteBuffer header = ByteBuffer.allocate(8);
+            header.putLong(indexOffset);
+            header.flip();
+            writeFully(channel, header, INDEX_OFFSET_POSITION);
+            channel.force(false);
+        }
+        return true;
+    }
+
+    /**
+     * Writes a new cache file containing only the current results.
+     */
+    private void rewriteFile() throws IOException {
+        final File tempFile = new File(cacheFile.getAbsoluteFile().getParentFile(), cacheFile.getName() + ".tmp");
+        final List<Map.Entry<String, AnalysisResult>> results = new ArrayList<>(updatedResultsCache.size());
+        final List<long[]> entries = new ArrayList<>(updatedResultsCache.size());
+
         try (
             DataOutputStream outputStream = new DataOutputStream(
-                new BufferedOutputStream(Files.newOutputStream(cacheFile.toPath())))
+                new BufferedOutputStream(Files.newOutputStream(tempFile.toPath())))
         ) {
+            outputStream.writeInt(MAGIC);
+            outputStream.writeInt(FORMAT_VERSION);
+            // the index offset is patched in later on
+            outputStream.writeLong(0L);
             outputStream.writeUTF(pmdVersion);
 
-            outputStream.writeLong(rulesetChecksum);
-            outputStream.writeLong(auxClassPathChecksum);
-            outputStream.writeLong(executionClassPathChecksum);
-
             for (final Map.Entry<String, AnalysisResult> resultEntry : updatedResultsCache.entrySet()) {
-                final List<RuleViolation> violations = resultEntry.getValue().getViolations();
+                final int start = outputStream.size();
+                writeViolations(outputStream, resultEntry.getValue().getViolations());
+                results.add(resultEntry);
+                entries.add(new long[] {start, outputStream.size() - start});
+            }
 
-                outputStream.writeUTF(resultEntry.getKey()); // the full filename
-                outputStream.writeLong(resultEntry.getValue().getFileChecksum());
+            final int indexOffset = outputStream.size();
+            writeChecksums(outputStream);
+            writeRuleChecksums(outputStream);
+            classPathFingerprints.store(outputStream);
+            outputStream.writeInt(entries.size());
+            for (int i = 0; i < entries.size(); i++) {
+                final long[] entry = entries.get(i);
+                writeIndexEntry(outputStream, results.get(i).getKey(), results.get(i).getValue(), entry[0], entry[1]);
+            }
+            outputStream.flush();
 
-                outputStream.writeInt(violations.size());
-                for (final RuleViolation rv : violations) {
-                    CachedRuleViolation.storeToStream(outputStream, rv);
-                }
+            try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.WRITE)) {
+                final ByteBuffer buffer = ByteBuffer.allocate(8);
+                buffer.putLong(indexOffset);
+                buffer.flip();
+                writeFully(channel, buffer, INDEX_OFFSET_POSITION);
+                // the file must be complete on disk, before it replaces the old one
+                channel.force(false);
             }
-            if (cacheFileShouldBeCreated) {
-                LOG.info("Analysis cache created");
-            } else {
-                LOG.info("Analysis cache updated");
+        }
+
+        // the loaded file can't be replaced on Windows, while it is open
+        closeLoadedFile();
+        try {
+            Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (final AtomicMoveNotSupportedException e) {
+            Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    private static void writeViolations(final DataOutputStream stream, final List<RuleViolation> violations)
+        throws IOException {
+        stream.writeInt(violations.size());
+        for (final RuleViolation rv : violations) {
+            CachedRuleViolation.storeToStream(stream, rv);
+        }
+    }
+
+    private void writeChecksums(final DataOutputStream stream) throws IOException {
+        stream.writeLong(auxClassPathChecksum);
+        stream.writeLong(executionClassPathChecksum);
+    }
+
+    private void writeRuleChecksums(final DataOutputStream stream) throws IOException {
+        stream.writeInt(ruleChecksums.size());
+        for (final Map.Entry<String, Long> entry : ruleChecksums.entrySet()) {
+            stream.writeUTF(entry.getKey());
+            stream.writeLong(entry.getValue());
+        }
+    }
+
+    private static void writeIndexEntry(final DataOutputStream stream, final String fileName,
+            final AnalysisResult result, final long offset, final long length) throws IOException {
+        stream.writeUTF(fileName); // the full filename
+        stream.writeLong(result.getFileChecksum());
+        stream.writeLong(result.getFileSize());
+        stream.writeLong(result.getFileLastModified());
+        stream.writeInt((int) offset);
+        stream.writeInt((int) length);
+    }
+
+    private void closeLoadedFile() {
+        closeQuietly(loadedFile);
+        loadedFile = null;
+    }
+
+    private static void closeQuietly(final RandomAccessFile file) {
+        if (file != null) {
+            try {
+                file.close();
+            } catch (final IOException e) {
+                LOG.fine("Could not close the analysis cache file. " + e.getMessage());
             }
-        } catch (final IOException e) {
-            LOG.severe("Could not persist analysis cache to file. " + e.getMessage());
         }
     }
 
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer, final long position)
+        throws IOException {
+        long currentPosition = position;
+        while (buffer.hasRemaining()) {
+            currentPosition += channel.write(buffer, currentPosition);
+        }
+    }
 
     @Override
     protected boolean cacheExists() {
         return cacheFile.exists() && cacheFile.isFile() && cacheFile.length() > 0;
     }
+
+    /**
+     * The result of a file, whose violations are only read from the cache
+     * file and decoded when requested.
+     */
+    private static final class StoredAnalysisResult extends AnalysisResult {
+        private final String fileName;
+        private final RandomAccessFile file;
+        private final int offset;
+        private final int length;
+        private final CachedRuleMapper ruleMapper;
+
+        StoredAnalysisResult(final long fileChecksum, final long fileSize, final long fileLastModified,
+                final String fileName, final RandomAccessFile file, final int offset, final int length,
+                final CachedRuleMapper ruleMapper) {
+            super(fileChecksum, fileSize, fileLastModified, Collections.<RuleViolation>emptyList());
+            this.fileName = fileName;
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+            this.ruleMapper = ruleMapper;
+        }
+
+        @Override
+        public List<RuleViolation> getViolations() {
+            try {
+                final byte[] bytes = new byte[length];
+                // the file is shared by all results, only the read itself is synchronized
+                synchronized (file) {
+                    file.seek(offset);
+                    file.readFully(bytes);
+                }
+                @SuppressWarnings("PMD.CloseResource") // only wraps the bytes
+                final DataInputStream stream = new DataInputStream(new ByteArrayInputStream(bytes));
+                final int countViolations = stream.readInt();
+                final CachedViolationList violations = new CachedViolationList(ruleMapper, countViolations);
+                for (int i = 0; i < countViolations; i++) {
+                    violations.addFromStream(stream, fileName);
+                }
+                return violations;
+            } catch (final IOException e) {
+                LOG.warning("Cache file entry for " + fileName + " could not be read, ignoring cached violations");
+                return Collections.emptyList();
+            }
+        }
+    }
 }
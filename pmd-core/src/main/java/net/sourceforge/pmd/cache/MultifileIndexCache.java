@@ -0,0 +1,183 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.zip.Adler32;
+
+import net.sourceforge.pmd.PMDVersion;
+import net.sourceforge.pmd.annotation.InternalApi;
+import net.sourceforge.pmd.lang.MultifileDataCodec;
+
+/**
+ * Stores the multifile data of every analyzed file in a file next to the
+ * {@link FileAnalysisCache}. An incremental analysis then only needs to parse
+ * the changed files to gather the multifile data of the whole project. The data
+ * of a file is reused, if its language version and the checksum of its content
+ * didn't change. The data itself is written and read by a {@link MultifileDataCodec}.
+ *
+ * <p>The data may be requested and added concurrently. When persisted, only
+ * the data of the files requested or added in the current analysis is kept.
+ */
+@InternalApi
+public class MultifileIndexCache {
+
+    private static final Logger LOG = Logger.getLogger(MultifileIndexCache.class.getName());
+
+    /** "PMDM", the beginning of the file. */
+    private static final int MAGIC = 0x504D444D;
+    private static final int FORMAT_VERSION = 2;
+
+    private final File file;
+    /** The loaded entries by file name, only read after loading. */
+    private final Map<String, Entry> loadedEntries = new HashMap<>();
+    /** The entries of the current analysis by file name. */
+    private final Map<String, Entry> updatedEntries = new ConcurrentHashMap<>();
+    /** Whether data has been added, only read once all data has been added. */
+    private boolean changed;
+
+    /**
+     * Creates a new cache backed by the given file, and loads the data stored in it.
+     *
+     * @param file The file in which the data is stored
+     */
+    public MultifileIndexCache(final File file) {
+        this.file = file;
+        load();
+    }
+
+    private void load() {
+        if (!file.isFile()) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION
+                    || !PMDVersion.VERSION.equals(in.readUTF())) {
+                LOG.info("Multifile index invalidated, PMD version or format changed.");
+                return;
+            }
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                final String fileName = in.readUTF();
+                final String languageVersion = in.readUTF();
+                final long checksum = in.readLong();
+                final byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                loadedEntries.put(fileName, new Entry(languageVersion, checksum, data));
+            }
+        } catch (final IOException e) {
+            LOG.warning("Could not load the multifile index " + file.getPath() + ". " + e.getMessage());
+            loadedEntries.clear();
+        }
+    }
+
+    /**
+     * Returns the stored data of the given file, if its language version and content didn't change.
+     * The data is kept, when the cache is persisted.
+     *
+     * @param fileName The name of the file
+     * @param languageVersion The terse name of the language version of the file, e.g. "java 11"
+     * @param checksum The checksum of the file content, see {@link #computeChecksum(byte[])}
+     *
+     * @return The data, or null if there is no up to date data for the file
+     */
+    public byte[] get(final String fileName, final String languageVersion, final long checksum) {
+        final Entry entry = loadedEntries.get(fileName);
+        if (entry == null || entry.checksum != checksum || !entry.languageVersion.equals(languageVersion)) {
+            return null;
+        }
+        updatedEntries.put(fileName, entry);
+        return entry.data;
+    }
+
+    /**
+     * Stores the data of the given file, replacing its previous data.
+     *
+     * @param fileName The name of the file
+     * @param languageVersion The terse name of the language version of the file, e.g. "java 11"
+     * @param checksum The checksum of the file content, see {@link #computeChecksum(byte[])}
+     * @param data     The multifile data of the file
+     */
+    public void put(final String fileName, final String languageVersion, final long checksum, final byte[] data) {
+        updatedEntries.put(fileName, new Entry(languageVersion, checksum, data));
+        changed = true;
+    }
+
+    /**
+     * Writes the data of the files of the current analysis to the file, unless nothing changed.
+     */
+    public void persist() {
+        if (!changed && updatedEntries.size() == loadedEntries.size()) {
+            return;
+        }
+
+        final File tempFile = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tempFile.toPath())))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(PMDVersion.VERSION);
+                out.writeInt(updatedEntries.size());
+                for (final Map.Entry<String, Entry> entry : updatedEntries.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeUTF(entry.getValue().languageVersion);
+                    out.writeLong(entry.getValue().checksum);
+                    out.writeInt(entry.getValue().data.length);
+                    out.write(entry.getValue().data);
+                }
+            }
+
+            try {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tempFile.toPath());
+            }
+        } catch (final IOException e) {
+            LOG.severe("Could not persist the multifile index to file. " + e.getMessage());
+        }
+    }
+
+    /**
+     * Computes the checksum of the content of a file, like the analysis cache does.
+     *
+     * @param content The content of the file
+     *
+     * @return The checksum
+     */
+    public static long computeChecksum(final byte[] content) {
+        final Adler32 checksum = new Adler32();
+        checksum.update(content, 0, content.length);
+        return checksum.getValue();
+    }
+
+    private static final class Entry {
+        private final String languageVersion;
+        private final long checksum;
+        private final byte[] data;
+
+        Entry(final String languageVersion, final long checksum, final byte[] data) {
+            this.languageVersion = languageVersion;
+            this.checksum = checksum;
+            this.data = data;
+        }
+    }
+}
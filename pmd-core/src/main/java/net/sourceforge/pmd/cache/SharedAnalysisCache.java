@@ -0,0 +1,291 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+import org.apache.commons.io.IOUtils;
+
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.annotation.Experimental;
+import net.sourceforge.pmd.lang.LanguageVersion;
+
+/**
+ * An analysis cache, that can be shared by several analyses, e.g. of different
+ * branches or on different build agents. The results are not stored by file name,
+ * but by a key derived from the content of the file, the checksums of the
+ * rules, that apply to the file, its encoding and language version and the
+ * checksums of the classpaths. An identical file analyzed with the same
+ * configuration is thus a cache hit, no matter where it is located, unless
+ * other rules apply at its location, e.g. due to the exclude patterns of a ruleset.
+ * As the key is the only thing identifying an entry, both the content and
+ * everything else are hashed with SHA-256.
+ *
+ * <p>The entries are never updated, only added, which makes it safe to use the
+ * same {@link AnalysisCacheBackend} concurrently. Outdated entries are never
+ * read again and may be removed at any time, e.g. by a periodic cleanup job.
+ */
+@Experimental
+public class SharedAnalysisCache extends AbstractAnalysisCache {
+
+    /** "PMDS", the beginning of every entry. */
+    private static final int MAGIC = 0x504D4453;
+    private static final int FORMAT_VERSION = 1;
+
+    private final AnalysisCacheBackend backend;
+    /** Determines the encoding and language version of the files. */
+    private final PMDConfiguration configuration;
+    /** The keys of the analyzed files, by file name. */
+    private final Map<String, String> fileKeys = new ConcurrentHashMap<>();
+    /** The keys, that are stored in the backend already. */
+    private final Set<String> storedKeys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    /** Digest of everything, that influences the results of all files, except the rules. */
+    private byte[] configurationDigest;
+    private RuleSets ruleSets;
+    /** The hex encoded digest of the fingerprint of each rule. */
+    private Map<Rule, String> ruleDigests = Collections.emptyMap();
+
+    /**
+     * Creates a new cache, that stores its entries in the given backend.
+     *
+     * @param backend       The backend to use
+     * @param configuration The configuration of the analysis, which determines
+     *                      the encoding and the language version of the files
+     */
+    public SharedAnalysisCache(final AnalysisCacheBackend backend, final PMDConfiguration configuration) {
+        this.backend = backend;
+        this.configuration = configuration;
+    }
+
+    @Override
+    protected boolean cacheExists() {
+        // there is no global state, each entry is only valid for the configuration it has been created with
+        return false;
+    }
+
+    @Override
+    public void checkValidity(final RuleSets ruleSets, final ClassLoader auxclassPathClassLoader) {
+        super.checkValidity(ruleSets, auxclassPathClassLoader);
+
+        this.ruleSets = ruleSets;
+        this.ruleDigests = new HashMap<>();
+        for (final Map.Entry<Rule, String> fingerprint : ruleSets.getRuleFingerprints().entrySet()) {
+            final MessageDigest digest = newDigest();
+            updateDigest(digest, fingerprint.getValue());
+            ruleDigests.put(fingerprint.getKey(), toHex(digest.digest()));
+        }
+
+        final MessageDigest digest = newDigest();
+        updateDigest(digest, pmdVersion);
+        for (final Rule r : ruleSets.getAllRules()) {
+            if (r.isDfa() || r.isTypeResolution()) {
+                updateDigest(digest, Long.toString(auxClassPathChecksum));
+                break;
+            }
+        }
+        updateDigest(digest, Long.toString(executionClassPathChecksum));
+        configurationDigest = digest.digest();
+    }
+
+    @Override
+    public boolean isUpToDate(final File sourceFile) {
+        final String fileName = sourceFile.getPath();
+        updatedResultsCache.put(fileName, new AnalysisResult(0L, new CachedViolationList(ruleMapper)));
+
+        final LanguageVersion languageVersion = configuration.getLanguageVersionOfFile(fileName);
+        if (languageVersion == null) {
+            // no rule can be applied to a file of an unknown language, it's not stored
+            LOG.fine("Incremental Analysis cache MISS - unknown language");
+            return false;
+        }
+
+        final String key;
+        try {
+            key = computeContentHash(sourceFile) + '-' + computeFileDigest(sourceFile, languageVersion);
+        } catch (final IOException e) {
+            LOG.warning("Could not compute the checksum of " + fileName + ". " + e.getMessage());
+            return false;
+        }
+        fileKeys.put(fileName, key);
+
+        final List<RuleViolation> violations = getEntry(key, fileName);
+        if (violations == null) {
+            LOG.fine("Incremental Analysis cache MISS - no previous result found");
+            return false;
+        }
+        LOG.fine("Incremental Analysis cache HIT");
+        storedKeys.add(key);
+        fileResultsCache.put(fileName, new AnalysisResult(0L, violations));
+        return true;
+    }
+
+    @Override
+    public void analysisFailed(final File sourceFile) {
+        super.analysisFailed(sourceFile);
+        fileKeys.remove(sourceFile.getPath());
+    }
+
+    @Override
+    public void persist() {
+        int stored = 0;
+        int failed = 0;
+        for (final Map.Entry<String, AnalysisResult> resultEntry : updatedResultsCache.entrySet()) {
+            final String key = fileKeys.get(resultEntry.getKey());
+            if (key == null || !storedKeys.add(key)) {
+                // the file couldn't be read or the entry exists already
+                continue;
+            }
+
+            try {
+                backend.put(key, toEntry(resultEntry.getValue().getViolations()));
+                stored++;
+            } catch (final IOException e) {
+                // the other entries might still be stored, e.g. if only this one couldn't be written
+                storedKeys.remove(key);
+                failed++;
+                LOG.log(Level.WARNING, "Could not store analysis cache entry " + key, e);
+            }
+        }
+        LOG.info("Analysis cache updated, " + stored + " entries added"
+                + (failed > 0 ? ", " + failed + " entries failed" : ""));
+    }
+
+    /**
+     * Computes a SHA-256 hash over everything except the file content, that
+     * influences the results of the given file: the rules, that apply to it,
+     * its encoding and its language version.
+     */
+    private String computeFileDigest(final File sourceFile, final LanguageVersion languageVersion) {
+        final MessageDigest digest = newDigest();
+        digest.update(configurationDigest);
+        updateDigest(digest, configuration.getSourceEncoding().name());
+        updateDigest(digest, languageVersion.getTerseName());
+
+        final List<String> applicableRules = new ArrayList<>();
+        for (final RuleSet ruleSet : ruleSets.getAllRuleSets()) {
+            if (!ruleSet.applies(sourceFile)) {
+                // excluded by the file patterns of the ruleset
+                continue;
+            }
+            for (final Rule rule : ruleSet.getRules()) {
+                final String ruleDigest = ruleDigests.get(rule);
+                if (ruleDigest != null && RuleSet.applies(rule, languageVersion)) {
+                    applicableRules.add(ruleDigest);
+                }
+            }
+        }
+        // sorted, so that the digest doesn't depend on the order of the rules
+        Collections.sort(applicableRules);
+        for (final String ruleDigest : applicableRules) {
+            updateDigest(digest, ruleDigest);
+        }
+        return toHex(digest.digest());
+    }
+
+    private List<RuleViolation> getEntry(final String key, final String fileName) {
+        try {
+            final byte[] entry = backend.get(key);
+            if (entry == null) {
+                return null;
+            }
+
+            @SuppressWarnings("PMD.CloseResource") // only wraps the array
+            final DataInputStream stream = new DataInputStream(new ByteArrayInputStream(entry));
+            if (stream.readInt() != MAGIC || stream.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            final int count = stream.readInt();
+            final CachedViolationList violations = new CachedViolationList(ruleMapper, count);
+            for (int i = 0; i < count; i++) {
+                violations.addFromStream(stream, fileName);
+            }
+            return violations;
+        } catch (final IOException e) {
+            // e.g. an EOFException for a malformed entry, just analyze the file again
+            LOG.log(Level.WARNING, "Could not read analysis cache entry " + key, e);
+            return null;
+        }
+    }
+
+    private static byte[] toEntry(final List<RuleViolation> violations) throws IOException {
+        final ByteArrayOutputStream entry = new ByteArrayOutputStream();
+        final DataOutputStream stream = new DataOutputStream(entry);
+        stream.writeInt(MAGIC);
+        stream.writeInt(FORMAT_VERSION);
+        stream.writeInt(violations.size());
+        for (final RuleViolation rv : violations) {
+            CachedRuleViolation.storeToStream(stream, rv);
+        }
+        stream.flush();
+        return entry.toByteArray();
+    }
+
+    /**
+     * Computes a SHA-256 hash of the file content. Contrary to the checksums of the
+     * {@link FileAnalysisCache}, the hash is the only thing identifying the file,
+     * so it has to be collision resistant.
+     */
+    private static String computeContentHash(final File sourceFile) throws IOException {
+        final MessageDigest digest = newDigest();
+        try (InputStream stream = new DigestInputStream(Files.newInputStream(sourceFile.toPath()), digest)) {
+            // Just read it, the DigestInputStream will update the digest on it's own
+            while (IOUtils.skip(stream, Long.MAX_VALUE) == Long.MAX_VALUE) {
+                // just loop
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            // every Java platform has to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Adds the given value prefixed by its length, so that the boundaries
+     * between the values are part of the digest.
+     */
+    private static void updateDigest(final MessageDigest digest, final String value) {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        digest.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+        digest.update(bytes);
+    }
+
+    private static String toHex(final byte[] bytes) {
+        final StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (final byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
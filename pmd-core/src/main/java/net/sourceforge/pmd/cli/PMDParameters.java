@@ -14,6 +14,7 @@ import net.sourceforge.pmd.RulePriority;
 import net.sourceforge.pmd.lang.LanguageRegistry;
 import net.sourceforge.pmd.lang.LanguageVersion;
 
+import com.beust.jcommander.IParameterValidator;
 import com.beust.jcommander.IStringConverter;
 import com.beust.jcommander.IValueValidator;
 import com.beust.jcommander.Parameter;
@@ -55,6 +56,30 @@ public class PMDParameters {
             validateWith = PositiveInteger.class)
     private int threads = 1;
 
+    @Parameter(names = "-max-files-in-flight",
+            description = "Limits the number of files, that are analyzed or waiting to be rendered at the same time. "
+                    + "Reports are then rendered as soon as a file is finished. Values below the number of threads "
+                    + "are raised to the number of threads. Without this option, there is no limit.",
+            validateWith = StrictlyPositiveInteger.class)
+    private int maxFilesInFlight = 0;
+
+    @Parameter(names = "-schedule-by-cost",
+            description = "Analyzes the most expensive files first, i.e. the biggest files, that are not up to date "
+                    + "in the analysis cache. This reduces the time, in which only some threads are busy with big files. "
+                    + "Can't be combined with -max-files-in-flight or -virtual-threads.")
+    private boolean scheduleByCost = false;
+
+    @Parameter(names = "-virtual-threads",
+            description = "Reads the source files on virtual threads, if supported by the Java runtime. "
+                    + "The analysis uses one thread per available processor then.")
+    private boolean virtualThreads = false;
+
+    @Parameter(names = "-rule-threads",
+            description = "Sets the number of threads, that apply the thread-safe rule chain rules to a single file "
+                    + "concurrently. 0 applies the rules of a file one after another.",
+            validateWith = PositiveInteger.class)
+    private int ruleThreads = 0;
+
     @Parameter(names = { "-benchmark", "-b" },
             description = "Benchmark mode - output a benchmark report upon completion; default to System.err.")
     private boolean benchmark = false;
@@ -110,6 +135,12 @@ public class PMDParameters {
                     + "with the most up-to-date rule violations.")
     private String cacheLocation = null;
 
+    @Parameter(names = "-shared-cache", arity = 1,
+            description = "Specify the directory of a shared cache for incremental analysis. "
+                    + "The results are stored by file content, rules and classpath, so the directory can be shared "
+                    + "between branches and machines. Takes precedence over '-cache'.")
+    private String sharedCacheLocation = null;
+
     @Parameter(names = "-no-cache", description = "Explicitly disable incremental analysis. The '-cache' option is ignored if this switch is present in the command line.")
     private boolean noCache = false;
 
@@ -145,6 +176,18 @@ public class PMDParameters {
         }
     }
 
+    // this has to be a public static class, so that JCommander can use it!
+    // only the given values are validated, not the default value
+    public static class StrictlyPositiveInteger implements IParameterValidator {
+
+        @Override
+        public void validate(String name, String value) throws ParameterException {
+            if (Integer.parseInt(value) < 1) {
+                throw new ParameterException("Parameter " + name + " should be at least 1 (found " + value + ")");
+            }
+        }
+    }
+
     /** @deprecated Will be removed in 7.0.0 */
     @Deprecated
     public static class RulePriorityConverter implements IStringConverter<RulePriority> {
@@ -177,6 +220,11 @@ public class PMDParameters {
             throw new IllegalArgumentException(
                     "Please provide a parameter for source root directory (-dir or -d), database URI (-uri or -u), or file list path (-filelist).");
         }
+        if ((this.isVirtualThreads() ? 1 : 0) + (this.isScheduleByCost() ? 1 : 0)
+                + (this.getMaxFilesInFlight() > 0 ? 1 : 0) > 1) {
+            throw new IllegalArgumentException(
+                    "The options -virtual-threads, -schedule-by-cost and -max-files-in-flight can't be combined.");
+        }
         PMDConfiguration configuration = new PMDConfiguration();
         configuration.setInputPaths(this.getSourceDir());
         configuration.setInputFilePath(this.getFileListPath());
@@ -196,8 +244,15 @@ public class PMDParameters {
         configuration.setStressTest(this.isStress());
         configuration.setSuppressMarker(this.getSuppressmarker());
         configuration.setThreads(this.getThreads());
+        configuration.setMaxFilesInFlight(this.getMaxFilesInFlight());
+        configuration.setScheduleByCost(this.isScheduleByCost());
+        configuration.setVirtualThreads(this.isVirtualThreads());
+        configuration.setRuleThreads(this.getRuleThreads());
         configuration.setFailOnViolation(this.isFailOnViolation());
         configuration.setAnalysisCacheLocation(this.cacheLocation);
+        if (this.sharedCacheLocation != null) {
+            configuration.setSharedAnalysisCacheLocation(this.sharedCacheLocation);
+        }
         configuration.setIgnoreIncrementalAnalysis(this.isIgnoreIncrementalAnalysis());
 
         LanguageVersion languageVersion = LanguageRegistry
@@ -248,6 +303,22 @@ public class PMDParameters {
         return benchmark;
     }
 
+    public int getMaxFilesInFlight() {
+        return maxFilesInFlight;
+    }
+
+    public boolean isScheduleByCost() {
+        return scheduleByCost;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public int getRuleThreads() {
+        return ruleThreads;
+    }
+
     public boolean isStress() {
         return stress;
     }
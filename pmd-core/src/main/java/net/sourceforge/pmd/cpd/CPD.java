@@ -36,12 +36,17 @@ public class CPD {
     private Tokens tokens = new Tokens();
     private MatchAlgorithm matchAlgorithm;
     private Set<String> current = new HashSet<>();
+    /** The tokens of the files of previous runs, null if there's no cache. */
+    private TokenCache tokenCache;
 
     public CPD(CPDConfiguration theConfiguration) {
         configuration = theConfiguration;
         // before we start any tokenizing (add(File...)), we need to reset the
         // static TokenEntry status
         TokenEntry.clearImages();
+        if (configuration.getCacheLocation() != null) {
+            tokenCache = new TokenCache(configuration.getCacheLocation(), configuration.getTokenizerFingerprint());
+        }
     }
 
     public void setCpdListener(CPDListener cpdListener) {
@@ -49,7 +54,12 @@ public class CPD {
     }
 
     public void go() {
-        matchAlgorithm = new MatchAlgorithm(source, tokens, configuration.getMinimumTileSize(), listener);
+        if (tokenCache != null) {
+            // all files have been added now
+            tokenCache.persist();
+        }
+        matchAlgorithm = new MatchAlgorithm(source, tokens, configuration.getMinimumTileSize(), listener,
+                configuration.getMatchEngine());
         matchAlgorithm.findMatches();
     }
 
@@ -66,11 +76,77 @@ public class CPD {
     }
 
     public void add(List<File> files) throws IOException {
+        List<Tokenizer> tokenizers = createTokenizers(files.size());
+        if (tokenizers == null) {
+            for (File f : files) {
+                add(f);
+            }
+            return;
+        }
+
+        List<SourceCode> sourceCodes = new ArrayList<>();
         for (File f : files) {
-            add(f);
+            SourceCode sourceCode = sourceCodeFor(f);
+            if (sourceCode != null) {
+                sourceCodes.add(sourceCode);
+            }
+        }
+        try (ParallelTokenizer parallelTokenizer = new ParallelTokenizer(tokenizers, tokenCache)) {
+            int submitted = 0;
+            for (int i = 0; i < sourceCodes.size(); i++) {
+                // keep the threads busy, but don't tokenize too far ahead of the appended files
+                for (; submitted < sourceCodes.size() && !parallelTokenizer.isFull(); submitted++) {
+                    parallelTokenizer.submit(sourceCodes.get(submitted));
+                }
+                SourceCode sourceCode = sourceCodes.get(i);
+                ParallelTokenizer.Result result;
+                try {
+                    result = parallelTokenizer.next();
+                } catch (TokenMgrError e) {
+                    if (!configuration.isSkipLexicalErrors()) {
+                        throw e;
+                    }
+                    System.err.println("Skipping " + sourceCode.getFileName() + ". Reason: " + e.getMessage());
+                    continue;
+                }
+                if (result.getTokens() == null) {
+                    // the cached tokens are up to date, unless the cache entry can't be read
+                    if (!addCachedTokens(sourceCode, result.getChecksum())) {
+                        addAndCache(sourceCode, result.getChecksum());
+                    }
+                    continue;
+                }
+                if (tokenCache != null) {
+                    tokenCache.put(sourceCode.getFileName(), result.getChecksum(), result.getTokens());
+                }
+                result.getTokens().appendTo(tokens);
+                addedSource(sourceCode);
+            }
         }
     }
 
+    /**
+     * Creates a tokenizer for each thread, if the files should be tokenized in parallel.
+     *
+     * @return The tokenizers, or null if the files should be tokenized on the calling thread
+     */
+    private List<Tokenizer> createTokenizers(int fileCount) {
+        int threads = Math.min(configuration.getThreads(), fileCount);
+        if (threads <= 1) {
+            return null;
+        }
+        List<Tokenizer> tokenizers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            Tokenizer tokenizer = configuration.newTokenizer();
+            if (tokenizer == null) {
+                LOGGER.fine("The language can't be instantiated per thread, tokenizing on the calling thread");
+                return null;
+            }
+            tokenizers.add(tokenizer);
+        }
+        return tokenizers;
+    }
+
     private void addDirectory(File dir, boolean recurse) throws IOException {
         if (!dir.exists()) {
             throw new FileNotFoundException("Couldn't find directory " + dir);
@@ -81,14 +157,56 @@ public class CPD {
     }
 
     public void add(File file) throws IOException {
+        SourceCode sourceCode = sourceCodeFor(file);
+        if (sourceCode == null) {
+            return;
+        }
 
+        long checksum = tokenCache == null ? 0 : TokenCache.computeChecksum(sourceCode);
+        if (!addCachedTokens(sourceCode, checksum)) {
+            addAndCache(sourceCode, checksum);
+        }
+    }
+
+    /**
+     * Appends the cached tokens of the file, if they are up to date. They are
+     * decoded just now, so only the tokens of a single file are decoded at once.
+     *
+     * @return false if the file has to be tokenized
+     */
+    private boolean addCachedTokens(SourceCode sourceCode, long checksum) {
+        TokenizedFile cachedFile = tokenCache == null ? null : tokenCache.get(sourceCode.getFileName(), checksum);
+        if (cachedFile == null) {
+            return false;
+        }
+        cachedFile.appendTo(tokens);
+        addedSource(sourceCode);
+        return true;
+    }
+
+    /**
+     * Tokenizes the file on the calling thread, and stores its tokens in the cache.
+     */
+    private void addAndCache(SourceCode sourceCode, long checksum) throws IOException {
+        int start = tokens.size();
+        add(sourceCode);
+        // nothing is added, if the file is skipped because of a lexical error
+        if (tokenCache != null && tokens.size() > start) {
+            tokenCache.put(sourceCode.getFileName(), checksum, TokenizedFile.copyOf(tokens, start, tokens.size()));
+        }
+    }
+
+    /**
+     * Returns the source code of the file, or null if the file is skipped.
+     */
+    private SourceCode sourceCodeFor(File file) throws IOException {
         if (configuration.isSkipDuplicates()) {
             // TODO refactor this thing into a separate class
             String signature = file.getName() + '_' + file.length();
             if (current.contains(signature)) {
                 System.err.println("Skipping " + file.getAbsolutePath()
                         + " since it appears to be a duplicate file and --skip-duplicate-files is set");
-                return;
+                return null;
             }
             current.add(signature);
         }
@@ -96,16 +214,15 @@ public class CPD {
         if (!FilenameUtils.equalsNormalizedOnSystem(file.getAbsoluteFile().getCanonicalPath(),
                 file.getAbsolutePath())) {
             System.err.println("Skipping " + file + " since it appears to be a symlink");
-            return;
+            return null;
         }
 
         if (!file.exists()) {
             System.err.println("Skipping " + file + " since it doesn't exist (broken symlink?)");
-            return;
+            return null;
         }
 
-        SourceCode sourceCode = configuration.sourceCodeFor(file);
-        add(sourceCode);
+        return configuration.sourceCodeFor(file);
     }
 
     public void add(DBURI dburi) throws IOException {
@@ -142,18 +259,21 @@ public class CPD {
 
     private void addAndThrowLexicalError(SourceCode sourceCode) throws IOException {
         configuration.tokenizer().tokenize(sourceCode, tokens);
+        addedSource(sourceCode);
+    }
+
+    private void addedSource(SourceCode sourceCode) {
         listener.addedFile(1, new File(sourceCode.getFileName()));
         source.put(sourceCode.getFileName(), sourceCode);
     }
 
     private void addAndSkipLexicalErrors(SourceCode sourceCode) throws IOException {
-        TokenEntry.State savedTokenEntry = new TokenEntry.State(tokens.getTokens());
+        Tokens.Checkpoint checkpoint = tokens.checkpoint();
         try {
             addAndThrowLexicalError(sourceCode);
         } catch (TokenMgrError e) {
             System.err.println("Skipping " + sourceCode.getFileName() + ". Reason: " + e.getMessage());
-            tokens.getTokens().clear();
-            tokens.getTokens().addAll(savedTokenEntry.restore());
+            tokens.restore(checkpoint);
         }
     }
 
@@ -19,6 +19,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
 
 import net.sourceforge.pmd.AbstractConfiguration;
 import net.sourceforge.pmd.cpd.renderer.CPDRenderer;
@@ -132,6 +133,24 @@ public class CPDConfiguration extends AbstractConfiguration {
             description = "By default CPD exits with status 4 if code duplications are found. Disable this option with '-failOnViolation false' to exit with 0 instead and just write the report.")
     private boolean failOnViolation = true;
 
+    @Parameter(names = "--threads",
+            description = "Number of threads used to tokenize the files. The tokenizer options are taken from this "
+                    + "configuration. With 1 thread, the files are tokenized on the calling thread.",
+            required = false)
+    private int threads = 1;
+
+    @Parameter(names = "--match-engine",
+            description = "The algorithm used to find the duplicates, either HASH or SUFFIX_ARRAY (experimental).",
+            required = false)
+    private MatchEngine matchEngine = MatchEngine.HASH;
+
+    @Parameter(names = "--cache", converter = FileConverter.class,
+            description = "The location of the token cache file for incremental runs. Only the files, whose content "
+                    + "changed, are tokenized again. The cache is invalidated, when the language, the encoding or "
+                    + "the tokenizer options change.",
+            required = false)
+    private File cacheLocation;
+
     // this has to be a public static class, so that JCommander can use it!
     public static class LanguageConverter implements IStringConverter<Language> {
 
@@ -252,6 +271,10 @@ public class CPDConfiguration extends AbstractConfiguration {
     }
 
     public static void setSystemProperties(CPDConfiguration configuration) {
+        configuration.getLanguage().setProperties(getTokenizerProperties(configuration));
+    }
+
+    private static Properties getTokenizerProperties(CPDConfiguration configuration) {
         Properties properties = new Properties();
         if (configuration.isIgnoreLiterals()) {
             properties.setProperty(Tokenizer.IGNORE_LITERALS, "true");
@@ -275,7 +298,16 @@ public class CPDConfiguration extends AbstractConfiguration {
         }
         properties.setProperty(Tokenizer.OPTION_SKIP_BLOCKS, Boolean.toString(!configuration.isNoSkipBlocks()));
         properties.setProperty(Tokenizer.OPTION_SKIP_BLOCKS_PATTERN, configuration.getSkipBlocksPattern());
-        configuration.getLanguage().setProperties(properties);
+        return properties;
+    }
+
+    /**
+     * Describes everything, that determines the tokens of a file except its content,
+     * i.e. the language, the encoding and the options of the tokenizer.
+     */
+    String getTokenizerFingerprint() {
+        return getLanguage().getTerseName() + ';' + getSourceEncoding().name() + ';'
+                + new TreeMap<>(getTokenizerProperties(this));
     }
 
     public Language getLanguage() {
@@ -329,6 +361,26 @@ public class CPDConfiguration extends AbstractConfiguration {
         return language.getTokenizer();
     }
 
+    /**
+     * Creates a tokenizer, that is independent from {@link #tokenizer()}, and configured
+     * with the options of this configuration. Tokenizers keep state while tokenizing a file,
+     * so every thread needs its own one.
+     *
+     * @return A new tokenizer, or null if the language can't be instantiated again
+     */
+    public Tokenizer newTokenizer() {
+        if (language == null) {
+            throw new IllegalStateException("Language is null.");
+        }
+        try {
+            Language copy = language.getClass().getConstructor().newInstance();
+            copy.setProperties(getTokenizerProperties(this));
+            return copy.getTokenizer();
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
     public FilenameFilter filenameFilter() {
         if (language == null) {
             throw new IllegalStateException("Language is null.");
@@ -494,4 +546,28 @@ public class CPDConfiguration extends AbstractConfiguration {
     public void setFailOnViolation(boolean failOnViolation) {
         this.failOnViolation = failOnViolation;
     }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public MatchEngine getMatchEngine() {
+        return matchEngine;
+    }
+
+    public void setMatchEngine(MatchEngine matchEngine) {
+        this.matchEngine = matchEngine;
+    }
+
+    public File getCacheLocation() {
+        return cacheLocation;
+    }
+
+    public void setCacheLocation(File cacheLocation) {
+        this.cacheLocation = cacheLocation;
+    }
 }
@@ -4,9 +4,8 @@
 
 package net.sourceforge.pmd.cpd;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -20,9 +19,11 @@ public class MatchAlgorithm {
     private List<Match> matches;
     private Map<String, SourceCode> source;
     private Tokens tokens;
-    private List<TokenEntry> code;
     private CPDListener cpdListener;
     private int min;
+    private MatchEngine engine = MatchEngine.HASH;
+    /** The hash of the window of tokens starting at each index, only while the matches are searched. */
+    private int[] hashes;
 
     public MatchAlgorithm(Map<String, SourceCode> sourceCode, Tokens tokens, int min) {
         this(sourceCode, tokens, min, new CPDNullListener());
@@ -31,7 +32,6 @@ public class MatchAlgorithm {
     public MatchAlgorithm(Map<String, SourceCode> sourceCode, Tokens tokens, int min, CPDListener listener) {
         this.source = sourceCode;
         this.tokens = tokens;
-        this.code = tokens.getTokens();
         this.min = min;
         this.cpdListener = listener;
         for (int i = 0; i < min; i++) {
@@ -39,6 +39,12 @@ public class MatchAlgorithm {
         }
     }
 
+    public MatchAlgorithm(Map<String, SourceCode> sourceCode, Tokens tokens, int min, CPDListener listener,
+            MatchEngine engine) {
+        this(sourceCode, tokens, min, listener);
+        this.engine = engine;
+    }
+
     public void setListener(CPDListener listener) {
         this.cpdListener = listener;
     }
@@ -48,31 +54,42 @@ public class MatchAlgorithm {
     }
 
     public TokenEntry tokenAt(int offset, TokenEntry m) {
-        return code.get(offset + m.getIndex());
+        return tokens.get(offset + m.getIndex());
     }
 
     public int getMinimumTileSize() {
         return this.min;
     }
 
-    public void findMatches() {
-        cpdListener.phaseUpdate(CPDListener.HASH);
-        Map<TokenEntry, Object> markGroups = hash();
+    Tokens getTokens() {
+        return tokens;
+    }
 
-        cpdListener.phaseUpdate(CPDListener.MATCH);
-        MatchCollector matchCollector = new MatchCollector(this);
-        for (Iterator<Object> i = markGroups.values().iterator(); i.hasNext();) {
-            Object o = i.next();
-            if (o instanceof List) {
-                @SuppressWarnings("unchecked")
-                List<TokenEntry> l = (List<TokenEntry>) o;
-                Collections.reverse(l);
-                matchCollector.collect(l);
-            }
-            i.remove();
+    /**
+     * Creates the token entry of a mark of a match. Token entries are only created for
+     * the reported matches.
+     */
+    TokenEntry createMarkToken(int index) {
+        TokenEntry token = tokens.get(index);
+        if (hashes != null) {
+            token.setHashCode(hashes[index]);
+        }
+        return token;
+    }
+
+    public void findMatches() {
+        if (engine == MatchEngine.SUFFIX_ARRAY) {
+            cpdListener.phaseUpdate(CPDListener.HASH);
+            SuffixArrayMatcher matcher = new SuffixArrayMatcher(this);
+            matcher.sort();
+            cpdListener.phaseUpdate(CPDListener.MATCH);
+            List<Match> found = matcher.findMatches();
+            cpdListener.phaseUpdate(CPDListener.GROUPING);
+            Collections.sort(found);
+            matches = found;
+        } else {
+            findMatchesByHash();
         }
-        cpdListener.phaseUpdate(CPDListener.GROUPING);
-        matches = matchCollector.getMatches();
 
         for (Match match : matches) {
             for (Mark mark : match) {
@@ -89,43 +106,67 @@ public class MatchAlgorithm {
         cpdListener.phaseUpdate(CPDListener.DONE);
     }
 
-    @SuppressWarnings("PMD.JumbledIncrementer")
-    private Map<TokenEntry, Object> hash() {
-        Map<TokenEntry, Object> markGroups = new HashMap<>(tokens.size());
-        for (int i = code.size() - 1; i >= 0; i--) {
-            TokenEntry token = code.get(i);
-            if (token != TokenEntry.EOF) {
-                int last = tokenAt(min, token).getIdentifier();
-                lastHash = MOD * lastHash + token.getIdentifier() - lastMod * last;
-                token.setHashCode(lastHash);
-                Object o = markGroups.get(token);
-
-                // Note that this insertion method is worthwhile since the vast
-                // majority
-                // markGroup keys will have only one value.
-                if (o == null) {
-                    markGroups.put(token, token);
-                } else if (o instanceof TokenEntry) {
-                    List<TokenEntry> l = new ArrayList<>();
-                    l.add((TokenEntry) o);
-                    l.add(token);
-                    markGroups.put(token, l);
-                } else {
-                    @SuppressWarnings("unchecked")
-                    List<TokenEntry> l = (List<TokenEntry>) o;
-                    l.add(token);
+    private void findMatchesByHash() {
+        cpdListener.phaseUpdate(CPDListener.HASH);
+        hashes = new int[tokens.size()];
+        long[] markGroups = hash();
+
+        cpdListener.phaseUpdate(CPDListener.MATCH);
+        MatchCollector matchCollector = new MatchCollector(this);
+        int[] marks = new int[16];
+        for (int start = 0; start < markGroups.length;) {
+            int hash = (int) (markGroups[start] >> 32);
+            int end = start + 1;
+            while (end < markGroups.length && (int) (markGroups[end] >> 32) == hash) {
+                end++;
+            }
+            if (end - start > 1) {
+                if (marks.length < end - start) {
+                    marks = new int[end - start];
+                }
+                for (int i = start; i < end; i++) {
+                    marks[i - start] = (int) markGroups[i];
                 }
+                matchCollector.collect(marks, end - start);
+            }
+            start = end;
+        }
+        hashes = null;
+        cpdListener.phaseUpdate(CPDListener.GROUPING);
+        matches = matchCollector.getMatches();
+    }
+
+    /**
+     * Computes the hash of the window of tokens starting at each index, and groups the
+     * indexes by their hash.
+     *
+     * @return The hash in the upper and the index in the lower half, sorted, so that the
+     *         indexes with the same hash are adjacent and in ascending order
+     */
+    @SuppressWarnings("PMD.JumbledIncrementer")
+    private long[] hash() {
+        long[] markGroups = new long[tokens.size()];
+        int count = 0;
+        for (int i = tokens.size() - 1; i >= 0; i--) {
+            int identifier = tokens.getIdentifier(i);
+            if (identifier != 0) {
+                int last = tokens.getIdentifier(i + min);
+                lastHash = MOD * lastHash + identifier - lastMod * last;
+                hashes[i] = lastHash;
+                markGroups[count++] = (long) lastHash << 32 | i;
             } else {
                 lastHash = 0;
                 for (int end = Math.max(0, i - min + 1); i > end; i--) {
-                    token = code.get(i - 1);
-                    lastHash = MOD * lastHash + token.getIdentifier();
-                    if (token == TokenEntry.EOF) {
+                    identifier = tokens.getIdentifier(i - 1);
+                    lastHash = MOD * lastHash + identifier;
+                    if (identifier == 0) {
                         break;
                     }
                 }
             }
         }
+        markGroups = Arrays.copyOf(markGroups, count);
+        Arrays.sort(markGroups);
         return markGroups;
     }
 }
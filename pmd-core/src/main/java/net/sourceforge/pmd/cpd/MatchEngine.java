@@ -0,0 +1,25 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import net.sourceforge.pmd.annotation.Experimental;
+
+/**
+ * The algorithms, that the {@link MatchAlgorithm} can use to find the duplicates.
+ */
+@Experimental
+public enum MatchEngine {
+    /**
+     * Groups the positions by the hash of the following tokens, and compares
+     * the positions of each group pairwise.
+     */
+    HASH,
+    /**
+     * Sorts the positions by the following tokens with a suffix array, and
+     * reports the repeats found in the longest common prefix array. The
+     * time doesn't depend on how often a sequence of tokens is repeated.
+     */
+    SUFFIX_ARRAY
+}
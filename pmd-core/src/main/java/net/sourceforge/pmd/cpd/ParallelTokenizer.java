@@ -0,0 +1,159 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import net.sourceforge.pmd.processor.PmdThreadFactory;
+
+/**
+ * Tokenizes files on several threads. The tokens are returned in the order,
+ * in which the files have been submitted, so that appending them to the token
+ * stream of the calling thread gives the same result as if the files had been
+ * tokenized one after another on the calling thread.
+ *
+ * <p>The images of the tokens are numbered per thread by {@link TokenEntry}.
+ * Every file is tokenized with a numbering of its own, which is mapped to the
+ * numbering of the calling thread by {@link TokenizedFile#appendTo(Tokens)}. Each
+ * tokenizer is only used by one thread at a time.
+ *
+ * <p>Only a few files per thread should be submitted ahead of the tokens, that
+ * are appended, see {@link #isFull()}. This way, the tokens waiting to be appended
+ * don't grow with the number of files.
+ *
+ * <p>If there is a token cache, the checksums of the files are computed on the
+ * threads as well. The files, whose cached tokens are up to date, aren't tokenized,
+ * the cached tokens are only decoded, when they are appended.
+ */
+final class ParallelTokenizer implements AutoCloseable {
+
+    /** The number of files per thread, that are tokenized or waiting to be appended. */
+    private static final int FILES_IN_FLIGHT_PER_THREAD = 4;
+
+    private final BlockingQueue<Tokenizer> tokenizers;
+    private final TokenCache tokenCache;
+    private final ExecutorService executor;
+    private final Deque<Future<Result>> pending = new ArrayDeque<>();
+    private final int maxFilesInFlight;
+
+    /**
+     * @param tokenizers A tokenizer for each thread
+     * @param tokenCache The tokens of previous runs, may be null
+     */
+    ParallelTokenizer(List<Tokenizer> tokenizers, TokenCache tokenCache) {
+        this.tokenizers = new LinkedBlockingQueue<>(tokenizers);
+        this.tokenCache = tokenCache;
+        this.executor = Executors.newFixedThreadPool(tokenizers.size(), new PmdThreadFactory());
+        this.maxFilesInFlight = tokenizers.size() * FILES_IN_FLIGHT_PER_THREAD;
+    }
+
+    /**
+     * Returns true, if enough files are submitted to keep all threads busy.
+     * The next file should only be submitted, once the tokens of a file are
+     * taken with {@link #next()}.
+     */
+    boolean isFull() {
+        return pending.size() >= maxFilesInFlight;
+    }
+
+    /**
+     * Starts to tokenize the given source code.
+     */
+    void submit(final SourceCode sourceCode) {
+        pending.add(executor.submit(new Callable<Result>() {
+            @Override
+            public Result call() throws IOException, InterruptedException {
+                long checksum = 0;
+                if (tokenCache != null) {
+                    checksum = TokenCache.computeChecksum(sourceCode);
+                    if (tokenCache.isUpToDate(sourceCode.getFileName(), checksum)) {
+                        return new Result(checksum, null);
+                    }
+                }
+                Tokenizer tokenizer = tokenizers.take();
+                try {
+                    return new Result(checksum, tokenize(tokenizer, sourceCode));
+                } finally {
+                    tokenizers.add(tokenizer);
+                }
+            }
+        }));
+    }
+
+    /**
+     * Waits until the source code, that has been submitted next, is tokenized.
+     * Errors of the tokenizer are rethrown.
+     *
+     * @return The tokens, which still have to be appended to the token stream
+     */
+    Result next() throws IOException {
+        try {
+            return pending.remove().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while tokenizing");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private static TokenizedFile tokenize(Tokenizer tokenizer, SourceCode sourceCode) throws IOException {
+        TokenEntry.clearImages();
+        Tokens tokens = new Tokens();
+        tokenizer.tokenize(sourceCode, tokens);
+        return new TokenizedFile(tokens, TokenEntry.getImages());
+    }
+
+    /**
+     * The checksum of a file and its tokens.
+     */
+    static final class Result {
+        private final long checksum;
+        private final TokenizedFile tokens;
+
+        Result(long checksum, TokenizedFile tokens) {
+            this.checksum = checksum;
+            this.tokens = tokens;
+        }
+
+        /**
+         * Returns the checksum for the token cache, 0 if there is no cache.
+         */
+        long getChecksum() {
+            return checksum;
+        }
+
+        /**
+         * Returns the tokens, or null if the cached tokens are up to date.
+         */
+        TokenizedFile getTokens() {
+            return tokens;
+        }
+    }
+}
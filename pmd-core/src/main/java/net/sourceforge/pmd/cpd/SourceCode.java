@@ -67,7 +67,7 @@ public class SourceCode {
 
         protected List<String> load(int startLine, int endLine) {
             try (BufferedReader reader = new BufferedReader(getReader())) {
-                int linesToRead = endLine - startLine;
+                int linesToRead = endLine - startLine + 1;
                 List<String> lines = new ArrayList<>(linesToRead);
 
                 // Skip lines until we reach the start point
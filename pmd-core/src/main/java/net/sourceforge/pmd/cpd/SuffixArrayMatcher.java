@@ -0,0 +1,486 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds the duplicates with a suffix array and a longest common prefix (LCP)
+ * array over the identifiers of the tokens. See {@link MatchEngine#SUFFIX_ARRAY}.
+ *
+ * <p>The suffix array is built by prefix doubling with radix sort, the LCP array
+ * with the algorithm of Kasai et al. Every {@link TokenEntry#EOF} is treated as a
+ * unique token, so that no duplicate spans several files. Both arrays, and two
+ * temporary arrays while sorting, need an int per token.
+ *
+ * <p>Each LCP interval, i.e. a range of the suffix array, whose suffixes share
+ * a prefix of a certain length, but not a longer one, is a repeat. It's reported
+ * as a match with that length, if it's at least the minimum tile size, and the
+ * repeat is maximal to the left, i.e. there are two positions in different child
+ * intervals, which are preceded by different tokens. Overlapping positions of the
+ * same match are dropped.
+ *
+ * <p>The intervals are visited bottom-up in a single pass over the LCP array.
+ * The positions of an interval are grouped by the token before them. The groups
+ * of the children are merged into the groups of the parent, always into the
+ * largest child, so that each group is only moved a logarithmic number of
+ * times. Whether a position of a child has a partner is decided by the groups
+ * of the children, without looking at the positions of the interval, which
+ * keeps periodic input, whose intervals are deeply nested, from taking
+ * quadratic time.
+ *
+ * <p>The positions of a group are linked by another int per token, so a group
+ * is merged in constant time. The leaves are kept as plain positions, only the
+ * groups of the intervals, that are at least the minimum tile size long, take
+ * a few ints each, as long as the interval is open or the child of an open
+ * interval.
+ */
+final class SuffixArrayMatcher {
+
+    private final MatchAlgorithm ma;
+    private final Tokens tokens;
+    private final int min;
+    private final int size;
+
+    private int[] suffixArray;
+    /** The length of the common prefix of a suffix and its predecessor in the suffix array. */
+    private int[] lcp;
+    /** The next position of the same group, or -1 for the last one, see {@link Contexts}. */
+    private int[] nextPosition;
+
+    SuffixArrayMatcher(MatchAlgorithm ma) {
+        this.ma = ma;
+        this.tokens = ma.getTokens();
+        this.min = ma.getMinimumTileSize();
+        this.size = tokens.size();
+    }
+
+    /**
+     * Builds the suffix array and the LCP array.
+     */
+    void sort() {
+        int[] rank = new int[size];
+        suffixArray = buildSuffixArray(rank);
+        lcp = buildLcpArray(rank);
+    }
+
+    /**
+     * Reports the repeats, requires {@link #sort()}.
+     */
+    List<Match> findMatches() {
+        List<Match> matches = new ArrayList<>();
+        nextPosition = new int[size];
+        // the open LCP intervals, the root interval has the length 0
+        int[] stackLength = new int[16];
+        // the children of the open intervals, only kept for intervals of at least the minimum length
+        List<List<Contexts>> stackChildren = new ArrayList<>();
+        List<Positions> stackLeaves = new ArrayList<>();
+        stackChildren.add(new ArrayList<Contexts>());
+        stackLeaves.add(new Positions());
+        int depth = 1;
+
+        for (int i = 1; i <= size; i++) {
+            int length = i < size ? lcp[i] : 0;
+            // the suffix before i is a leaf of the deeper one of the intervals around it
+            int leaf = Math.max(length, stackLength[depth - 1]) >= min ? suffixArray[i - 1] : -1;
+            Contexts child = null;
+            while (length < stackLength[depth - 1]) {
+                depth--;
+                addChild(stackChildren.get(depth), stackLeaves.get(depth), leaf, child);
+                leaf = -1;
+                child = close(stackLength[depth], stackChildren.get(depth), stackLeaves.get(depth), matches);
+            }
+            if (length > stackLength[depth - 1]) {
+                if (depth == stackLength.length) {
+                    stackLength = Arrays.copyOf(stackLength, depth * 2);
+                }
+                if (depth == stackChildren.size()) {
+                    stackChildren.add(new ArrayList<Contexts>());
+                    stackLeaves.add(new Positions());
+                }
+                stackLength[depth] = length;
+                if (length >= min) {
+                    addChild(stackChildren.get(depth), stackLeaves.get(depth), leaf, child);
+                }
+                depth++;
+            } else if (length >= min) {
+                addChild(stackChildren.get(depth - 1), stackLeaves.get(depth - 1), leaf, child);
+            }
+        }
+        suffixArray = null;
+        lcp = null;
+        nextPosition = null;
+        return matches;
+    }
+
+    /**
+     * Adds either the leaf, if there is one, or the closed interval to the children of an interval.
+     */
+    private static void addChild(List<Contexts> children, Positions leaves, int leaf, Contexts child) {
+        if (leaf >= 0) {
+            leaves.add(leaf);
+        } else if (child != null) {
+            children.add(child);
+        }
+    }
+
+    /**
+     * Closes an LCP interval, reports it, if it's long enough, and merges its children.
+     *
+     * @param length   The length of the common prefix of the interval
+     * @param children The children of the interval, that are intervals themselves
+     * @param leaves   The children of the interval, that are single positions
+     *
+     * @return The positions of the interval, or null if it's shorter than the minimum length
+     */
+    private Contexts close(int length, List<Contexts> children, Positions leaves, List<Match> matches) {
+        if (length < min) {
+            children.clear();
+            leaves.clear();
+            return null;
+        }
+        collect(length, children, leaves, matches);
+
+        Contexts merged;
+        if (children.isEmpty()) {
+            merged = new Contexts();
+        } else {
+            int largest = 0;
+            for (int c = 1; c < children.size(); c++) {
+                if (children.get(c).size > children.get(largest).size) {
+                    largest = c;
+                }
+            }
+            merged = children.get(largest);
+            for (int c = 0; c < children.size(); c++) {
+                if (c != largest) {
+                    merged.addAll(children.get(c));
+                }
+            }
+        }
+        for (int l = 0; l < leaves.size; l++) {
+            merged.add(leftContext(leaves.values[l]), leaves.values[l]);
+        }
+        children.clear();
+        leaves.clear();
+        return merged;
+    }
+
+    private int[] buildSuffixArray(int[] rank) {
+        int maxIdentifier = 0;
+        for (int i = 0; i < size; i++) {
+            maxIdentifier = Math.max(maxIdentifier, tokens.getIdentifier(i));
+        }
+        // every EOF is a token of its own, ordered after all images
+        int classes = maxIdentifier + 1;
+        for (int i = 0; i < size; i++) {
+            int identifier = tokens.getIdentifier(i);
+            rank[i] = identifier == 0 ? classes++ : identifier;
+        }
+
+        int[] sa = new int[size];
+        int[] tmp = new int[size];
+        int[] count = new int[Math.max(classes, size) + 1];
+        for (int i = 0; i < size; i++) {
+            tmp[i] = i;
+        }
+        countingSort(tmp, sa, rank, count, classes);
+        classes = renumber(sa, rank, tmp, 0);
+        System.arraycopy(tmp, 0, rank, 0, size);
+
+        for (int k = 1; classes < size; k <<= 1) {
+            // sorted by the rank of the second half, the suffixes without one first
+            int p = 0;
+            for (int i = size - k; i < size; i++) {
+                tmp[p++] = i;
+            }
+            for (int j = 0; j < size; j++) {
+                if (sa[j] >= k) {
+                    tmp[p++] = sa[j] - k;
+                }
+            }
+            // then stable by the rank of the first half
+            countingSort(tmp, sa, rank, count, classes);
+            classes = renumber(sa, rank, tmp, k);
+            System.arraycopy(tmp, 0, rank, 0, size);
+        }
+        return sa;
+    }
+
+    private void countingSort(int[] from, int[] to, int[] rank, int[] count, int classes) {
+        Arrays.fill(count, 0, classes + 1, 0);
+        for (int i = 0; i < size; i++) {
+            count[rank[i] + 1]++;
+        }
+        for (int c = 1; c <= classes; c++) {
+            count[c] += count[c - 1];
+        }
+        for (int j = 0; j < size; j++) {
+            to[count[rank[from[j]]]++] = from[j];
+        }
+    }
+
+    /**
+     * Numbers the sorted suffixes by their first 2k tokens.
+     *
+     * @return The number of different ranks
+     */
+    private int renumber(int[] sa, int[] rank, int[] newRank, int k) {
+        if (size == 0) {
+            return 0;
+        }
+        int classes = 1;
+        newRank[sa[0]] = 0;
+        for (int j = 1; j < size; j++) {
+            int current = sa[j];
+            int previous = sa[j - 1];
+            if (rank[current] != rank[previous] || secondRank(rank, current, k) != secondRank(rank, previous, k)) {
+                classes++;
+            }
+            newRank[current] = classes - 1;
+        }
+        return classes;
+    }
+
+    private int secondRank(int[] rank, int i, int k) {
+        return k > 0 && i + k < size ? rank[i + k] : -1;
+    }
+
+    private int[] buildLcpArray(int[] rank) {
+        // the ranks are the inverse of the suffix array now
+        int[] result = new int[size];
+        int h = 0;
+        for (int i = 0; i < size; i++) {
+            int r = rank[i];
+            if (r == 0) {
+                h = 0;
+                continue;
+            }
+            int j = suffixArray[r - 1];
+            while (i + h < size && j + h < size && sameToken(i + h, j + h)) {
+                h++;
+            }
+            result[r] = h;
+            if (h > 0) {
+                h--;
+            }
+        }
+        return result;
+    }
+
+    private boolean sameToken(int index1, int index2) {
+        int identifier = tokens.getIdentifier(index1);
+        // EOF has the identifier 0
+        return identifier != 0 && identifier == tokens.getIdentifier(index2);
+    }
+
+    /**
+     * Returns the identifier of the token before the given index, or a unique
+     * negative value, if it's the first token of a file.
+     */
+    private int leftContext(int index) {
+        int identifier = index == 0 ? 0 : tokens.getIdentifier(index - 1);
+        return identifier == 0 ? -index - 1 : identifier;
+    }
+
+    /**
+     * Reports the LCP interval with the given children.
+     */
+    private void collect(int length, List<Contexts> children, Positions leaves, List<Match> matches) {
+        // the left contexts of the children with a single one, only whether there are several is needed
+        boolean hasSingleContext = false;
+        int singleContext = 0;
+        boolean severalSingleContexts = false;
+        int mixedChildren = 0;
+        for (Contexts child : children) {
+            if (child.isMixed()) {
+                mixedChildren++;
+                continue;
+            }
+            if (!hasSingleContext) {
+                hasSingleContext = true;
+                singleContext = child.getSingleContext();
+            } else if (child.getSingleContext() != singleContext) {
+                severalSingleContexts = true;
+            }
+        }
+        for (int l = 0; l < leaves.size; l++) {
+            if (!hasSingleContext) {
+                hasSingleContext = true;
+                singleContext = leftContext(leaves.values[l]);
+            } else if (leftContext(leaves.values[l]) != singleContext) {
+                severalSingleContexts = true;
+            }
+        }
+        if (mixedChildren == 0 && !severalSingleContexts) {
+            // the same repeat is reported one token further to the left
+            return;
+        }
+
+        // a position needs a partner in another child, which is preceded by another token.
+        // A child with a single left context always has one, as not all children have the same
+        Positions marks = new Positions();
+        for (int l = 0; l < leaves.size; l++) {
+            marks.add(leaves.values[l]);
+        }
+        for (Contexts child : children) {
+            if (!child.isMixed() || mixedChildren > 1 || severalSingleContexts) {
+                child.addPositions(marks, false, 0);
+            } else if (hasSingleContext) {
+                // the only mixed child, all other children have the same left context
+                child.addPositions(marks, true, singleContext);
+            }
+        }
+        reportMatch(marks, length, matches);
+    }
+
+    private void reportMatch(Positions marks, int length, List<Match> matches) {
+        Arrays.sort(marks.values, 0, marks.size);
+        Match match = null;
+        int first = -1;
+        int lastEnd = Integer.MIN_VALUE;
+        for (int m = 0; m < marks.size; m++) {
+            int mark = marks.values[m];
+            if (mark < lastEnd) {
+                // overlaps the previous position
+                continue;
+            }
+            if (first < 0) {
+                first = mark;
+            } else if (match == null) {
+                match = new Match(length, ma.createMarkToken(first), ma.createMarkToken(mark));
+                matches.add(match);
+            } else {
+                match.addTokenEntry(ma.createMarkToken(mark));
+            }
+            lastEnd = mark + length;
+        }
+    }
+
+    /**
+     * A growable list of positions.
+     */
+    private static final class Positions {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int position) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = position;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+
+    /**
+     * The positions of an LCP interval, grouped by their left context. The
+     * positions of a group are linked by {@link #nextPosition}, each group only
+     * stores its first and its last position. The groups are found by their
+     * left context with an open addressing table.
+     */
+    private final class Contexts {
+        private int size;
+        private int groups;
+        private int[] groupContexts = new int[2];
+        private int[] heads = new int[2];
+        private int[] tails = new int[2];
+        /** The index of the group + 1 by the hash of its left context, 0 for a free slot. */
+        private int[] table = new int[4];
+
+        boolean isMixed() {
+            return groups > 1;
+        }
+
+        int getSingleContext() {
+            return groupContexts[0];
+        }
+
+        /**
+         * Adds a single position with the given left context.
+         */
+        void add(int context, int position) {
+            nextPosition[position] = -1;
+            append(context, position, position);
+            size++;
+        }
+
+        /**
+         * Adds the positions, except those with the given left context, if there is one, to the given list.
+         */
+        void addPositions(Positions result, boolean except, int exceptContext) {
+            for (int g = 0; g < groups; g++) {
+                if (except && groupContexts[g] == exceptContext) {
+                    continue;
+                }
+                for (int position = heads[g]; position >= 0; position = nextPosition[position]) {
+                    result.add(position);
+                }
+            }
+        }
+
+        /**
+         * Moves the positions of the other interval into this one.
+         */
+        void addAll(Contexts other) {
+            for (int g = 0; g < other.groups; g++) {
+                append(other.groupContexts[g], other.heads[g], other.tails[g]);
+            }
+            size += other.size;
+        }
+
+        /**
+         * Appends the linked positions to the group of the given left context.
+         */
+        private void append(int context, int head, int tail) {
+            int mask = table.length - 1;
+            int slot = hash(context) & mask;
+            while (table[slot] != 0) {
+                int g = table[slot] - 1;
+                if (groupContexts[g] == context) {
+                    nextPosition[tails[g]] = head;
+                    tails[g] = tail;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (groups == groupContexts.length) {
+                groupContexts = Arrays.copyOf(groupContexts, groups * 2);
+                heads = Arrays.copyOf(heads, groups * 2);
+                tails = Arrays.copyOf(tails, groups * 2);
+            }
+            groupContexts[groups] = context;
+            heads[groups] = head;
+            tails[groups] = tail;
+            groups++;
+            table[slot] = groups;
+            if (groups * 2 > table.length) {
+                rehash();
+            }
+        }
+
+        private void rehash() {
+            table = new int[table.length * 2];
+            int mask = table.length - 1;
+            for (int g = 0; g < groups; g++) {
+                int slot = hash(groupContexts[g]) & mask;
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = g + 1;
+            }
+        }
+
+        private int hash(int context) {
+            int h = context * 0x9E3779B9;
+            return h ^ h >>> 16;
+        }
+    }
+}
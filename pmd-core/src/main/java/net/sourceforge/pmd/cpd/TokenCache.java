@@ -0,0 +1,317 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.zip.Adler32;
+
+import net.sourceforge.pmd.PMDVersion;
+
+/**
+ * Stores the tokens of every file in a file, so that an incremental run of CPD
+ * only needs to tokenize the changed files. The tokens of a file are reused, if
+ * the checksum of its content didn't change. The whole cache is invalidated, if
+ * anything else, that determines the tokens, changed, i.e. the language, the
+ * encoding or the tokenizer options, see {@link CPDConfiguration#getTokenizerFingerprint()}.
+ *
+ * <p>The images of the tokens of each file are stored with a numbering of their
+ * own, see {@link TokenizedFile}. When persisted, only the tokens of the files
+ * of the current run are kept.
+ *
+ * <p>The file starts with a header, followed by the tokens of each file and an
+ * index pointing to them. Only the index is loaded into memory. The file is kept
+ * open, the tokens of a file are read from it and decoded, when they are requested.
+ * The open file is closed, when the cache is persisted.
+ */
+final class TokenCache {
+
+    private static final Logger LOG = Logger.getLogger(TokenCache.class.getName());
+
+    /** "CPDT", the beginning of the file. */
+    private static final int MAGIC = 0x43504454;
+    private static final int FORMAT_VERSION = 2;
+
+    private final File file;
+    private final String fingerprint;
+    /** The loaded entries by file name, not changed after loading, so they can be read by several threads. */
+    private final Map<String, Entry> loadedEntries = new HashMap<>();
+    /** The entries of the current run by file name. */
+    private final Map<String, Entry> updatedEntries = new LinkedHashMap<>();
+    /** The loaded cache file, from which the tokens are read, or null if it isn't open. */
+    private RandomAccessFile loadedFile;
+    private boolean changed;
+
+    /**
+     * Creates a new cache backed by the given file, and loads the index of the tokens stored in it.
+     *
+     * @param file        The file in which the tokens are stored
+     * @param fingerprint Describes the language and the options of the tokenizer
+     */
+    TokenCache(File file, String fingerprint) {
+        this.file = file;
+        this.fingerprint = fingerprint;
+        load();
+    }
+
+    private void load() {
+        if (!file.isFile()) {
+            return;
+        }
+
+        @SuppressWarnings("PMD.CloseResource") // kept open for the stored tokens, closed when persisted
+        RandomAccessFile in = null;
+        try {
+            in = new RandomAccessFile(file, "r");
+            final long size = in.length();
+            if (size > Integer.MAX_VALUE) {
+                LOG.warning("Token cache " + file.getPath() + " is too big, will not be used");
+                return;
+            }
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                LOG.info("Token cache invalidated, format changed.");
+                return;
+            }
+            final long indexOffset = in.readLong();
+            if (!PMDVersion.VERSION.equals(in.readUTF()) || !fingerprint.equals(in.readUTF())) {
+                LOG.info("Token cache invalidated, PMD version or tokenizer options changed.");
+                return;
+            }
+            final long dataStart = in.getFilePointer();
+            if (indexOffset < dataStart || indexOffset > size) {
+                throw new EOFException();
+            }
+
+            final byte[] indexBytes = new byte[(int) (size - indexOffset)];
+            in.seek(indexOffset);
+            in.readFully(indexBytes);
+            @SuppressWarnings("PMD.CloseResource") // only wraps the bytes
+            final DataInputStream index = new DataInputStream(new ByteArrayInputStream(indexBytes));
+            int count = index.readInt();
+            for (int i = 0; i < count; i++) {
+                String fileName = index.readUTF();
+                long checksum = index.readLong();
+                int offset = index.readInt();
+                int length = index.readInt();
+                if (offset < dataStart || length < 0 || offset + (long) length > indexOffset) {
+                    throw new EOFException();
+                }
+                loadedEntries.put(fileName, new Entry(checksum, offset, length));
+            }
+            // the entries read their tokens from the file
+            loadedFile = in;
+        } catch (IOException e) {
+            LOG.warning("Could not load the token cache " + file.getPath() + ". " + e.getMessage());
+            loadedEntries.clear();
+        } finally {
+            if (loadedFile == null) {
+                closeQuietly(in);
+            }
+        }
+    }
+
+    /**
+     * Returns true, if the stored tokens of the given file are up to date.
+     * Unlike the other methods, this may be called by several threads at once.
+     *
+     * @param fileName The name of the file
+     * @param checksum The checksum of the file content, see {@link #computeChecksum(SourceCode)}
+     */
+    boolean isUpToDate(String fileName, long checksum) {
+        Entry entry = loadedEntries.get(fileName);
+        return entry != null && entry.checksum == checksum;
+    }
+
+    /**
+     * Returns the stored tokens of the given file, if its content didn't change.
+     * The tokens are read from the file and decoded now. They are kept, when the
+     * cache is persisted.
+     *
+     * @param fileName The name of the file
+     * @param checksum The checksum of the file content, see {@link #computeChecksum(SourceCode)}
+     *
+     * @return The tokens, or null if there are no up to date tokens for the file
+     */
+    TokenizedFile get(String fileName, long checksum) {
+        if (!isUpToDate(fileName, checksum) || loadedFile == null) {
+            return null;
+        }
+        Entry entry = loadedEntries.get(fileName);
+        try {
+            TokenizedFile tokens = TokenizedFile.read(new DataInputStream(new ByteArrayInputStream(read(entry))),
+                    fileName);
+            updatedEntries.put(fileName, entry);
+            return tokens;
+        } catch (IOException e) {
+            LOG.warning("Token cache entry for " + fileName + " is malformed, tokenizing the file again");
+            return null;
+        }
+    }
+
+    private byte[] read(Entry entry) throws IOException {
+        if (entry.data != null) {
+            return entry.data;
+        }
+        if (loadedFile == null) {
+            throw new IOException("The token cache has already been persisted");
+        }
+        byte[] data = new byte[entry.length];
+        loadedFile.seek(entry.offset);
+        loadedFile.readFully(data);
+        return data;
+    }
+
+    /**
+     * Stores the tokens of the given file, replacing its previous tokens.
+     *
+     * @param fileName The name of the file
+     * @param checksum The checksum of the file content, see {@link #computeChecksum(SourceCode)}
+     * @param tokens   The tokens of the file
+     */
+    void put(String fileName, long checksum, TokenizedFile tokens) {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(data)) {
+            tokens.write(out);
+        } catch (IOException e) {
+            // can't happen, the data is written to memory
+            throw new IllegalStateException(e);
+        }
+        updatedEntries.put(fileName, new Entry(checksum, data.toByteArray()));
+        changed = true;
+    }
+
+    /**
+     * Writes the tokens of the files of the current run to the file, unless nothing changed.
+     * The loaded file is closed afterwards.
+     */
+    void persist() {
+        try {
+            if (!changed && updatedEntries.size() == loadedEntries.size()) {
+                return;
+            }
+            rewriteFile();
+        } catch (IOException e) {
+            LOG.severe("Could not persist the token cache to file. " + e.getMessage());
+        } finally {
+            closeQuietly(loadedFile);
+            loadedFile = null;
+        }
+    }
+
+    private void rewriteFile() throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        File tempFile = new File(parent, file.getName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tempFile.toPath())))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                ByteArrayOutputStream header = new ByteArrayOutputStream();
+                DataOutputStream headerStream = new DataOutputStream(header);
+                headerStream.writeUTF(PMDVersion.VERSION);
+                headerStream.writeUTF(fingerprint);
+                // the index follows the tokens, whose size is known in advance
+                long indexOffset = out.size() + 8 + header.size();
+                for (Entry entry : updatedEntries.values()) {
+                    indexOffset += entry.length;
+                }
+                out.writeLong(indexOffset);
+                out.write(header.toByteArray());
+
+                Map<String, Integer> offsets = new HashMap<>();
+                for (Map.Entry<String, Entry> entry : updatedEntries.entrySet()) {
+                    offsets.put(entry.getKey(), out.size());
+                    out.write(read(entry.getValue()));
+                }
+                out.writeInt(updatedEntries.size());
+                for (Map.Entry<String, Entry> entry : updatedEntries.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(entry.getValue().checksum);
+                    out.writeInt(offsets.get(entry.getKey()));
+                    out.writeInt(entry.getValue().length);
+                }
+            }
+
+            // the loaded file can't be replaced on Windows, while it is open
+            closeQuietly(loadedFile);
+            loadedFile = null;
+            try {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    private static void closeQuietly(RandomAccessFile file) {
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                LOG.fine("Could not close the token cache. " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Computes the checksum of the content of a file. The content is read like
+     * the tokenizers read it, so the tokenizer reuses the loaded lines, and the
+     * file is only read once.
+     */
+    static long computeChecksum(SourceCode sourceCode) {
+        Adler32 checksum = new Adler32();
+        for (String line : sourceCode.getCode()) {
+            checksum.update(line.getBytes(StandardCharsets.UTF_8));
+            checksum.update('\n');
+        }
+        return checksum.getValue();
+    }
+
+    /**
+     * The tokens of a file, either stored in the loaded file, or in memory.
+     */
+    private static final class Entry {
+        private final long checksum;
+        private final int offset;
+        private final int length;
+        /** The encoded tokens, or null if they are stored in the loaded file. */
+        private final byte[] data;
+
+        Entry(long checksum, int offset, int length) {
+            this.checksum = checksum;
+            this.offset = offset;
+            this.length = length;
+            this.data = null;
+        }
+
+        Entry(long checksum, byte[] data) {
+            this.checksum = checksum;
+            this.offset = -1;
+            this.length = data.length;
+            this.data = data;
+        }
+    }
+}
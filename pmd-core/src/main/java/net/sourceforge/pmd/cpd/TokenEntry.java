@@ -5,6 +5,7 @@
 package net.sourceforge.pmd.cpd;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -28,6 +29,13 @@ public class TokenEntry implements Comparable<TokenEntry> {
             return new HashMap<>();
         }
     };
+    /** The images of the current thread in the order of their identifiers, starting with 1. */
+    private static final ThreadLocal<List<String>> IMAGES = new ThreadLocal<List<String>>() {
+        @Override
+        protected List<String> initialValue() {
+            return new ArrayList<>();
+        }
+    };
     private static final ThreadLocal<AtomicInteger> TOKEN_COUNT = new ThreadLocal<AtomicInteger>() {
         @Override
         protected AtomicInteger initialValue() {
@@ -70,6 +78,18 @@ public class TokenEntry implements Comparable<TokenEntry> {
         this.index = TOKEN_COUNT.get().getAndIncrement();
     }
 
+    /**
+     * Creates the token entry of a token stored in {@link Tokens}.
+     */
+    TokenEntry(int identifier, String tokenSrcID, int beginLine, int beginColumn, int endColumn, int index) {
+        this.identifier = identifier;
+        this.tokenSrcID = tokenSrcID;
+        this.beginLine = beginLine;
+        this.beginColumn = beginColumn;
+        this.endColumn = endColumn;
+        this.index = index;
+    }
+
     public static TokenEntry getEOF() {
         TOKEN_COUNT.get().getAndIncrement();
         return EOF;
@@ -78,13 +98,18 @@ public class TokenEntry implements Comparable<TokenEntry> {
     public static void clearImages() {
         TOKENS.get().clear();
         TOKENS.remove();
+        IMAGES.remove();
         TOKEN_COUNT.remove();
     }
 
     /**
      * Helper class to preserve and restore the current state of the token
      * entries.
+     *
+     * @deprecated This copies all tokens and images, use {@link Tokens#checkpoint()}
+     *     instead. Will be removed with 7.0.0
      */
+    @Deprecated
     public static class State {
         private int tokenCount;
         private Map<String, Integer> tokens;
@@ -100,6 +125,12 @@ public class TokenEntry implements Comparable<TokenEntry> {
             TokenEntry.TOKEN_COUNT.get().set(tokenCount);
             TOKENS.get().clear();
             TOKENS.get().putAll(tokens);
+            String[] images = new String[tokens.size()];
+            for (Map.Entry<String, Integer> e : tokens.entrySet()) {
+                images[e.getValue() - 1] = e.getKey();
+            }
+            IMAGES.get().clear();
+            IMAGES.get().addAll(Arrays.asList(images));
             return entries;
         }
     }
@@ -166,20 +197,83 @@ public class TokenEntry implements Comparable<TokenEntry> {
         if (this == EOF) {
             return "EOF";
         }
-        for (Map.Entry<String, Integer> e : TOKENS.get().entrySet()) {
-            if (e.getValue().intValue() == identifier) {
-                return e.getKey();
-            }
+        List<String> images = IMAGES.get();
+        if (identifier > 0 && identifier <= images.size()) {
+            return images.get(identifier - 1);
         }
         return "--unkown--";
     }
 
     final void setImage(String image) {
+        this.identifier = getIdentifier(image);
+    }
+
+    /**
+     * Returns the identifier of the image in the token stream of the current thread,
+     * the image is added, if it's new.
+     */
+    static int getIdentifier(String image) {
         Integer i = TOKENS.get().get(image);
         if (i == null) {
             i = TOKENS.get().size() + 1;
             TOKENS.get().put(image, i);
+            IMAGES.get().add(image);
+        }
+        return i.intValue();
+    }
+
+    /**
+     * Returns the images of the token stream of the current thread, indexed by their identifier.
+     */
+    static String[] getImages() {
+        List<String> images = IMAGES.get();
+        String[] result = new String[images.size() + 1];
+        for (int i = 0; i < images.size(); i++) {
+            result[i + 1] = images.get(i);
         }
-        this.identifier = i.intValue();
+        return result;
+    }
+
+    /**
+     * Returns the image of the given identifier in the token stream of the current thread.
+     */
+    static String getImage(int identifier) {
+        return IMAGES.get().get(identifier - 1);
+    }
+
+    /**
+     * Returns the number of images of the current thread.
+     */
+    static int getImageCount() {
+        return IMAGES.get().size();
+    }
+
+    /**
+     * Returns the index of the next token of the current thread.
+     */
+    static int getTokenCount() {
+        return TOKEN_COUNT.get().intValue();
+    }
+
+    /**
+     * Forgets the images of the current thread, that have been added after the given
+     * number of images, and resets the index of the next token. This only takes time
+     * for the forgotten images.
+     */
+    static void rollback(int imageCount, int tokenCount) {
+        List<String> images = IMAGES.get();
+        Map<String, Integer> tokens = TOKENS.get();
+        for (int i = images.size() - 1; i >= imageCount; i--) {
+            tokens.remove(images.remove(i));
+        }
+        TOKEN_COUNT.get().set(tokenCount);
+    }
+
+    /**
+     * Advances the index of the next token of the current thread, as if the given number of
+     * tokens had been created on the current thread.
+     */
+    static void advanceIndex(int count) {
+        TOKEN_COUNT.get().addAndGet(count);
     }
 }
@@ -0,0 +1,111 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The tokens of a single file, whose images are numbered independently of the
+ * token stream of CPD. This is used to tokenize files on other threads, see
+ * {@link ParallelTokenizer}, and to store the tokens of files, see {@link TokenCache}.
+ */
+final class TokenizedFile {
+    private final Tokens tokens;
+    /** The images by the identifiers of the numbering of this file. */
+    private final String[] images;
+
+    TokenizedFile(Tokens tokens, String[] images) {
+        this.tokens = tokens;
+        this.images = images;
+    }
+
+    /**
+     * Copies the tokens of one file out of a token stream, whose images are
+     * numbered by {@link TokenEntry} on the current thread.
+     *
+     * @param source The token stream
+     * @param from   The index of the first token of the file
+     * @param to     The index after the {@link TokenEntry#EOF} of the file
+     */
+    static TokenizedFile copyOf(Tokens source, int from, int to) {
+        // only the images used by the file are looked up, the stream may have many more
+        Map<Integer, Integer> identifiers = new HashMap<>();
+        String[] images = new String[to - from + 1];
+        Tokens tokens = new Tokens();
+        for (int i = from; i < to; i++) {
+            int global = source.getIdentifier(i);
+            Integer local = 0;
+            if (global != 0) {
+                local = identifiers.get(global);
+                if (local == null) {
+                    local = identifiers.size() + 1;
+                    identifiers.put(global, local);
+                    images[local] = TokenEntry.getImage(global);
+                }
+            }
+            tokens.add(source, i, local);
+        }
+        String[] usedImages = new String[identifiers.size() + 1];
+        System.arraycopy(images, 0, usedImages, 0, usedImages.length);
+        return new TokenizedFile(tokens, usedImages);
+    }
+
+    /**
+     * Appends the tokens to the token stream of the current thread.
+     */
+    void appendTo(Tokens target) {
+        int[] identifiers = new int[images.length];
+        for (int i = 0; i < tokens.size(); i++) {
+            int local = tokens.getIdentifier(i);
+            if (local != 0 && identifiers[local] == 0) {
+                // images are numbered in the order they first occur, like on the calling thread
+                identifiers[local] = TokenEntry.getIdentifier(images[local]);
+            }
+            target.add(tokens, i, identifiers[local]);
+        }
+        TokenEntry.advanceIndex(tokens.size());
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(images.length);
+        for (int i = 1; i < images.length; i++) {
+            out.writeUTF(images[i]);
+        }
+        out.writeInt(tokens.size());
+        for (int i = 0; i < tokens.size(); i++) {
+            out.writeInt(tokens.getIdentifier(i));
+            out.writeInt(tokens.getBeginLine(i));
+            out.writeInt(tokens.getBeginColumn(i));
+            out.writeInt(tokens.getEndColumn(i));
+        }
+    }
+
+    /**
+     * Reads the tokens written by {@link #write(DataOutputStream)}.
+     *
+     * @param in       The stream
+     * @param fileName The name of the file of the tokens
+     */
+    static TokenizedFile read(DataInputStream in, String fileName) throws IOException {
+        String[] images = new String[in.readInt()];
+        for (int i = 1; i < images.length; i++) {
+            images[i] = in.readUTF();
+        }
+        int count = in.readInt();
+        Tokens tokens = new Tokens();
+        for (int i = 0; i < count; i++) {
+            int identifier = in.readInt();
+            if (identifier < 0 || identifier >= images.length) {
+                throw new IOException("Invalid token identifier " + identifier);
+            }
+            tokens.add(identifier, fileName, in.readInt(), in.readInt(), in.readInt());
+        }
+        return new TokenizedFile(tokens, images);
+    }
+}
@@ -4,28 +4,201 @@
 
 package net.sourceforge.pmd.cpd;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * The token stream of CPD. The tokens aren't kept as {@link TokenEntry} objects,
+ * but their identifiers, lines, columns and files are stored in parallel chunks of
+ * ints, which only need a fraction of the memory. The index of a token is its
+ * position in the stream. The {@link TokenEntry} objects returned by
+ * {@link #getTokens()} and {@link #iterator()} are created on access, so changes
+ * to them are only stored with {@link List#set(int, Object)}.
+ *
+ * <p>The first chunk grows like an {@link ArrayList}, so that the short streams of
+ * single files don't take the memory of a whole chunk.
+ */
 public class Tokens {
 
-    private List<TokenEntry> tokens = new ArrayList<>();
+    private static final int CHUNK_SHIFT = 14;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** The identifiers of the images, 0 for {@link TokenEntry#EOF}. */
+    private final List<int[]> identifiers = new ArrayList<>();
+    private final List<int[]> beginLines = new ArrayList<>();
+    private final List<int[]> beginColumns = new ArrayList<>();
+    private final List<int[]> endColumns = new ArrayList<>();
+    /** The index of the file in {@link #fileNames}. */
+    private final List<int[]> fileIds = new ArrayList<>();
+    private final List<String> fileNames = new ArrayList<>();
+    private final Map<String, Integer> fileNameIds = new HashMap<>();
+    private int size;
+
+    private final List<TokenEntry> view = new TokenList();
 
     public void add(TokenEntry tokenEntry) {
-        this.tokens.add(tokenEntry);
+        grow();
+        set(size - 1, tokenEntry);
     }
 
-    public Iterator<TokenEntry> iterator() {
-        return tokens.iterator();
+    /**
+     * Appends a copy of a token of another stream with another identifier.
+     *
+     * @param source     The other stream
+     * @param index      The index of the token in the other stream
+     * @param identifier The identifier of its image in this stream
+     */
+    void add(Tokens source, int index, int identifier) {
+        grow();
+        int chunk = (size - 1) >>> CHUNK_SHIFT;
+        int offset = (size - 1) & CHUNK_MASK;
+        int sourceChunk = index >>> CHUNK_SHIFT;
+        int sourceOffset = index & CHUNK_MASK;
+        identifiers.get(chunk)[offset] = identifier;
+        beginLines.get(chunk)[offset] = source.beginLines.get(sourceChunk)[sourceOffset];
+        beginColumns.get(chunk)[offset] = source.beginColumns.get(sourceChunk)[sourceOffset];
+        endColumns.get(chunk)[offset] = source.endColumns.get(sourceChunk)[sourceOffset];
+        fileIds.get(chunk)[offset] = getFileId(source.fileNames.get(source.fileIds.get(sourceChunk)[sourceOffset]));
+    }
+
+    /**
+     * Appends a token, whose image has the given identifier.
+     *
+     * @param identifier The identifier of the image, 0 for {@link TokenEntry#EOF}
+     */
+    void add(int identifier, String fileName, int beginLine, int beginColumn, int endColumn) {
+        grow();
+        int chunk = (size - 1) >>> CHUNK_SHIFT;
+        int offset = (size - 1) & CHUNK_MASK;
+        identifiers.get(chunk)[offset] = identifier;
+        beginLines.get(chunk)[offset] = beginLine;
+        beginColumns.get(chunk)[offset] = beginColumn;
+        endColumns.get(chunk)[offset] = endColumn;
+        fileIds.get(chunk)[offset] = getFileId(fileName);
+    }
+
+    private void grow() {
+        int chunk = size >>> CHUNK_SHIFT;
+        if (chunk == identifiers.size()) {
+            // only the first chunk starts small, once it is full the stream isn't short
+            int capacity = chunk == 0 ? INITIAL_CAPACITY : CHUNK_SIZE;
+            identifiers.add(new int[capacity]);
+            beginLines.add(new int[capacity]);
+            beginColumns.add(new int[capacity]);
+            endColumns.add(new int[capacity]);
+            fileIds.add(new int[capacity]);
+        } else if ((size & CHUNK_MASK) == identifiers.get(chunk).length) {
+            int capacity = Math.min(identifiers.get(chunk).length * 2, CHUNK_SIZE);
+            growChunk(identifiers, chunk, capacity);
+            growChunk(beginLines, chunk, capacity);
+            growChunk(beginColumns, chunk, capacity);
+            growChunk(endColumns, chunk, capacity);
+            growChunk(fileIds, chunk, capacity);
+        }
+        size++;
+    }
+
+    private static void growChunk(List<int[]> chunks, int chunk, int capacity) {
+        chunks.set(chunk, Arrays.copyOf(chunks.get(chunk), capacity));
+    }
+
+    private void set(int index, TokenEntry tokenEntry) {
+        int chunk = index >>> CHUNK_SHIFT;
+        int offset = index & CHUNK_MASK;
+        identifiers.get(chunk)[offset] = tokenEntry == TokenEntry.EOF ? 0 : tokenEntry.getIdentifier();
+        beginLines.get(chunk)[offset] = tokenEntry.getBeginLine();
+        beginColumns.get(chunk)[offset] = tokenEntry.getBeginColumn();
+        endColumns.get(chunk)[offset] = tokenEntry.getEndColumn();
+        fileIds.get(chunk)[offset] = getFileId(tokenEntry.getTokenSrcID());
+    }
+
+    private int getFileId(String fileName) {
+        // most tokens belong to the file of the previous token
+        if (!fileNames.isEmpty() && fileNames.get(fileNames.size() - 1).equals(fileName)) {
+            return fileNames.size() - 1;
+        }
+        Integer id = fileNameIds.get(fileName);
+        if (id == null) {
+            id = fileNames.size();
+            fileNames.add(fileName);
+            fileNameIds.put(fileName, id);
+        }
+        return id;
+    }
+
+    /**
+     * Removes the tokens from the given index on.
+     */
+    void truncate(int newSize) {
+        size = newSize;
+    }
+
+    /**
+     * Records the current end of the token stream, and of the images and the token index
+     * of the current thread, see {@link TokenEntry}.
+     */
+    Checkpoint checkpoint() {
+        return new Checkpoint(size, TokenEntry.getImageCount(), TokenEntry.getTokenCount());
+    }
+
+    /**
+     * Removes the tokens and images added since the checkpoint was recorded. Unlike
+     * {@link TokenEntry.State}, this only takes time for the removed images.
+     */
+    void restore(Checkpoint checkpoint) {
+        truncate(checkpoint.size);
+        TokenEntry.rollback(checkpoint.imageCount, checkpoint.tokenCount);
+    }
+
+    /**
+     * Returns the identifier of the image of the token at the given index, 0 for {@link TokenEntry#EOF}.
+     */
+    int getIdentifier(int index) {
+        return identifiers.get(index >>> CHUNK_SHIFT)[index & CHUNK_MASK];
+    }
+
+    int getBeginLine(int index) {
+        return beginLines.get(index >>> CHUNK_SHIFT)[index & CHUNK_MASK];
+    }
+
+    int getBeginColumn(int index) {
+        return beginColumns.get(index >>> CHUNK_SHIFT)[index & CHUNK_MASK];
+    }
+
+    int getEndColumn(int index) {
+        return endColumns.get(index >>> CHUNK_SHIFT)[index & CHUNK_MASK];
+    }
+
+    /**
+     * Creates the token entry of the token at the given index.
+     */
+    TokenEntry get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        int chunk = index >>> CHUNK_SHIFT;
+        int offset = index & CHUNK_MASK;
+        int identifier = identifiers.get(chunk)[offset];
+        if (identifier == 0) {
+            return TokenEntry.EOF;
+        }
+        return new TokenEntry(identifier, fileNames.get(fileIds.get(chunk)[offset]), beginLines.get(chunk)[offset],
+                beginColumns.get(chunk)[offset], endColumns.get(chunk)[offset], index);
     }
 
-    private TokenEntry get(int index) {
-        return tokens.get(index);
+    public Iterator<TokenEntry> iterator() {
+        return view.iterator();
     }
 
     public int size() {
-        return tokens.size();
+        return size;
     }
 
     public TokenEntry getEndToken(TokenEntry mark, Match match) {
@@ -33,15 +206,77 @@ public class Tokens {
     }
 
     public int getLineCount(TokenEntry mark, Match match) {
-        TokenEntry endTok = getEndToken(mark, match);
-        if (endTok == TokenEntry.EOF) {
-            endTok = get(mark.getIndex() + match.getTokenCount() - 2);
+        int endIndex = mark.getIndex() + match.getTokenCount() - 1;
+        if (getIdentifier(endIndex) == 0) {
+            endIndex--;
         }
-        return endTok.getBeginLine() - mark.getBeginLine() + 1;
+        return getBeginLine(endIndex) - mark.getBeginLine() + 1;
     }
 
+    /**
+     * Returns a view of the tokens. Tokens can only be added to the end, and removed from the end.
+     */
     public List<TokenEntry> getTokens() {
-        return tokens;
+        return view;
     }
 
+    private final class TokenList extends AbstractList<TokenEntry> {
+
+        @Override
+        public TokenEntry get(int index) {
+            return Tokens.this.get(index);
+        }
+
+        @Override
+        public TokenEntry set(int index, TokenEntry element) {
+            TokenEntry previous = get(index);
+            Tokens.this.set(index, element);
+            return previous;
+        }
+
+        @Override
+        public void add(int index, TokenEntry element) {
+            if (index != size) {
+                throw new UnsupportedOperationException("Tokens can only be added to the end");
+            }
+            Tokens.this.add(element);
+            modCount++;
+        }
+
+        @Override
+        protected void removeRange(int fromIndex, int toIndex) {
+            if (toIndex != size) {
+                throw new UnsupportedOperationException("Tokens can only be removed from the end");
+            }
+            truncate(fromIndex);
+            modCount++;
+        }
+
+        @Override
+        public TokenEntry remove(int index) {
+            TokenEntry removed = get(index);
+            removeRange(index, index + 1);
+            return removed;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * A position in the token stream, see {@link #checkpoint()}.
+     */
+    static final class Checkpoint {
+        private final int size;
+        private final int imageCount;
+        private final int tokenCount;
+
+        Checkpoint(int size, int imageCount, int tokenCount) {
+            this.size = size;
+            this.imageCount = imageCount;
+            this.tokenCount = tokenCount;
+        }
+    }
 }
@@ -6,6 +6,7 @@ package net.sourceforge.pmd.lang;
 
 import java.io.Writer;
 
+import net.sourceforge.pmd.annotation.Experimental;
 import net.sourceforge.pmd.lang.dfa.DFAGraphRule;
 import net.sourceforge.pmd.lang.metrics.LanguageMetricsProvider;
 import net.sourceforge.pmd.util.designerbindings.DesignerBindings;
@@ -64,6 +65,20 @@ public abstract class AbstractLanguageVersionHandler implements LanguageVersionH
         return VisitorStarter.DUMMY;
     }
 
+    /**
+     * Returns a new codec without any multifile data, that stores the
+     * multifile data of single files, or null if the multifile data of
+     * this language can't be stored. This isn't part of the
+     * {@link LanguageVersionHandler} interface, so that language modules
+     * implementing it directly aren't affected.
+     *
+     * <p>Note: this is experimental, like the multifile analysis itself.
+     */
+    @Experimental
+    public MultifileDataCodec getMultifileDataCodec() {
+        return null;
+    }
+
 
     @Override
     public VisitorStarter getQualifiedNameResolutionFacade(ClassLoader classLoader) {
@@ -0,0 +1,57 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import net.sourceforge.pmd.annotation.Experimental;
+import net.sourceforge.pmd.lang.ast.Node;
+
+/**
+ * Gathers the multifile data of a file like the {@link LanguageVersionHandler#getMultifileFacade() multifile facade},
+ * and additionally stores the data gathered from the file. The stored data can be restored later on, e.g. in
+ * the next incremental analysis, without parsing the unchanged file again.
+ *
+ * <p>Each codec holds the multifile data of a single analysis, so that several analyses in the same JVM don't
+ * see each other's data. Once the multifile analysis of all files ran, the codec is {@link #freeze() frozen},
+ * and the rules only query its data, see {@link net.sourceforge.pmd.RuleContext#getMultifileData()}.
+ *
+ * @see AbstractLanguageVersionHandler#getMultifileDataCodec()
+ */
+@Experimental
+public interface MultifileDataCodec {
+
+    /**
+     * Gathers the multifile data of the given root node, and writes the gathered data to the output.
+     *
+     * @param rootNode The root node of the file, with qualified names and scopes
+     * @param out      The output to write the data of the file to
+     *
+     * @throws IOException If the data can't be written
+     * @throws IllegalStateException If the codec is frozen
+     */
+    void gather(Node rootNode, DataOutput out) throws IOException;
+
+
+    /**
+     * Restores the multifile data written by {@link #gather(Node, DataOutput)}, as if the file was
+     * gathered again.
+     *
+     * @param in The data of a single file
+     *
+     * @throws IOException If the data can't be read, e.g. because it was written by another version
+     * @throws IllegalStateException If the codec is frozen
+     */
+    void restore(DataInput in) throws IOException;
+
+
+    /**
+     * Freezes the multifile data gathered or restored so far. This is called once the multifile analysis
+     * of all files ran, afterwards the data can't be changed anymore.
+     */
+    void freeze();
+}
@@ -4,13 +4,16 @@
 
 package net.sourceforge.pmd.lang.metrics;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
 
 import net.sourceforge.pmd.lang.ast.Node;
 
+
 /**
- * Basic implementation of a metric memoizer.
+ * Basic implementation of a metric memoizer. The results are stored as primitive doubles, each one in the slot of its
+ * {@link ParameterizedMetricKey}. The memoizer may be used by several threads without locking. If a result is
+ * memoized while the slots are grown by another thread, it may be lost, and is then just computed again.
  *
  * @param <N> Type of node on which the memoized metric can be computed
  *
@@ -19,18 +22,46 @@ import net.sourceforge.pmd.lang.ast.Node;
  */
 public class BasicMetricMemoizer<N extends Node> implements MetricMemoizer<N> {
 
+    /** Marks an empty slot. This NaN is never stored, {@link Double#doubleToLongBits(double)} collapses all NaNs. */
+    private static final long EMPTY = 0x7ff0000000000001L;
 
-    private final Map<ParameterizedMetricKey<N>, Double> memo = new HashMap<>();
+    private final AtomicReference<AtomicLongArray> memo = new AtomicReference<>(new AtomicLongArray(0));
 
 
     @Override
     public Double getMemo(ParameterizedMetricKey<N> key) {
-        return memo.get(key);
+        AtomicLongArray values = memo.get();
+        if (key.slot >= values.length()) {
+            return null;
+        }
+
+        long bits = values.get(key.slot);
+        return bits == EMPTY ? null : Double.longBitsToDouble(bits);
     }
 
 
     @Override
     public void memoize(ParameterizedMetricKey<N> key, double value) {
-        memo.put(key, value);
+        AtomicLongArray values = memo.get();
+        if (key.slot >= values.length()) {
+            values = grow(values, key.slot);
+        }
+        values.set(key.slot, Double.doubleToLongBits(value));
+    }
+
+
+    private AtomicLongArray grow(AtomicLongArray values, int slot) {
+        AtomicLongArray current = values;
+        while (slot >= current.length()) {
+            AtomicLongArray grown = new AtomicLongArray(Math.max(slot + 1, 2 * current.length()));
+            for (int i = 0; i < grown.length(); i++) {
+                grown.set(i, i < current.length() ? current.get(i) : EMPTY);
+            }
+            if (memo.compareAndSet(current, grown)) {
+                return grown;
+            }
+            current = memo.get();
+        }
+        return current;
     }
 }
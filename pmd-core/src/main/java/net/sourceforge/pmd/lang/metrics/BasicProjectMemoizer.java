@@ -4,9 +4,12 @@
 
 package net.sourceforge.pmd.lang.metrics;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
 
+import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.ast.QualifiableNode;
 import net.sourceforge.pmd.lang.ast.QualifiedName;
 
@@ -14,7 +17,9 @@ import net.sourceforge.pmd.lang.ast.QualifiedName;
  * Simple implementation of a project memoizer. Memoizers are accessible in constant time, provided the QualifiedName's
  * hashCode is well distributed.
  *
- * <p>This implementation takes care of recollecting irrelevant memoizers by storing them in {@link WeakHashMap}.
+ * <p>This implementation takes care of recollecting irrelevant memoizers by storing them in {@link WeakHashMap}s.
+ * The memoizers are spread over several maps by the hash of their qualified name, and only the map of the requested
+ * memoizer is locked. Threads computing metrics of different classes or operations thus rarely wait for each other.
  *
  * @param <T> Type of type declaration nodes of the language
  * @param <O> Type of operation declaration nodes of the language
@@ -25,11 +30,11 @@ import net.sourceforge.pmd.lang.ast.QualifiedName;
 public abstract class BasicProjectMemoizer<T extends QualifiableNode, O extends QualifiableNode>
     implements ProjectMemoizer<T, O> {
 
-    private Map<QualifiedName, MetricMemoizer<T>> classes = new WeakHashMap<>();
-    private Map<QualifiedName, MetricMemoizer<O>> operations = new WeakHashMap<>();
+    /** The number of maps, a power of two. */
+    private static final int STRIPES = 16;
 
-    private final Object classesSynchronizer = new Object();
-    private final Object operationsSynchronizer = new Object();
+    private final StripedMemoizers<T> classes = new StripedMemoizers<>();
+    private final StripedMemoizers<O> operations = new StripedMemoizers<>();
 
     /** Clears all memoizers. Used for tests. */
     public void reset() {
@@ -40,24 +45,51 @@ public abstract class BasicProjectMemoizer<T extends QualifiableNode, O extends
 
     @Override
     public MetricMemoizer<O> getOperationMemoizer(QualifiedName qname) {
-        synchronized (operationsSynchronizer) {
-            if (!operations.containsKey(qname)) {
-                operations.put(qname, new BasicMetricMemoizer<O>());
-            }
-        }
-
         return operations.get(qname);
     }
 
 
     @Override
     public MetricMemoizer<T> getClassMemoizer(QualifiedName qname) {
-        synchronized (classesSynchronizer) {
-            if (!classes.containsKey(qname)) {
-                classes.put(qname, new BasicMetricMemoizer<T>());
+        return classes.get(qname);
+    }
+
+
+    /**
+     * Memoizers by qualified name, spread over several maps, each with its own lock.
+     */
+    private static final class StripedMemoizers<N extends Node> {
+
+        private final List<Map<QualifiedName, MetricMemoizer<N>>> stripes = new ArrayList<>(STRIPES);
+
+
+        StripedMemoizers() {
+            for (int i = 0; i < STRIPES; i++) {
+                stripes.add(new WeakHashMap<QualifiedName, MetricMemoizer<N>>());
             }
         }
 
-        return classes.get(qname);
+
+        MetricMemoizer<N> get(QualifiedName qname) {
+            int hash = qname.hashCode();
+            Map<QualifiedName, MetricMemoizer<N>> stripe = stripes.get((hash ^ hash >>> 16) & (STRIPES - 1));
+            synchronized (stripe) {
+                MetricMemoizer<N> memoizer = stripe.get(qname);
+                if (memoizer == null) {
+                    memoizer = new BasicMetricMemoizer<>();
+                    stripe.put(qname, memoizer);
+                }
+                return memoizer;
+            }
+        }
+
+
+        void clear() {
+            for (Map<QualifiedName, MetricMemoizer<N>> stripe : stripes) {
+                synchronized (stripe) {
+                    stripe.clear();
+                }
+            }
+        }
     }
 }
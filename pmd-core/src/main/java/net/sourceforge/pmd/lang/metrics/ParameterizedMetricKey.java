@@ -4,8 +4,9 @@
 
 package net.sourceforge.pmd.lang.metrics;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.sourceforge.pmd.lang.ast.Node;
 
@@ -19,18 +20,22 @@ import net.sourceforge.pmd.lang.ast.Node;
  */
 public final class ParameterizedMetricKey<N extends Node> {
 
-    private static final Map<ParameterizedMetricKey<?>, ParameterizedMetricKey<?>> POOL = new HashMap<>();
+    private static final ConcurrentMap<ParameterizedMetricKey<?>, ParameterizedMetricKey<?>> POOL = new ConcurrentHashMap<>();
+    private static final AtomicInteger SLOTS = new AtomicInteger();
 
     /** The metric key. */
     public final MetricKey<N> key;
     /** The options of the metric. */
     public final MetricOptions options;
+    /** The index of this key among all pooled keys, used by memoizers to store the results in an array. */
+    /* default */ final int slot;
 
 
     /** Used internally by the pooler. */
-    private ParameterizedMetricKey(MetricKey<N> key, MetricOptions options) {
+    private ParameterizedMetricKey(MetricKey<N> key, MetricOptions options, int slot) {
         this.key = key;
         this.options = options;
+        this.slot = slot;
     }
 
 
@@ -65,9 +70,11 @@ public final class ParameterizedMetricKey<N extends Node> {
      */
     @SuppressWarnings("PMD.SingletonClassReturningNewInstance")
     public static <N extends Node> ParameterizedMetricKey<N> getInstance(MetricKey<N> key, MetricOptions options) {
-        ParameterizedMetricKey<N> tmp = new ParameterizedMetricKey<>(key, options);
+        ParameterizedMetricKey<N> tmp = new ParameterizedMetricKey<>(key, options, -1);
         if (!POOL.containsKey(tmp)) {
-            POOL.put(tmp, tmp);
+            // a slot might be skipped, if several threads pool the same key
+            ParameterizedMetricKey<N> pooled = new ParameterizedMetricKey<>(key, options, SLOTS.getAndIncrement());
+            POOL.putIfAbsent(pooled, pooled);
         }
 
         @SuppressWarnings("unchecked")
@@ -5,24 +5,32 @@
 package net.sourceforge.pmd.lang.rule;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.Report.ConfigurationError;
+import net.sourceforge.pmd.Report.ProcessingError;
 import net.sourceforge.pmd.Rule;
 import net.sourceforge.pmd.RuleContext;
 import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleViolation;
 import net.sourceforge.pmd.benchmark.TimeTracker;
 import net.sourceforge.pmd.benchmark.TimedOperation;
 import net.sourceforge.pmd.benchmark.TimedOperationCategory;
 import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.stat.Metric;
 
 /**
  * This is a base class for RuleChainVisitor implementations which extracts
@@ -32,6 +40,11 @@ import net.sourceforge.pmd.lang.ast.Node;
 public abstract class AbstractRuleChainVisitor implements RuleChainVisitor {
     private static final Logger LOG = Logger.getLogger(AbstractRuleChainVisitor.class.getName());
 
+    /** Slot of a node name, that isn't visited by any rule. */
+    private static final int NOT_VISITED = -1;
+    /** Node ids above this limit are not cached, they are probably not dense. */
+    private static final int MAX_CACHED_NODE_ID = 4096;
+
     /**
      * These are all the rules participating in the RuleChain, grouped by
      * RuleSet.
@@ -43,6 +56,24 @@ public abstract class AbstractRuleChainVisitor implements RuleChainVisitor {
      */
     protected Map<String, List<Node>> nodeNameToNodes;
 
+    /**
+     * The slot of each visited node name. The nodes are collected in the
+     * list with the index of their slot in {@link #nodesBySlot}.
+     */
+    private Map<String, Integer> nodeNameToSlot;
+    private List<Node>[] nodesBySlot;
+    /** The slots of the node names each rule visits. */
+    private Map<Rule, int[]> ruleToSlots;
+
+    /**
+     * The node name and slot last seen for each node id. JJTree nodes have a
+     * dense id per node type, so the slot of a node can usually be found
+     * without hashing its name. Other nodes might share an id, these
+     * fall back to the lookup by name.
+     */
+    private String[] nodeNameById = new String[0];
+    private int[] slotById = new int[0];
+
     /**
      * @see RuleChainVisitor#add(RuleSet, Rule)
      */
@@ -71,6 +102,8 @@ public abstract class AbstractRuleChainVisitor implements RuleChainVisitor {
 
         // For each RuleSet, only if this source file applies
         try (TimedOperation to = TimeTracker.startOperation(TimedOperationCategory.RULECHAIN_RULE)) {
+            ExecutorService executor = ctx.getRuleExecutor();
+            List<Future<RuleReport>> concurrentRules = new ArrayList<>();
             for (Map.Entry<RuleSet, List<Rule>> entry : ruleSetRules.entrySet()) {
                 RuleSet ruleSet = entry.getKey();
                 if (!ruleSet.applies(ctx.getSourceCodeFile())) {
@@ -79,39 +112,83 @@ public abstract class AbstractRuleChainVisitor implements RuleChainVisitor {
 
                 // For each rule, allow it to visit the nodes it desires
                 for (Rule rule : entry.getValue()) {
-                    int visits = 0;
                     if (!RuleSet.applies(rule, ctx.getLanguageVersion())) {
                         continue;
                     }
-                    try (TimedOperation rcto = TimeTracker.startOperation(TimedOperationCategory.RULECHAIN_RULE, rule.getName())) {
-                        final List<String> nodeNames = rule.getRuleChainVisits();
-                        for (int j = 0; j < nodeNames.size(); j++) {
-                            List<Node> ns = nodeNameToNodes.get(nodeNames.get(j));
-                            for (Node node : ns) {
-                                // Visit with underlying Rule, not the RuleReference
-                                Rule actualRule = rule;
-                                while (actualRule instanceof RuleReference) {
-                                    actualRule = ((RuleReference) actualRule).getRule();
-                                }
-                                visit(actualRule, node, ctx);
-                            }
-                            visits += ns.size();
-                        }
-                        rcto.close(visits);
-                    } catch (RuntimeException e) {
-                        if (ctx.isIgnoreExceptions()) {
-                            ctx.getReport().addError(new Report.ProcessingError(e, String.valueOf(ctx.getSourceCodeFile())));
-
-                            if (LOG.isLoggable(Level.WARNING)) {
-                                LOG.log(Level.WARNING, "Exception applying rule " + rule.getName() + " on file "
-                                        + ctx.getSourceCodeFile() + ", continuing with next rule", e);
-                            }
-                        } else {
-                            throw e;
-                        }
+                    if (executor != null && getActualRule(rule).getClass().isAnnotationPresent(ThreadSafe.class)) {
+                        concurrentRules.add(executor.submit(new ConcurrentRuleApplication(rule, ctx)));
+                    } else {
+                        applyRule(rule, ctx);
                     }
                 }
             }
+            addConcurrentRuleReports(concurrentRules, ctx);
+        }
+    }
+
+    private void applyRule(Rule rule, RuleContext ctx) {
+        int visits = 0;
+        try (TimedOperation rcto = TimeTracker.startOperation(TimedOperationCategory.RULECHAIN_RULE, rule.getName())) {
+            // Visit with underlying Rule, not the RuleReference
+            Rule actualRule = getActualRule(rule);
+            for (int slot : ruleToSlots.get(rule)) {
+                List<Node> ns = nodesBySlot[slot];
+                for (int j = 0; j < ns.size(); j++) {
+                    visit(actualRule, ns.get(j), ctx);
+                }
+                visits += ns.size();
+            }
+            rcto.close(visits);
+        } catch (RuntimeException e) {
+            if (ctx.isIgnoreExceptions()) {
+                ctx.getReport().addError(new Report.ProcessingError(e, String.valueOf(ctx.getSourceCodeFile())));
+
+                if (LOG.isLoggable(Level.WARNING)) {
+                    LOG.log(Level.WARNING, "Exception applying rule " + rule.getName() + " on file "
+                            + ctx.getSourceCodeFile() + ", continuing with next rule", e);
+                }
+            } else {
+                throw e;
+            }
+        }
+    }
+
+    private static Rule getActualRule(Rule rule) {
+        Rule actualRule = rule;
+        while (actualRule instanceof RuleReference) {
+            actualRule = ((RuleReference) actualRule).getRule();
+        }
+        return actualRule;
+    }
+
+    /**
+     * Waits for the rules applied concurrently and adds their results to the
+     * report of the file, in the same order as the rules were submitted.
+     */
+    private static void addConcurrentRuleReports(List<Future<RuleReport>> concurrentRules, RuleContext ctx) {
+        try {
+            for (Future<RuleReport> concurrentRule : concurrentRules) {
+                concurrentRule.get().addTo(ctx.getReport());
+            }
+        } catch (InterruptedException e) {
+            cancel(concurrentRules);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // only thrown, if exceptions are not ignored
+            cancel(concurrentRules);
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Exception applying rule", cause);
+        }
+    }
+
+    private static void cancel(List<Future<RuleReport>> concurrentRules) {
+        for (Future<RuleReport> concurrentRule : concurrentRules) {
+            concurrentRule.cancel(true);
         }
     }
 
@@ -129,12 +206,38 @@ public abstract class AbstractRuleChainVisitor implements RuleChainVisitor {
      * Index a single node for visitation by rules.
      */
     protected void indexNode(Node node) {
-        List<Node> nodes = nodeNameToNodes.get(node.getXPathNodeName());
-        if (nodes != null) {
-            nodes.add(node);
+        int slot = getSlot(node);
+        if (slot != NOT_VISITED) {
+            nodesBySlot[slot].add(node);
         }
     }
 
+    @SuppressWarnings("deprecation")
+    private int getSlot(Node node) {
+        String nodeName = node.getXPathNodeName();
+        int id = node.jjtGetId();
+        if (nodeName == null || id < 0 || id >= MAX_CACHED_NODE_ID) {
+            return getSlot(nodeName);
+        }
+
+        if (id >= nodeNameById.length) {
+            int length = Math.max(id + 1, 2 * nodeNameById.length);
+            nodeNameById = Arrays.copyOf(nodeNameById, length);
+            slotById = Arrays.copyOf(slotById, length);
+        }
+        // JJTree nodes return the same constant for each node of a type, so comparing the references suffices
+        if (nodeNameById[id] != nodeName) { // NOPMD CompareObjectsWithEquals
+            nodeNameById[id] = nodeName;
+            slotById[id] = getSlot(nodeName);
+        }
+        return slotById[id];
+    }
+
+    private int getSlot(String nodeName) {
+        Integer slot = nodeName == null ? null : nodeNameToSlot.get(nodeName);
+        return slot == null ? NOT_VISITED : slot;
+    }
+
     /**
      * Initialize the RuleChainVisitor to be ready to perform visitations. This
      * method should not be called until it is known that all Rules
@@ -148,15 +251,26 @@ public abstract class AbstractRuleChainVisitor implements RuleChainVisitor {
             return;
         }
 
-        // Determine all node types that need visiting
-        Set<String> visitedNodes = new HashSet<>();
+        // Determine all node types that need visiting, each gets its own slot
+        nodeNameToSlot = new HashMap<>();
+        ruleToSlots = new IdentityHashMap<>();
         for (Iterator<Map.Entry<RuleSet, List<Rule>>> entryIterator = ruleSetRules.entrySet().iterator(); entryIterator
                 .hasNext();) {
             Map.Entry<RuleSet, List<Rule>> entry = entryIterator.next();
             for (Iterator<Rule> ruleIterator = entry.getValue().iterator(); ruleIterator.hasNext();) {
                 Rule rule = ruleIterator.next();
                 if (rule.isRuleChain()) {
-                    visitedNodes.addAll(rule.getRuleChainVisits());
+                    List<String> visits = rule.getRuleChainVisits();
+                    int[] slots = new int[visits.size()];
+                    for (int i = 0; i < slots.length; i++) {
+                        Integer slot = nodeNameToSlot.get(visits.get(i));
+                        if (slot == null) {
+                            slot = nodeNameToSlot.size();
+                            nodeNameToSlot.put(visits.get(i), slot);
+                        }
+                        slots[i] = slot;
+                    }
+                    ruleToSlots.put(rule, slots);
                 } else {
                     // Drop rules which do not participate in the rule chain.
                     ruleIterator.remove();
@@ -171,10 +285,13 @@ public abstract class AbstractRuleChainVisitor implements RuleChainVisitor {
         // Setup the data structure to manage mapping node names to node
         // instances. We intend to reuse this data structure between
         // visits to different ASTs.
+        @SuppressWarnings("unchecked")
+        List<Node>[] nodes = new List[nodeNameToSlot.size()];
+        nodesBySlot = nodes;
         nodeNameToNodes = new HashMap<>();
-        for (String s : visitedNodes) {
-            List<Node> nodes = new ArrayList<>(100);
-            nodeNameToNodes.put(s, nodes);
+        for (Map.Entry<String, Integer> entry : nodeNameToSlot.entrySet()) {
+            nodesBySlot[entry.getValue()] = new ArrayList<>(100);
+            nodeNameToNodes.put(entry.getKey(), nodesBySlot[entry.getValue()]);
         }
     }
 
@@ -183,8 +300,63 @@ public abstract class AbstractRuleChainVisitor implements RuleChainVisitor {
      * between visiting different ASTs.
      */
     protected void clear() {
-        for (List<Node> l : nodeNameToNodes.values()) {
+        for (List<Node> l : nodesBySlot) {
             l.clear();
         }
     }
+
+    /**
+     * Applies a single rule on another thread. The results are collected in
+     * a separate report, the listeners of the file's report are only notified
+     * once the results are added to it.
+     */
+    private final class ConcurrentRuleApplication implements Callable<RuleReport> {
+        private final Rule rule;
+        private final RuleContext ruleContext;
+        private final RuleReport report = new RuleReport();
+
+        ConcurrentRuleApplication(Rule rule, RuleContext ctx) {
+            this.rule = rule;
+            ruleContext = new RuleContext(ctx);
+            ruleContext.setReport(report);
+            ruleContext.setSourceCodeFile(ctx.getSourceCodeFile());
+            ruleContext.setLanguageVersion(ctx.getLanguageVersion());
+            ruleContext.setIgnoreExceptions(ctx.isIgnoreExceptions());
+        }
+
+        @Override
+        public RuleReport call() {
+            applyRule(rule, ruleContext);
+            return report;
+        }
+    }
+
+    /**
+     * The report of a rule applied concurrently. The violations are only
+     * collected, suppressing them is up to the file's report.
+     */
+    private static final class RuleReport extends Report {
+        private final List<RuleViolation> ruleViolations = new ArrayList<>();
+
+        @Override
+        public void addRuleViolation(RuleViolation violation) {
+            ruleViolations.add(violation);
+        }
+
+        @SuppressWarnings("deprecation")
+        void addTo(Report report) {
+            for (RuleViolation violation : ruleViolations) {
+                report.addRuleViolation(violation);
+            }
+            for (Iterator<ProcessingError> errors = errors(); errors.hasNext();) {
+                report.addError(errors.next());
+            }
+            for (Iterator<ConfigurationError> configErrors = configErrors(); configErrors.hasNext();) {
+                report.addConfigError(configErrors.next());
+            }
+            for (Iterator<Metric> metrics = metrics(); metrics.hasNext();) {
+                report.addMetric(metrics.next());
+            }
+        }
+    }
 }
@@ -0,0 +1,34 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.rule;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.annotation.Experimental;
+
+/**
+ * Indicates that a Rule implementation class can be applied to a file at the
+ * same time as other rules. Such a rule must only read the AST and must not
+ * share any mutable state with other rules. State of the rule itself is fine,
+ * a rule instance is never applied to two files at the same time. The
+ * violations are still reported in the same order, as if the rules had been
+ * applied one after another.
+ *
+ * <p>The annotation is not inherited, as a subclass might add shared state.
+ * Only rule chain rules are applied concurrently.
+ *
+ * @see PMDConfiguration#setRuleThreads(int)
+ */
+@Experimental
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface ThreadSafe {
+}
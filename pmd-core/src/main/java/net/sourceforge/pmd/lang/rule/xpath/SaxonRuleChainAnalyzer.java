@@ -0,0 +1,196 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.rule.xpath;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.saxon.expr.AxisExpression;
+import net.sf.saxon.expr.ContextItemExpression;
+import net.sf.saxon.expr.Expression;
+import net.sf.saxon.expr.FilterExpression;
+import net.sf.saxon.expr.FirstItemExpression;
+import net.sf.saxon.expr.LastItemExpression;
+import net.sf.saxon.expr.LetExpression;
+import net.sf.saxon.expr.RootExpression;
+import net.sf.saxon.expr.SlashExpression;
+import net.sf.saxon.expr.Token;
+import net.sf.saxon.expr.VennExpression;
+import net.sf.saxon.om.Axis;
+import net.sf.saxon.om.NamePool;
+import net.sf.saxon.pattern.NameTest;
+import net.sf.saxon.sort.DocumentSorter;
+import net.sf.saxon.type.Type;
+import net.sf.saxon.type.TypeHierarchy;
+
+/**
+ * Splits a compiled XPath 2.0 expression into sub-expressions, that can be
+ * evaluated with the RuleChain. This is possible for the expressions, that
+ * select the descendants of the root with a certain name, e.g.
+ * {@code //ClassOrInterfaceDeclaration[@Abstract = true()]}. The descendant
+ * step is replaced with a self step, so that the sub-expression is evaluated
+ * once for each node with that name, which is visited by the RuleChain.
+ *
+ * <p>Top-level unions are split into one sub-expression per branch. A single
+ * branch may be followed by child steps, e.g. {@code //A[@x]/B}, whose results
+ * are distinct for each visited node. If there are several branches, they must
+ * select the visited nodes themselves, so that no node is reported twice.
+ *
+ * <p>The expression is modified in place, so it must not be evaluated as a whole
+ * afterwards.
+ */
+final class SaxonRuleChainAnalyzer {
+
+    private final NamePool namePool;
+    private final TypeHierarchy typeHierarchy;
+
+    /** The name of the nodes, the branch currently analyzed is evaluated for. */
+    private String nodeName;
+
+    SaxonRuleChainAnalyzer(NamePool namePool, TypeHierarchy typeHierarchy) {
+        this.namePool = namePool;
+        this.typeHierarchy = typeHierarchy;
+    }
+
+    /**
+     * Splits the expression into sub-expressions by the name of the nodes they're evaluated for.
+     *
+     * @param expression The compiled expression, which is modified
+     * @return The sub-expressions by node name, or null if the RuleChain can't be used for the expression
+     */
+    Map<String, List<Expression>> splitByNodeName(Expression expression) {
+        List<Expression> branches = new ArrayList<>();
+        splitUnions(expression, branches);
+
+        Map<String, List<Expression>> nodeNameToExpressions = new LinkedHashMap<>();
+        for (Expression branch : branches) {
+            nodeName = null;
+            Expression rewritten = rewrite(branch, branches.size() == 1);
+            if (rewritten == null) {
+                return null;
+            }
+            List<Expression> expressions = nodeNameToExpressions.get(nodeName);
+            if (expressions == null) {
+                expressions = new ArrayList<>();
+                nodeNameToExpressions.put(nodeName, expressions);
+            }
+            expressions.add(rewritten);
+        }
+        return nodeNameToExpressions;
+    }
+
+    private static void splitUnions(Expression expression, List<Expression> branches) {
+        // the results of a visited node are sorted anyway
+        Expression unsorted = expression instanceof DocumentSorter
+                ? ((DocumentSorter) expression).getBaseExpression() : expression;
+        if (unsorted instanceof VennExpression && ((VennExpression) unsorted).getOperator() == Token.UNION) {
+            for (Expression operand : ((VennExpression) unsorted).getOperands()) {
+                splitUnions(operand, branches);
+            }
+        } else {
+            branches.add(unsorted);
+        }
+    }
+
+    /**
+     * Rewrites the expression to be evaluated with a visited node as context item.
+     *
+     * @return The rewritten expression, or null if that's not possible
+     */
+    private Expression rewrite(Expression expression, boolean allowChildSteps) {
+        if (expression instanceof LetExpression) {
+            // variables, that Saxon moved out of the predicates, are evaluated for each visited node
+            LetExpression let = (LetExpression) expression;
+            if (navigates(let.getSequence())) {
+                return null;
+            }
+            return replace(let, let.getAction(), rewrite(let.getAction(), allowChildSteps));
+        } else if (expression instanceof FilterExpression) {
+            FilterExpression filter = (FilterExpression) expression;
+            if (filter.isPositional(typeHierarchy)) {
+                return null;
+            }
+            return replace(filter, filter.getBaseExpression(), rewrite(filter.getBaseExpression(), allowChildSteps));
+        } else if (expression instanceof SlashExpression) {
+            SlashExpression path = (SlashExpression) expression;
+            if (path.getStartExpression() instanceof RootExpression) {
+                return anchor(path.getStepExpression());
+            }
+            if (!allowChildSteps || !isChildStep(path.getStepExpression())) {
+                return null;
+            }
+            return replace(path, path.getStartExpression(), rewrite(path.getStartExpression(), true));
+        }
+        return null;
+    }
+
+    /**
+     * Replaces a descendant step from the root, e.g. {@code descendant::A}, with a self step.
+     */
+    private Expression anchor(Expression step) {
+        if (step instanceof FilterExpression) {
+            FilterExpression filter = (FilterExpression) step;
+            if (filter.isPositional(typeHierarchy)) {
+                return null;
+            }
+            return replace(filter, filter.getBaseExpression(), anchor(filter.getBaseExpression()));
+        }
+        if (!(step instanceof AxisExpression)) {
+            return null;
+        }
+        AxisExpression axis = (AxisExpression) step;
+        if (axis.getAxis() != Axis.DESCENDANT && axis.getAxis() != Axis.DESCENDANT_OR_SELF
+                || !(axis.getNodeTest() instanceof NameTest)
+                || axis.getNodeTest().getPrimitiveType() != Type.ELEMENT) {
+            return null;
+        }
+        nodeName = namePool.getLocalName(((NameTest) axis.getNodeTest()).getFingerprint());
+        return new AxisExpression(Axis.SELF, axis.getNodeTest());
+    }
+
+    /**
+     * Returns true, if the step only selects children, so that the results of different visited nodes are distinct.
+     */
+    private static boolean isChildStep(Expression step) {
+        if (step instanceof AxisExpression) {
+            return ((AxisExpression) step).getAxis() == Axis.CHILD;
+        } else if (step instanceof FilterExpression) {
+            return isChildStep(((FilterExpression) step).getBaseExpression());
+        } else if (step instanceof FirstItemExpression) {
+            return isChildStep(((FirstItemExpression) step).getBaseExpression());
+        } else if (step instanceof LastItemExpression) {
+            return isChildStep(((LastItemExpression) step).getBaseExpression());
+        }
+        return false;
+    }
+
+    /**
+     * Returns true, if the expression depends on the tree, which might be expensive to evaluate for every node.
+     */
+    private static boolean navigates(Expression expression) {
+        if (expression instanceof AxisExpression || expression instanceof RootExpression
+                || expression instanceof ContextItemExpression) {
+            return true;
+        }
+        for (Iterator<?> it = expression.iterateSubExpressions(); it.hasNext();) {
+            if (navigates((Expression) it.next())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Expression replace(Expression parent, Expression child, Expression replacement) {
+        if (replacement == null) {
+            return null;
+        }
+        // replacing a child with itself has no effect
+        parent.replaceSubExpression(child, replacement);
+        return parent;
+    }
+}
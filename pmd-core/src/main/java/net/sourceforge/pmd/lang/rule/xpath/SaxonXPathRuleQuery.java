@@ -5,7 +5,7 @@
 package net.sourceforge.pmd.lang.rule.xpath;
 
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
@@ -17,8 +17,10 @@ import net.sourceforge.pmd.lang.ast.xpath.saxon.ElementNode;
 import net.sourceforge.pmd.lang.xpath.Initializer;
 import net.sourceforge.pmd.properties.PropertyDescriptor;
 
+import net.sf.saxon.expr.Expression;
 import net.sf.saxon.om.Item;
 import net.sf.saxon.om.NamespaceConstant;
+import net.sf.saxon.om.SequenceIterator;
 import net.sf.saxon.om.ValueRepresentation;
 import net.sf.saxon.sxpath.AbstractStaticContext;
 import net.sf.saxon.sxpath.IndependentContext;
@@ -45,16 +47,6 @@ import net.sf.saxon.value.Value;
  */
 public class SaxonXPathRuleQuery extends AbstractXPathRuleQuery {
 
-    private static final int MAX_CACHE_SIZE = 20;
-    private static final Map<Node, DocumentNode> CACHE = new LinkedHashMap<Node, DocumentNode>(MAX_CACHE_SIZE) {
-        private static final long serialVersionUID = -7653916493967142443L;
-
-        @Override
-        protected boolean removeEldestEntry(final Map.Entry<Node, DocumentNode> eldest) {
-            return size() > MAX_CACHE_SIZE;
-        }
-    };
-
     /**
      * Representation of an XPath query, created at {@link #initializeXPathExpression()} using {@link #xpath}.
      */
@@ -62,11 +54,23 @@ public class SaxonXPathRuleQuery extends AbstractXPathRuleQuery {
 
     /**
      * Holds the static context later used to match the variables in the dynamic context in
-     * {@link #createDynamicContext(ElementNode)}. Created at {@link #initializeXPathExpression()}
+     * {@link #createDynamicContext(XPathExpression, ElementNode)}. Created at {@link #initializeXPathExpression()}
      * using the properties descriptors in {@link #properties}.
      */
     private List<XPathVariable> xpathVariables;
 
+    /**
+     * A second compilation of the {@link #xpath}, which has been split into the sub-expressions in
+     * {@link #nodeNameToExpressions}. Only used to create the dynamic context for them.
+     */
+    private XPathExpression ruleChainExpression;
+
+    /**
+     * The sub-expressions, that are evaluated for the nodes visited by the RuleChain, by node name.
+     * Empty, if the RuleChain can't be used for the query.
+     */
+    private Map<String, List<Expression>> nodeNameToExpressions = Collections.emptyMap();
+
     @Override
     public boolean isSupportedVersion(String version) {
         return XPATH_1_0_COMPATIBILITY.equals(version) || XPATH_2_0.equals(version);
@@ -78,12 +82,17 @@ public class SaxonXPathRuleQuery extends AbstractXPathRuleQuery {
         initializeXPathExpression();
 
         try {
-            final DocumentNode documentNode = getDocumentNodeForRootNode(node);
+            final DocumentNode documentNode = getDocumentNodeForRootNode(node, data);
 
             // Map AST Node -> Saxon Node
             final ElementNode rootElementNode = documentNode.nodeToElementNode.get(node);
 
-            final XPathDynamicContext xpathDynamicContext = createDynamicContext(rootElementNode);
+            final List<Expression> expressions = nodeNameToExpressions.get(node.getXPathNodeName());
+            if (expressions != null) {
+                return evaluateRuleChainExpressions(expressions, rootElementNode);
+            }
+
+            final XPathDynamicContext xpathDynamicContext = createDynamicContext(xpathExpression, rootElementNode);
             final List<ElementNode> nodes = xpathExpression.evaluate(xpathDynamicContext);
 
             /*
@@ -101,8 +110,30 @@ public class SaxonXPathRuleQuery extends AbstractXPathRuleQuery {
     }
 
     /**
-     * Attempt to create a dynamic context on which to evaluate the {@link #xpathExpression}.
+     * Evaluates the sub-expressions for a node visited by the RuleChain. The node is the context item,
+     * and a node selected by several sub-expressions is only reported once.
+     */
+    private List<Node> evaluateRuleChainExpressions(final List<Expression> expressions,
+            final ElementNode elementNode) throws XPathException {
+        final XPathDynamicContext xpathDynamicContext = createDynamicContext(ruleChainExpression, elementNode);
+        final List<Node> results = new ArrayList<>();
+        for (final Expression expression : expressions) {
+            final SequenceIterator iterator = expression.iterate(xpathDynamicContext.getXPathContextObject());
+            for (Item item = iterator.next(); item != null; item = iterator.next()) {
+                final Node result = (Node) ((ElementNode) item).getUnderlyingNode();
+                if (expressions.size() == 1 || !results.contains(result)) {
+                    results.add(result);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Attempt to create a dynamic context on which to evaluate the given expression.
      *
+     * @param expression  the expression to evaluate, either the {@link #xpathExpression} or the
+     *                    {@link #ruleChainExpression}
      * @param elementNode the node on which to create the context; generally this node is the root node of the Saxon
      *                    Tree
      * @return the dynamic context on which to run the query
@@ -110,8 +141,9 @@ public class SaxonXPathRuleQuery extends AbstractXPathRuleQuery {
      * variable, when setting up the dynamic context; or if the supplied value contains a node that does not belong to
      * this Configuration (or another Configuration that shares the same namePool)
      */
-    private XPathDynamicContext createDynamicContext(final ElementNode elementNode) throws XPathException {
-        final XPathDynamicContext dynamicContext = xpathExpression.createDynamicContext(elementNode);
+    private XPathDynamicContext createDynamicContext(final XPathExpression expression, final ElementNode elementNode)
+            throws XPathException {
+        final XPathDynamicContext dynamicContext = expression.createDynamicContext(elementNode);
 
         // Set variable values on the dynamic context
         for (final XPathVariable xpathVariable : xpathVariables) {
@@ -135,23 +167,31 @@ public class SaxonXPathRuleQuery extends AbstractXPathRuleQuery {
         }
     }
 
+    @Override
+    public List<String> getRuleChainVisits() {
+        initializeXPathExpression();
+        return super.getRuleChainVisits();
+    }
+
     /**
      * Gets the DocumentNode representation for the whole AST in which the node is, that is, if the node is not the root
-     * of the AST, then the AST is traversed all the way up until the root node is found. If the DocumentNode was
-     * cached because this method was previously called, then a new DocumentNode will not be instanced.
+     * of the AST, then the AST is traversed all the way up until the root node is found. The DocumentNode is
+     * kept in the rule context, so that it's only built once per file. The rule context is only used by one
+     * thread at a time, and the DocumentNode is dropped once the file is processed.
      *
      * @param node the node from which the root node will be looked for.
+     * @param ctx  the rule context of the file, may be null
      * @return the DocumentNode representing the whole AST
      */
-    private DocumentNode getDocumentNodeForRootNode(final Node node) {
+    private DocumentNode getDocumentNodeForRootNode(final Node node, final RuleContext ctx) {
         final Node root = getRootNode(node);
 
-        DocumentNode documentNode;
-        synchronized (CACHE) {
-            documentNode = CACHE.get(root);
-            if (documentNode == null) {
-                documentNode = new DocumentNode(root);
-                CACHE.put(root, documentNode);
+        DocumentNode documentNode = ctx == null ? null : ctx.getXPathDocument();
+        // the context might still hold the tree of another AST, e.g. outside of the analysis of a file
+        if (documentNode == null || !documentNode.nodeToElementNode.containsKey(root)) {
+            documentNode = new DocumentNode(root);
+            if (ctx != null) {
+                ctx.setXPathDocument(documentNode);
             }
         }
         return documentNode;
@@ -172,7 +212,8 @@ public class SaxonXPathRuleQuery extends AbstractXPathRuleQuery {
     }
 
     /**
-     * Initialize the {@link #xpathExpression} and the {@link #xpathVariables}.
+     * Initialize the {@link #xpathExpression}, the {@link #xpathVariables} and the sub-expressions
+     * used with the RuleChain.
      */
     private void initializeXPathExpression() {
         if (xpathExpression != null) {
@@ -195,7 +236,7 @@ public class SaxonXPathRuleQuery extends AbstractXPathRuleQuery {
             /*
             Create XPathVariables for later use. It is a Saxon quirk that XPathVariables must be defined on the
             static context, and reused later to associate an actual value on the dynamic context creation, in
-            createDynamicContext(ElementNode).
+            createDynamicContext(XPathExpression, ElementNode).
             */
             xpathVariables = new ArrayList<>();
             for (final PropertyDescriptor<?> propertyDescriptor : super.properties.keySet()) {
@@ -206,10 +247,23 @@ public class SaxonXPathRuleQuery extends AbstractXPathRuleQuery {
                 }
             }
 
-            // TODO Come up with a way to make use of RuleChain. I had hacked up
-            // an approach which used Jaxen's stuff, but that only works for
-            // 1.0 compatibility mode. Rather do it right instead of kludging.
             xpathExpression = xpathEvaluator.createExpression(super.xpath);
+
+            /*
+            Attempt to use the RuleChain with this XPath query. The analyzer rewrites the expression in place,
+            so it gets its own copy, that is only evaluated for the visited nodes. If the query can't be split,
+            it's evaluated as a whole on the root node.
+            */
+            final XPathExpression splitExpression = xpathEvaluator.createExpression(super.xpath);
+            final SaxonRuleChainAnalyzer analyzer = new SaxonRuleChainAnalyzer(
+                    xpathEvaluator.getConfiguration().getNamePool(),
+                    xpathEvaluator.getConfiguration().getTypeHierarchy());
+            final Map<String, List<Expression>> split = analyzer.splitByNodeName(splitExpression.getInternalExpression());
+            if (split != null) {
+                ruleChainExpression = splitExpression;
+                nodeNameToExpressions = split;
+                super.ruleChainVisits.addAll(split.keySet());
+            }
         } catch (final XPathException e) {
             throw new RuntimeException(e);
         }
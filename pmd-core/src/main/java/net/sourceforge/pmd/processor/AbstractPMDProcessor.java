@@ -4,16 +4,27 @@
 
 package net.sourceforge.pmd.processor;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.commons.io.IOUtils;
 
 import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.PMDException;
 import net.sourceforge.pmd.Report;
 import net.sourceforge.pmd.Rule;
 import net.sourceforge.pmd.RuleContext;
@@ -24,11 +35,17 @@ import net.sourceforge.pmd.SourceCodeProcessor;
 import net.sourceforge.pmd.benchmark.TimeTracker;
 import net.sourceforge.pmd.benchmark.TimedOperation;
 import net.sourceforge.pmd.benchmark.TimedOperationCategory;
+import net.sourceforge.pmd.cache.AbstractAnalysisCache;
+import net.sourceforge.pmd.cache.AnalysisCache;
+import net.sourceforge.pmd.cache.MultifileIndexCache;
 import net.sourceforge.pmd.lang.Language;
 import net.sourceforge.pmd.lang.LanguageRegistry;
 import net.sourceforge.pmd.lang.metrics.LanguageMetricsProvider;
 import net.sourceforge.pmd.renderers.Renderer;
+import net.sourceforge.pmd.util.ClasspathClassLoader;
 import net.sourceforge.pmd.util.datasource.DataSource;
+import net.sourceforge.pmd.util.datasource.ReaderDataSource;
+import net.sourceforge.pmd.util.datasource.internal.AbstractDataSource;
 
 /**
  * @author Romain Pelisse &lt;belaran@gmail.com&gt;
@@ -114,23 +131,50 @@ public abstract class AbstractPMDProcessor {
     public void processFiles(RuleSetFactory ruleSetFactory, List<DataSource> files, RuleContext ctx,
             List<Renderer> renderers) {
         final RuleSets rs = createRuleSets(ruleSetFactory, ctx.getReport());
-        configuration.getAnalysisCache().checkValidity(rs, configuration.getClassLoader());
+        final AnalysisCache analysisCache = configuration.getAnalysisCache();
+        analysisCache.checkValidity(rs, configuration.getClassLoader());
+        if (configuration.getClassLoader() instanceof ClasspathClassLoader
+                && analysisCache instanceof AbstractAnalysisCache) {
+            // type resolution reuses, what it learned about the auxclasspath in previous analyses
+            ((ClasspathClassLoader) configuration.getClassLoader())
+                .setIndex(((AbstractAnalysisCache) analysisCache).getAuxClasspathIndex());
+        }
         final SourceCodeProcessor processor = new SourceCodeProcessor(configuration);
 
         resetMetrics();
 
-        for (final DataSource dataSource : files) {
-            // this is the real, canonical and absolute filename (not shortened)
-            String realFileName = dataSource.getNiceFileName(false, null);
+        // render base report first - general errors
+        // this is done before any file is analyzed, so that processors are free
+        // to render the file reports as soon as they are available
+        renderReports(renderers, ctx.getReport());
 
-            runAnalysis(new PmdRunnable(dataSource, realFileName, renderers, ctx, rs, processor));
+        // multifile rules need the data of all files, before any file is processed
+        List<DataSource> analyzedFiles = files;
+        if (usesMultifile(rs)) {
+            analyzedFiles = buildMultifileIndex(files, rs, processor);
         }
 
-        // render base report first - general errors
-        renderReports(renderers, ctx.getReport());
-        
-        // then add analysis results per file
-        collectReports(renderers);
+        // the rules of a single file may be applied concurrently, sharing these threads
+        final ExecutorService ruleExecutor = configuration.getRuleThreads() > 0
+                ? Executors.newFixedThreadPool(configuration.getRuleThreads(), new PmdThreadFactory())
+                : null;
+        ctx.setRuleExecutor(ruleExecutor);
+        try {
+            for (final DataSource dataSource : analyzedFiles) {
+                // this is the real, canonical and absolute filename (not shortened)
+                String realFileName = dataSource.getNiceFileName(false, null);
+
+                runAnalysis(new PmdRunnable(dataSource, realFileName, renderers, ctx, rs, processor));
+            }
+
+            // then add analysis results per file
+            collectReports(renderers);
+        } finally {
+            ctx.setRuleExecutor(null);
+            if (ruleExecutor != null) {
+                ruleExecutor.shutdownNow();
+            }
+        }
 
         // in case we analyzed files within Zip Files/Jars, we need to close them after
         // the analysis is finished
@@ -139,6 +183,115 @@ public abstract class AbstractPMDProcessor {
         }
     }
 
+    private static boolean usesMultifile(RuleSets ruleSets) {
+        for (Language language : LanguageRegistry.getLanguages()) {
+            if (ruleSets.usesMultifile(language)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs the multifile analysis of all files, on as many threads as
+     * configured. Errors are only logged here, they are reported when the file
+     * is processed.
+     *
+     * <p>Each file, whose multifile data isn't restored from the cache, is
+     * parsed twice: once here and once more when the rules are applied.
+     * The ASTs aren't kept in between, as that would need the memory for
+     * the ASTs of all files at once. Only the qualified names and the scopes
+     * are resolved here, as the signatures depend on them.
+     *
+     * <p>A {@link ReaderDataSource} can only be read once, so its content is
+     * read into memory and shared by both passes.
+     *
+     * @return The files to process, after the multifile analysis
+     */
+    private List<DataSource> buildMultifileIndex(List<DataSource> files, final RuleSets ruleSets,
+            final SourceCodeProcessor processor) {
+        // the multifile data of unchanged files is restored from the cache, if there is one
+        final AnalysisCache analysisCache = configuration.getAnalysisCache();
+        final MultifileIndexCache multifileIndex = analysisCache instanceof AbstractAnalysisCache
+                ? ((AbstractAnalysisCache) analysisCache).getMultifileIndex()
+                : null;
+        final List<DataSource> rereadableFiles = new ArrayList<>(files.size());
+        final List<Callable<Void>> tasks = new ArrayList<>(files.size());
+        for (@SuppressWarnings("PMD.CloseResource")
+             // the data sources are closed at the end of processFiles
+             DataSource dataSource : files) {
+            @SuppressWarnings("PMD.CloseResource")
+            DataSource rereadable = dataSource instanceof ReaderDataSource ? readContent(dataSource) : dataSource;
+            rereadableFiles.add(rereadable);
+            tasks.add(indexTask(rereadable, ruleSets, processor, multifileIndex));
+        }
+
+        if (configuration.getThreads() > 0) {
+            final ExecutorService executor = Executors.newFixedThreadPool(configuration.getThreads(),
+                    new PmdThreadFactory());
+            try {
+                for (Future<Void> future : executor.invokeAll(tasks)) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Error while building the multifile index", e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        } else {
+            for (Callable<Void> task : tasks) {
+                try {
+                    task.call();
+                } catch (Exception e) {
+                    // can't happen, the task handles its errors
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+        processor.setMultifileIndexBuilt(true);
+        return rereadableFiles;
+    }
+
+    /**
+     * Reads the content of the given data source into memory, so that it can
+     * be read more than once. If it can't be read, the data source itself is
+     * returned, and the error is reported when the file is processed.
+     */
+    private static DataSource readContent(DataSource dataSource) {
+        final String realFileName = dataSource.getNiceFileName(false, null);
+        try (InputStream stream = dataSource.getInputStream()) {
+            return new BufferedDataSource(IOUtils.toByteArray(stream), realFileName);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Error while reading " + realFileName
+                    + ", multifile rules won't see its data", e);
+            return dataSource;
+        }
+    }
+
+    private static Callable<Void> indexTask(final DataSource dataSource, final RuleSets ruleSets,
+            final SourceCodeProcessor processor, final MultifileIndexCache multifileIndex) {
+        final String realFileName = dataSource.getNiceFileName(false, null);
+        return new Callable<Void>() {
+            @Override
+            public Void call() {
+                TimeTracker.initThread();
+                RuleContext indexCtx = new RuleContext();
+                indexCtx.setSourceCodeFile(new File(realFileName));
+                try (InputStream stream = new BufferedInputStream(dataSource.getInputStream())) {
+                    processor.indexSourceCode(stream, ruleSets, indexCtx, multifileIndex);
+                } catch (PMDException | IOException | RuntimeException e) {
+                    LOG.log(Level.WARNING, "Error while indexing " + realFileName
+                            + ", multifile rules won't see its data", e);
+                } finally {
+                    TimeTracker.finishThread();
+                }
+                return null;
+            }
+        };
+    }
+
     private void resetMetrics() {
         for (Language language : LanguageRegistry.getLanguages()) {
             LanguageMetricsProvider<?, ?> languageMetricsProvider = language.getDefaultVersion().getLanguageVersionHandler().getLanguageMetricsProvider();
@@ -151,4 +304,28 @@ public abstract class AbstractPMDProcessor {
     protected abstract void runAnalysis(PmdRunnable runnable);
 
     protected abstract void collectReports(List<Renderer> renderers);
+
+    /**
+     * The content of a data source, that could only be read once.
+     */
+    private static final class BufferedDataSource extends AbstractDataSource {
+
+        private final byte[] content;
+        private final String fileName;
+
+        BufferedDataSource(byte[] content, String fileName) {
+            this.content = content;
+            this.fileName = fileName;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(content);
+        }
+
+        @Override
+        public String getNiceFileName(boolean shortNames, String inputFileName) {
+            return fileName;
+        }
+    }
 }
@@ -0,0 +1,105 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.processor;
+
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.renderers.Renderer;
+
+
+/**
+ * A multi threaded processor, that limits the number of files, that are
+ * analyzed or waiting to be rendered at the same time. Once this limit
+ * is reached, the submitting thread renders the finished reports, before
+ * the next file is submitted. This way, each report is rendered and released
+ * as soon as possible and the memory usage doesn't grow with the number
+ * of analyzed files. The limit is at least the number of threads, so that
+ * no thread is idle while files are left.
+ *
+ * @see PMDConfiguration#getMaxFilesInFlight()
+ */
+public class BoundedMultiThreadProcessor extends AbstractPMDProcessor {
+    private final ExecutorService executor;
+    private final CompletionService<Report> completionService;
+    private final int maxFilesInFlight;
+
+    private List<Renderer> renderers;
+    private int filesInFlight = 0;
+
+    public BoundedMultiThreadProcessor(final PMDConfiguration configuration) {
+        super(configuration);
+
+        executor = Executors.newFixedThreadPool(configuration.getThreads(), new PmdThreadFactory());
+        completionService = new ExecutorCompletionService<>(executor);
+        maxFilesInFlight = Math.max(configuration.getMaxFilesInFlight(), configuration.getThreads());
+    }
+
+    @Override
+    protected void runAnalysis(PmdRunnable runnable) {
+        if (executor.isShutdown()) {
+            // the analysis has been interrupted
+            return;
+        }
+
+        try {
+            while (filesInFlight >= maxFilesInFlight) {
+                renderNextReport();
+            }
+        } catch (final InterruptedException ie) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        if (renderers == null) {
+            renderers = runnable.getRenderers();
+        }
+        completionService.submit(runnable);
+        filesInFlight++;
+    }
+
+    @Override
+    protected void collectReports(List<Renderer> renderers) {
+        this.renderers = renderers;
+        try {
+            while (filesInFlight > 0) {
+                renderNextReport();
+            }
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits for the next finished file and renders its report. The report is
+     * not referenced anymore afterwards.
+     */
+    private void renderNextReport() throws InterruptedException {
+        try {
+            final Report report = completionService.take().get();
+            filesInFlight--;
+            super.renderReports(renderers, report);
+        } catch (final ExecutionException ee) {
+            executor.shutdownNow();
+            final Throwable t = ee.getCause();
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            } else if (t instanceof Error) {
+                throw (Error) t;
+            } else {
+                throw new IllegalStateException("PmdRunnable exception", t);
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.processor;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.cache.AbstractAnalysisCache;
+import net.sourceforge.pmd.cache.AnalysisCache;
+import net.sourceforge.pmd.renderers.Renderer;
+
+
+/**
+ * A multi threaded processor, that schedules the files by their expected cost,
+ * the most expensive first. The expensive files are started early and the cheap
+ * files fill up the idle workers at the end of the analysis. The size of a file
+ * is used as an estimate of its cost, files that are probably up to date in the
+ * analysis cache are only replayed and scheduled last.
+ *
+ * <p>Each file is a single task, submitted from outside of the {@link ForkJoinPool}.
+ * Files are not forked into subtasks, so there is nothing for idle workers to
+ * steal, the pool is just used as a thread pool.
+ *
+ * @see PMDConfiguration#isScheduleByCost()
+ */
+public class ForkJoinProcessor extends AbstractPMDProcessor {
+    private final ForkJoinPool pool;
+    private final CompletionService<Report> completionService;
+    private final List<ScheduledFile> scheduledFiles = new ArrayList<>();
+
+    public ForkJoinProcessor(final PMDConfiguration configuration) {
+        super(configuration);
+
+        pool = new ForkJoinPool(configuration.getThreads());
+        completionService = new ExecutorCompletionService<>(pool);
+    }
+
+    @Override
+    protected void runAnalysis(PmdRunnable runnable) {
+        // the files are only submitted, once all are known, in order to sort them
+        scheduledFiles.add(new ScheduledFile(runnable, estimateCost(runnable)));
+    }
+
+    private long estimateCost(PmdRunnable runnable) {
+        final File file = new File(runnable.getFileName());
+        final AnalysisCache cache = configuration.getAnalysisCache();
+        if (cache instanceof AbstractAnalysisCache && ((AbstractAnalysisCache) cache).isProbablyUpToDate(file)) {
+            // the cached violations are replayed, the file is neither parsed nor analyzed
+            return 0;
+        }
+        // the length is 0 for files, that are not on the file system, e.g. zip entries
+        return file.length();
+    }
+
+    @Override
+    protected void collectReports(List<Renderer> renderers) {
+        Collections.sort(scheduledFiles, new Comparator<ScheduledFile>() {
+            @Override
+            public int compare(ScheduledFile left, ScheduledFile right) {
+                return Long.compare(right.cost, left.cost);
+            }
+        });
+
+        for (ScheduledFile file : scheduledFiles) {
+            completionService.submit(file.runnable);
+        }
+        final int submittedTasks = scheduledFiles.size();
+        scheduledFiles.clear();
+
+        try {
+            for (int i = 0; i < submittedTasks; i++) {
+                final Report report = completionService.take().get();
+                super.renderReports(renderers, report);
+            }
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (final ExecutionException ee) {
+            final Throwable t = ee.getCause();
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            } else if (t instanceof Error) {
+                throw (Error) t;
+            } else {
+                throw new IllegalStateException("PmdRunnable exception", t);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static class ScheduledFile {
+        /* default */ final PmdRunnable runnable;
+        /* default */ final long cost;
+
+        ScheduledFile(PmdRunnable runnable, long cost) {
+            this.runnable = runnable;
+            this.cost = cost;
+        }
+    }
+}
@@ -44,6 +44,27 @@ public class PmdRunnable implements Callable<Report> {
         this.sourceCodeProcessor = sourceCodeProcessor;
     }
 
+    /**
+     * Creates a copy of this runnable, that analyzes the given data source
+     * instead. This is used to read the source on a different thread than
+     * the one, that analyzes it.
+     */
+    /* default */ PmdRunnable withDataSource(DataSource newDataSource) {
+        return new PmdRunnable(newDataSource, fileName, renderers, ruleContext, ruleSets, sourceCodeProcessor);
+    }
+
+    /* default */ DataSource getDataSource() {
+        return dataSource;
+    }
+
+    /* default */ String getFileName() {
+        return fileName;
+    }
+
+    /* default */ List<Renderer> getRenderers() {
+        return renderers;
+    }
+
     public static void reset() {
         LOCAL_THREAD_CONTEXT.remove();
     }
@@ -0,0 +1,207 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.processor;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.IOUtils;
+
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.renderers.Renderer;
+import net.sourceforge.pmd.util.datasource.DataSource;
+import net.sourceforge.pmd.util.datasource.internal.AbstractDataSource;
+
+
+/**
+ * A multi threaded processor, that reads the sources on virtual threads.
+ * Reading a source, e.g. from a zip file or a database, blocks only the
+ * cheap virtual thread, so the analysis threads don't wait for I/O. The
+ * analysis itself, including the parsing, is CPU bound and runs on a fixed
+ * thread pool with one thread per available processor.
+ *
+ * <p>The content of a source is kept in memory, until the analysis of the
+ * source is finished. To bound the memory usage and the number of open
+ * sources, only a few sources per analysis thread are read ahead.
+ *
+ * <p>Virtual threads are only available on newer Java runtimes. Use
+ * {@link #isSupported()} to check whether this processor can be used.
+ *
+ * @see PMDConfiguration#isVirtualThreads()
+ */
+public class VirtualThreadProcessor extends AbstractPMDProcessor {
+    private static final Logger LOG = Logger.getLogger(VirtualThreadProcessor.class.getName());
+
+    private static final Method NEW_VIRTUAL_THREAD_EXECUTOR = findVirtualThreadExecutorFactory();
+
+    /** The number of sources per analysis thread, that are read or analyzed at the same time. */
+    private static final int READ_AHEAD_PER_THREAD = 4;
+
+    private final ExecutorService ioExecutor;
+    private final ExecutorService analysisExecutor;
+    private final CompletionService<Report> completionService;
+    /** Limits the sources, that are read or analyzed at the same time. */
+    private final Semaphore readAhead;
+
+    private long submittedTasks = 0L;
+
+    public VirtualThreadProcessor(final PMDConfiguration configuration) {
+        this(configuration, newVirtualThreadExecutor());
+    }
+
+    /**
+     * Creates a processor, that reads the sources with the given executor instead of virtual threads.
+     */
+    /* default */ VirtualThreadProcessor(final PMDConfiguration configuration, final ExecutorService ioExecutor) {
+        super(configuration);
+
+        final int analysisThreads = Runtime.getRuntime().availableProcessors();
+        this.ioExecutor = ioExecutor;
+        analysisExecutor = Executors.newFixedThreadPool(analysisThreads, new PmdThreadFactory());
+        completionService = new ExecutorCompletionService<>(ioExecutor);
+        readAhead = new Semaphore(getReadAheadLimit());
+    }
+
+    /**
+     * Returns the maximum number of sources, that are read or analyzed at the same time.
+     */
+    /* default */ static int getReadAheadLimit() {
+        return Runtime.getRuntime().availableProcessors() * READ_AHEAD_PER_THREAD;
+    }
+
+    /**
+     * Returns whether the current Java runtime supports virtual threads.
+     *
+     * @return <code>true</code> if this processor can be used
+     */
+    public static boolean isSupported() {
+        return NEW_VIRTUAL_THREAD_EXECUTOR != null;
+    }
+
+    private static Method findVirtualThreadExecutorFactory() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            // on some runtimes, virtual threads are a preview feature and fail at runtime
+            ((ExecutorService) method.invoke(null)).shutdown();
+            return method;
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException
+                | UnsupportedOperationException e) {
+            LOG.log(Level.FINE, "Virtual threads are not available", e);
+            return null;
+        }
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        if (!isSupported()) {
+            throw new IllegalStateException("Virtual threads are not supported by this Java runtime");
+        }
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_EXECUTOR.invoke(null);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Could not create virtual thread executor", e);
+        }
+    }
+
+    @Override
+    protected void runAnalysis(final PmdRunnable runnable) {
+        completionService.submit(new Callable<Report>() {
+            @Override
+            public Report call() throws Exception {
+                // the content is held, until the analysis is finished
+                readAhead.acquire();
+                try {
+                    return readAndAnalyze(runnable);
+                } finally {
+                    readAhead.release();
+                }
+            }
+        });
+        submittedTasks++;
+    }
+
+    private Report readAndAnalyze(final PmdRunnable runnable) throws InterruptedException, ExecutionException {
+        @SuppressWarnings("PMD.CloseResource") // closed at the end of the PMD run
+        DataSource source = runnable.getDataSource();
+        byte[] content;
+        try (InputStream stream = source.getInputStream()) {
+            content = IOUtils.toByteArray(stream);
+        } catch (IOException ioe) {
+            // let the analysis report the error on the original source
+            return analysisExecutor.submit(runnable).get();
+        }
+        return analysisExecutor.submit(runnable.withDataSource(new BufferedDataSource(source, content))).get();
+    }
+
+    @Override
+    protected void collectReports(List<Renderer> renderers) {
+        try {
+            for (int i = 0; i < submittedTasks; i++) {
+                final Report report = completionService.take().get();
+                super.renderReports(renderers, report);
+            }
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (final ExecutionException ee) {
+            Throwable t = ee.getCause();
+            if (t instanceof ExecutionException) {
+                // thrown by the analysis executor
+                t = t.getCause();
+            }
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            } else if (t instanceof Error) {
+                throw (Error) t;
+            } else {
+                throw new IllegalStateException("PmdRunnable exception", t);
+            }
+        } finally {
+            ioExecutor.shutdownNow();
+            analysisExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * The already read content of a data source. The name is still provided
+     * by the original data source.
+     */
+    private static class BufferedDataSource extends AbstractDataSource {
+        private final DataSource source;
+        private final byte[] content;
+
+        BufferedDataSource(DataSource source, byte[] content) {
+            this.source = source;
+            this.content = content;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(content);
+        }
+
+        @Override
+        public String getNiceFileName(boolean shortNames, String inputFileName) {
+            return source.getNiceFileName(shortNames, inputFileName);
+        }
+
+        @Override
+        public String toString() {
+            return source.toString();
+        }
+    }
+}
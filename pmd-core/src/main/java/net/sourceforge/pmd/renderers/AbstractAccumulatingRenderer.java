@@ -5,8 +5,16 @@
 package net.sourceforge.pmd.renderers;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 
 import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.RuleViolationComparator;
+import net.sourceforge.pmd.annotation.Experimental;
+import net.sourceforge.pmd.properties.PropertyDescriptor;
+import net.sourceforge.pmd.properties.PropertyFactory;
 import net.sourceforge.pmd.util.datasource.DataSource;
 
 /**
@@ -19,15 +27,29 @@ import net.sourceforge.pmd.util.datasource.DataSource;
  * Subclasses should implement the {@link #end()} method to output the
  * {@link #report}.
  *
+ * <p>Subclasses, that define the {@link #STREAMING} property, support keeping
+ * the violations in temporary files instead. If it is enabled, the
+ * {@link #report} only accumulates everything else, and the violations are
+ * read with {@link #spilledViolations()}.
+ *
  * @see AbstractIncrementingRenderer
  */
 public abstract class AbstractAccumulatingRenderer extends AbstractRenderer {
 
+    @Experimental
+    public static final PropertyDescriptor<Boolean> STREAMING
+            = PropertyFactory.booleanProperty("streaming")
+                             .desc("Keep the violations in temporary files instead of the memory, for huge reports.")
+                             .defaultValue(false)
+                             .build();
+
     /**
      * The accumulated Report.
      */
     protected Report report;
 
+    private ViolationSpill spill;
+
     public AbstractAccumulatingRenderer(String name, String description) {
         super(name, description);
     }
@@ -35,6 +57,9 @@ public abstract class AbstractAccumulatingRenderer extends AbstractRenderer {
     @Override
     public void start() throws IOException {
         report = new Report();
+        if (isStreaming()) {
+            spill = new ViolationSpill(getSpillOrder());
+        }
     }
 
     @Override
@@ -44,7 +69,54 @@ public abstract class AbstractAccumulatingRenderer extends AbstractRenderer {
 
     @Override
     public void renderFileReport(Report report) throws IOException {
-        this.report.merge(report);
+        if (spill == null) {
+            this.report.merge(report);
+            return;
+        }
+
+        for (RuleViolation violation : report) {
+            spill.add(violation);
+        }
+        for (Iterator<Report.ProcessingError> i = report.errors(); i.hasNext();) {
+            this.report.addError(i.next());
+        }
+        for (Iterator<Report.ConfigurationError> i = report.configErrors(); i.hasNext();) {
+            this.report.addConfigError(i.next());
+        }
+        this.report.getSuppressedRuleViolations().addAll(report.getSuppressedRuleViolations());
+    }
+
+    /**
+     * Returns whether the violations are kept in temporary files, see {@link #STREAMING}.
+     */
+    @Experimental
+    protected boolean isStreaming() {
+        return hasDescriptor(STREAMING) && getProperty(STREAMING);
+    }
+
+    /**
+     * Returns the order, in which {@link #spilledViolations()} returns the
+     * violations. By default, that's the same order as the one of {@link #report}.
+     */
+    @Experimental
+    protected Comparator<RuleViolation> getSpillOrder() {
+        return RuleViolationComparator.INSTANCE;
+    }
+
+    /**
+     * Returns the violations, that have been kept in temporary files, in the
+     * {@link #getSpillOrder() spill order}. They can only be read once. If
+     * streaming is disabled, there are none, the violations are in the
+     * {@link #report} instead.
+     *
+     * @throws IOException If the temporary files can't be read
+     */
+    @Experimental
+    protected Iterator<RuleViolation> spilledViolations() throws IOException {
+        if (spill == null) {
+            return Collections.<RuleViolation>emptyIterator();
+        }
+        return spill.iterator();
     }
 
     /**
@@ -54,4 +126,16 @@ public abstract class AbstractAccumulatingRenderer extends AbstractRenderer {
      */
     @Override
     public abstract void end() throws IOException;
+
+    @Override
+    public void flush() {
+        try {
+            super.flush();
+        } finally {
+            if (spill != null) {
+                spill.close();
+                spill = null;
+            }
+        }
+    }
 }
@@ -6,6 +6,7 @@ package net.sourceforge.pmd.renderers;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
@@ -59,6 +60,20 @@ public class HTMLRenderer extends AbstractIncrementingRenderer {
      * @throws IOException
      */
     public void renderBody(Writer writer, Report report) throws IOException {
+        renderBody(writer, report, Collections.<RuleViolation>emptyIterator());
+    }
+
+    /**
+     * Write the body of the main body of the HTML content. The given violations
+     * are rendered before the ones of the report, e.g. if they are not kept in
+     * the report.
+     *
+     * @param writer
+     * @param report
+     * @param violations
+     * @throws IOException
+     */
+    public void renderBody(Writer writer, Report report, Iterator<RuleViolation> violations) throws IOException {
         linkPrefix = getProperty(LINK_PREFIX);
         linePrefix = getProperty(LINE_PREFIX);
 
@@ -67,6 +82,9 @@ public class HTMLRenderer extends AbstractIncrementingRenderer {
         writer.write("<table align=\"center\" cellspacing=\"0\" cellpadding=\"3\"><tr>" + PMD.EOL
                 + "<th>#</th><th>File</th><th>Line</th><th>Problem</th></tr>" + PMD.EOL);
         setWriter(writer);
+        if (violations.hasNext()) {
+            renderFileViolations(violations);
+        }
         renderFileReport(report);
         writer.write("</table>");
         glomProcessingErrors(writer, errors);
@@ -5,9 +5,12 @@
 package net.sourceforge.pmd.renderers;
 
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.Map;
 
 import net.sourceforge.pmd.PMD;
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.RuleViolation;
 
 /**
  * Renderer to a summarized HTML format.
@@ -16,6 +19,9 @@ public class SummaryHTMLRenderer extends AbstractAccumulatingRenderer {
 
     public static final String NAME = "summaryhtml";
 
+    /** The number of violations per rule name, only counted while streaming. */
+    private final Map<String, Integer> streamedSummary = new HashMap<>();
+
     public SummaryHTMLRenderer() {
         super(NAME, "Summary HTML format.");
 
@@ -24,6 +30,7 @@ public class SummaryHTMLRenderer extends AbstractAccumulatingRenderer {
         // Renderer
         definePropertyDescriptor(HTMLRenderer.LINK_PREFIX);
         definePropertyDescriptor(HTMLRenderer.LINE_PREFIX);
+        definePropertyDescriptor(STREAMING);
     }
 
     @Override
@@ -31,6 +38,25 @@ public class SummaryHTMLRenderer extends AbstractAccumulatingRenderer {
         return "html";
     }
 
+    @Override
+    public void start() throws IOException {
+        super.start();
+        streamedSummary.clear();
+    }
+
+    @Override
+    public void renderFileReport(Report report) throws IOException {
+        if (isStreaming()) {
+            // the summary is rendered first, it can't be computed while reading the spilled violations
+            for (RuleViolation rv : report) {
+                String name = rv.getRule().getName();
+                Integer count = streamedSummary.get(name);
+                streamedSummary.put(name, count == null ? 1 : count + 1);
+            }
+        }
+        super.renderFileReport(report);
+    }
+
     @Override
     public void end() throws IOException {
         writer.write("<html><head><title>PMD</title></head><body>" + PMD.EOL);
@@ -43,7 +69,7 @@ public class SummaryHTMLRenderer extends AbstractAccumulatingRenderer {
         htmlRenderer.setProperty(HTMLRenderer.LINE_PREFIX, getProperty(HTMLRenderer.LINE_PREFIX));
         htmlRenderer.setShowSuppressedViolations(showSuppressedViolations);
         htmlRenderer.setUseShortNames(inputPathPrefixes);
-        htmlRenderer.renderBody(writer, report);
+        htmlRenderer.renderBody(writer, report, spilledViolations());
 
         writer.write("</tr></table></body></html>" + PMD.EOL);
     }
@@ -57,7 +83,7 @@ public class SummaryHTMLRenderer extends AbstractAccumulatingRenderer {
         writer.write("<center><h2>Summary</h2></center>" + PMD.EOL);
         writer.write("<table align=\"center\" cellspacing=\"0\" cellpadding=\"3\">" + PMD.EOL);
         writer.write("<tr><th>Rule name</th><th>Number of violations</th></tr>" + PMD.EOL);
-        Map<String, Integer> summary = report.getSummary();
+        Map<String, Integer> summary = isStreaming() ? streamedSummary : report.getSummary();
         for (Map.Entry<String, Integer> entry : summary.entrySet()) {
             String ruleName = entry.getKey();
             writer.write("<tr><td>");
@@ -0,0 +1,382 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.renderers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import org.apache.commons.io.IOUtils;
+
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleViolation;
+
+/**
+ * Keeps the violations of an accumulating renderer in temporary files instead
+ * of the heap. The violations are buffered, and whenever the buffer is full, it
+ * is sorted and written to a new segment file. The sorted segments are then
+ * merged while the violations are read, so that only the head of each segment
+ * is in memory. At most 64 segments are open at the same time, if there are
+ * more, runs of consecutive segments are merged into bigger segments first.
+ *
+ * <p>The rules are kept in memory, the violations only refer to them by index.
+ */
+final class ViolationSpill implements Closeable {
+
+    private static final int DEFAULT_BUFFER_SIZE = 10000;
+    private static final int DEFAULT_MAX_OPEN_SEGMENTS = 64;
+
+    private final Comparator<RuleViolation> order;
+    private final int bufferSize;
+    private final int maxOpenSegments;
+    private final List<RuleViolation> buffer = new ArrayList<>();
+    private final List<Rule> rules = new ArrayList<>();
+    private final Map<Rule, Integer> ruleIndexes = new IdentityHashMap<>();
+    private final List<Segment> segments = new ArrayList<>();
+
+    ViolationSpill(Comparator<RuleViolation> order) {
+        this(order, DEFAULT_BUFFER_SIZE);
+    }
+
+    ViolationSpill(Comparator<RuleViolation> order, int bufferSize) {
+        this(order, bufferSize, DEFAULT_MAX_OPEN_SEGMENTS);
+    }
+
+    ViolationSpill(Comparator<RuleViolation> order, int bufferSize, int maxOpenSegments) {
+        this.order = order;
+        this.bufferSize = bufferSize;
+        this.maxOpenSegments = maxOpenSegments;
+    }
+
+    public void add(RuleViolation violation) throws IOException {
+        buffer.add(violation);
+        if (buffer.size() >= bufferSize) {
+            spill();
+        }
+    }
+
+    /**
+     * Returns all violations added so far in order. The returned iterator
+     * deletes the segment files once it is exhausted, so the violations can
+     * only be read once.
+     */
+    public Iterator<RuleViolation> iterator() throws IOException {
+        spill();
+        while (segments.size() > maxOpenSegments) {
+            mergeSegments();
+        }
+        return new MergingIterator(segments, true);
+    }
+
+    private void spill() throws IOException {
+        if (buffer.isEmpty()) {
+            return;
+        }
+
+        // a stable sort, equal violations of different segments are merged in the order they have been added
+        Collections.sort(buffer, order);
+        Segment segment = new Segment(segments.size(), File.createTempFile("pmd-report-", ".segment"), buffer.size());
+        segments.add(segment);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(segment.file.toPath())))) {
+            for (RuleViolation violation : buffer) {
+                write(out, violation);
+            }
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Merges each run of consecutive segments into a single segment, which reduces
+     * the number of segments by the maximum number of open segments. As the runs
+     * are consecutive, equal violations are still merged in the order they have
+     * been added.
+     */
+    private void mergeSegments() throws IOException {
+        List<Segment> merged = new ArrayList<>();
+        try {
+            for (int start = 0; start < segments.size(); start += maxOpenSegments) {
+                List<Segment> run = segments.subList(start, Math.min(start + maxOpenSegments, segments.size()));
+                int size = 0;
+                for (Segment segment : run) {
+                    size += segment.remaining;
+                }
+                Segment segment = new Segment(merged.size(), File.createTempFile("pmd-report-", ".segment"), size);
+                merged.add(segment);
+                try (DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(Files.newOutputStream(segment.file.toPath())))) {
+                    Iterator<RuleViolation> violations = new MergingIterator(run, false);
+                    while (violations.hasNext()) {
+                        write(out, violations.next());
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            delete(merged);
+            throw e;
+        }
+        delete(segments);
+        segments.clear();
+        segments.addAll(merged);
+    }
+
+    private void write(DataOutputStream out, RuleViolation violation) throws IOException {
+        Integer ruleIndex = ruleIndexes.get(violation.getRule());
+        if (ruleIndex == null) {
+            ruleIndex = rules.size();
+            rules.add(violation.getRule());
+            ruleIndexes.put(violation.getRule(), ruleIndex);
+        }
+        out.writeInt(ruleIndex);
+        writeString(out, violation.getDescription());
+        out.writeBoolean(violation.isSuppressed());
+        writeString(out, violation.getFilename());
+        out.writeInt(violation.getBeginLine());
+        out.writeInt(violation.getBeginColumn());
+        out.writeInt(violation.getEndLine());
+        out.writeInt(violation.getEndColumn());
+        writeString(out, violation.getPackageName());
+        writeString(out, violation.getClassName());
+        writeString(out, violation.getMethodName());
+        writeString(out, violation.getVariableName());
+    }
+
+    private RuleViolation read(DataInputStream in) throws IOException {
+        SpilledViolation violation = new SpilledViolation();
+        violation.rule = rules.get(in.readInt());
+        violation.description = readString(in);
+        violation.suppressed = in.readBoolean();
+        violation.filename = readString(in);
+        violation.beginLine = in.readInt();
+        violation.beginColumn = in.readInt();
+        violation.endLine = in.readInt();
+        violation.endColumn = in.readInt();
+        violation.packageName = readString(in);
+        violation.className = readString(in);
+        violation.methodName = readString(in);
+        violation.variableName = readString(in);
+        return violation;
+    }
+
+    // not DataOutputStream#writeUTF, which is limited to 64k, e.g. for long descriptions
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Closes the open segments and deletes all segment files.
+     */
+    @Override
+    public void close() {
+        delete(segments);
+        segments.clear();
+        buffer.clear();
+    }
+
+    private static void delete(List<Segment> segments) {
+        for (Segment segment : segments) {
+            IOUtils.closeQuietly(segment.in);
+            if (!segment.file.delete()) {
+                segment.file.deleteOnExit();
+            }
+        }
+    }
+
+    private static final class Segment {
+        private final int index;
+        private final File file;
+        private int remaining;
+        private DataInputStream in;
+        private RuleViolation head;
+
+        Segment(int index, File file, int size) {
+            this.index = index;
+            this.file = file;
+            this.remaining = size;
+        }
+    }
+
+    /**
+     * Merges the sorted segments, the segment with the smallest head is always
+     * at the top of the queue.
+     */
+    private final class MergingIterator implements Iterator<RuleViolation> {
+
+        private final PriorityQueue<Segment> queue;
+        /** Whether all segment files are deleted, once the iterator is exhausted. */
+        private final boolean closeSpill;
+
+        MergingIterator(List<Segment> merged, boolean closeSpill) throws IOException {
+            this.closeSpill = closeSpill;
+            queue = new PriorityQueue<>(Math.max(1, merged.size()), new Comparator<Segment>() {
+                @Override
+                public int compare(Segment s1, Segment s2) {
+                    int cmp = order.compare(s1.head, s2.head);
+                    // keep equal violations in the order they have been added
+                    return cmp != 0 ? cmp : s1.index - s2.index;
+                }
+            });
+            for (Segment segment : merged) {
+                segment.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment.file.toPath())));
+                advance(segment);
+            }
+            if (queue.isEmpty()) {
+                finish();
+            }
+        }
+
+        private void finish() {
+            if (closeSpill) {
+                close();
+            }
+        }
+
+        private void advance(Segment segment) throws IOException {
+            if (segment.remaining > 0) {
+                segment.head = read(segment.in);
+                segment.remaining--;
+                queue.add(segment);
+            } else {
+                segment.head = null;
+                IOUtils.closeQuietly(segment.in);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public RuleViolation next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Segment segment = queue.poll();
+            RuleViolation next = segment.head;
+            try {
+                advance(segment);
+            } catch (IOException e) {
+                finish();
+                throw new IllegalStateException("Could not read the spilled violations", e);
+            }
+            if (queue.isEmpty()) {
+                finish();
+            }
+            return next;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static final class SpilledViolation implements RuleViolation {
+        private Rule rule;
+        private String description;
+        private boolean suppressed;
+        private String filename;
+        private int beginLine;
+        private int beginColumn;
+        private int endLine;
+        private int endColumn;
+        private String packageName;
+        private String className;
+        private String methodName;
+        private String variableName;
+
+        @Override
+        public Rule getRule() {
+            return rule;
+        }
+
+        @Override
+        public String getDescription() {
+            return description;
+        }
+
+        @Override
+        public boolean isSuppressed() {
+            return suppressed;
+        }
+
+        @Override
+        public String getFilename() {
+            return filename;
+        }
+
+        @Override
+        public int getBeginLine() {
+            return beginLine;
+        }
+
+        @Override
+        public int getBeginColumn() {
+            return beginColumn;
+        }
+
+        @Override
+        public int getEndLine() {
+            return endLine;
+        }
+
+        @Override
+        public int getEndColumn() {
+            return endColumn;
+        }
+
+        @Override
+        public String getPackageName() {
+            return packageName;
+        }
+
+        @Override
+        public String getClassName() {
+            return className;
+        }
+
+        @Override
+        public String getMethodName() {
+            return methodName;
+        }
+
+        @Override
+        public String getVariableName() {
+            return variableName;
+        }
+    }
+}
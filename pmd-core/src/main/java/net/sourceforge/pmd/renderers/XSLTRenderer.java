@@ -11,10 +11,12 @@ import java.io.InputStream;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
@@ -45,12 +47,15 @@ public class XSLTRenderer extends XMLRenderer {
     private Transformer transformer;
     private String xsltFilename = "/pmd-nicerhtml.xsl";
     private Writer outputWriter;
+    /** The file, the XML is written to while streaming, <code>null</code> otherwise. */
+    private File xmlFile;
 
     public XSLTRenderer() {
         super();
         setName(NAME);
         setDescription("XML with a XSL Transformation applied.");
         definePropertyDescriptor(XSLT_FILENAME);
+        definePropertyDescriptor(AbstractAccumulatingRenderer.STREAMING);
     }
 
     @Override
@@ -70,9 +75,6 @@ public class XSLTRenderer extends XMLRenderer {
 
         // We keep the inital writer to put the final html output
         this.outputWriter = getWriter();
-        // We use a new one to store the XML...
-        Writer w = new StringWriter();
-        setWriter(w);
         // If don't find the xsl no need to bother doing the all report,
         // so we check this here...
         InputStream xslt = null;
@@ -89,6 +91,15 @@ public class XSLTRenderer extends XMLRenderer {
         try (InputStream stream = xslt) {
             this.prepareTransformer(stream);
         }
+        // We use a new one to store the XML...
+        if (getProperty(AbstractAccumulatingRenderer.STREAMING)) {
+            // ... in a temporary file instead of a string. The transformation still builds the
+            // whole document tree in memory, only the violations and the XML text are not kept
+            xmlFile = File.createTempFile("pmd-report-", ".xml");
+            setWriter(Files.newBufferedWriter(xmlFile.toPath(), Charset.forName(getProperty(ENCODING))));
+        } else {
+            setWriter(new StringWriter());
+        }
         // Now we build the XML file
         super.start();
     }
@@ -118,10 +129,20 @@ public class XSLTRenderer extends XMLRenderer {
         // First we finish the XML report
         super.end();
         // Now we transform it using XSLT
-        if (writer instanceof StringWriter) {
+        if (xmlFile != null) {
+            writer.close();
+            try {
+                this.transform(new StreamSource(xmlFile));
+            } finally {
+                if (!xmlFile.delete()) {
+                    xmlFile.deleteOnExit();
+                }
+                xmlFile = null;
+            }
+        } else if (writer instanceof StringWriter) {
             StringWriter w = (StringWriter) writer;
             Document doc = this.getDocument(w.toString());
-            this.transform(doc);
+            this.transform(new DOMSource(doc));
         } else {
             // Should not happen !
             throw new RuntimeException("Wrong writer");
@@ -129,8 +150,7 @@ public class XSLTRenderer extends XMLRenderer {
 
     }
 
-    private void transform(Document doc) {
-        DOMSource source = new DOMSource(doc);
+    private void transform(Source source) {
         this.setWriter(new StringWriter());
         StreamResult result = new StreamResult(this.outputWriter);
         try {
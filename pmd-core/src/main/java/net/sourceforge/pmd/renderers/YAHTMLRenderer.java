@@ -9,6 +9,7 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -18,7 +19,9 @@ import java.util.TreeMap;
 import org.apache.commons.lang3.StringUtils;
 
 import net.sourceforge.pmd.PMD;
+import net.sourceforge.pmd.Report;
 import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.RuleViolationComparator;
 import net.sourceforge.pmd.properties.StringProperty;
 
 /**
@@ -36,6 +39,7 @@ public class YAHTMLRenderer extends AbstractAccumulatingRenderer {
         // YA = Yet Another?
         super(NAME, "Yet Another HTML format.");
         definePropertyDescriptor(OUTPUT_DIR);
+        definePropertyDescriptor(STREAMING);
     }
 
     @Override
@@ -43,7 +47,43 @@ public class YAHTMLRenderer extends AbstractAccumulatingRenderer {
         return "html";
     }
 
-    private void addViolation(RuleViolation violation) {
+    @Override
+    public void start() throws IOException {
+        super.start();
+        reportNodesByPackage.clear();
+    }
+
+    @Override
+    public void renderFileReport(Report report) throws IOException {
+        if (isStreaming()) {
+            // only count the violations, they are read again from the spill to render the classes
+            for (RuleViolation violation : report) {
+                addViolation(violation, false);
+            }
+        }
+        super.renderFileReport(report);
+    }
+
+    /**
+     * Spills the violations grouped by class, so that each class can be
+     * rendered at once.
+     */
+    @Override
+    protected Comparator<RuleViolation> getSpillOrder() {
+        return new Comparator<RuleViolation>() {
+            @Override
+            public int compare(RuleViolation v1, RuleViolation v2) {
+                int cmp = getFullyQualifiedClassName(v1).compareTo(getFullyQualifiedClassName(v2));
+                return cmp != 0 ? cmp : RuleViolationComparator.INSTANCE.compare(v1, v2);
+            }
+        };
+    }
+
+    private static String getFullyQualifiedClassName(RuleViolation violation) {
+        return violation.getPackageName() + "." + violation.getClassName();
+    }
+
+    private void addViolation(RuleViolation violation, boolean keep) {
         String packageName = violation.getPackageName();
 
         // report each part of the package name: e.g. net.sf.pmd.test will create nodes for
@@ -66,13 +106,17 @@ public class YAHTMLRenderer extends AbstractAccumulatingRenderer {
         }
 
         // add one node per class collecting the actual violations
-        String fqClassName = packageName + "." + violation.getClassName();
+        String fqClassName = getFullyQualifiedClassName(violation);
         ReportNode classNode = reportNodesByPackage.get(fqClassName);
         if (classNode == null) {
             classNode = new ReportNode(packageName, violation.getClassName());
             reportNodesByPackage.put(fqClassName, classNode);
         }
-        classNode.addRuleViolation(violation);
+        if (keep) {
+            classNode.addRuleViolation(violation);
+        } else {
+            classNode.countRuleViolation();
+        }
 
         // count the overall violations in the root node
         ReportNode rootNode = reportNodesByPackage.get(ReportNode.ROOT_NODE_NAME);
@@ -89,11 +133,15 @@ public class YAHTMLRenderer extends AbstractAccumulatingRenderer {
 
         Iterator<RuleViolation> violations = report.iterator();
         while (violations.hasNext()) {
-            addViolation(violations.next());
+            addViolation(violations.next(), true);
         }
 
         renderIndex(outputDir);
-        renderClasses(outputDir);
+        if (isStreaming()) {
+            renderSpilledClasses(outputDir);
+        } else {
+            renderClasses(outputDir);
+        }
 
         writer.write("<h3 align=\"center\">The HTML files are located "
                 + (outputDir == null ? "above the project directory" : "in '" + outputDir + '\'') + ".</h3>" + PMD.EOL);
@@ -141,50 +189,90 @@ public class YAHTMLRenderer extends AbstractAccumulatingRenderer {
     private void renderClasses(String outputDir) throws IOException {
         for (ReportNode node : reportNodesByPackage.values()) {
             if (node.hasViolations()) {
-                try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(new File(outputDir, node.getClassName() + ".html").toPath(), StandardCharsets.UTF_8))) {
-                    out.println("<!DOCTYPE html>");
-                    out.println("<html>");
-                    out.println("    <head>");
-                    out.println("        <meta charset=\"UTF-8\">");
-                    out.print("        <title>PMD - ");
-                    out.print(node.getClassName());
-                    out.println("</title>");
-                    out.println("    </head>");
-                    out.println("    <body>");
-                    out.println("        <h2>Class View</h2>");
-                    out.print("        <h3 align=\"center\">Class: ");
-                    out.print(node.getClassName());
-                    out.println("</h3>");
-                    out.println("        <table border=\"\" align=\"center\" cellspacing=\"0\" cellpadding=\"3\">");
-                    out.println("        <tr><th>Method</th><th>Violation</th></tr>");
+                try (PrintWriter out = startClass(outputDir, node.getClassName())) {
                     for (RuleViolation violation : node.getViolations()) {
-                        out.print("        <tr><td>");
-                        out.print(violation.getMethodName());
-                        out.print("</td><td>");
-                        out.print("<table border=\"0\">");
+                        renderViolation(out, violation);
+                    }
+                    endClass(out);
+                }
+            }
+        }
+    }
 
-                        out.print(renderViolationRow("Rule:", violation.getRule().getName()));
-                        out.print(renderViolationRow("Description:", violation.getDescription()));
+    private void renderSpilledClasses(String outputDir) throws IOException {
+        Iterator<RuleViolation> violations = spilledViolations();
+        String fqClassName = null;
+        PrintWriter out = null;
+        try {
+            while (violations.hasNext()) {
+                RuleViolation violation = violations.next();
+                if (!getFullyQualifiedClassName(violation).equals(fqClassName)) {
+                    if (out != null) {
+                        endClass(out);
+                        out.close();
+                    }
+                    fqClassName = getFullyQualifiedClassName(violation);
+                    out = startClass(outputDir, violation.getClassName());
+                }
+                renderViolation(out, violation);
+            }
+            if (out != null) {
+                endClass(out);
+            }
+        } finally {
+            if (out != null) {
+                out.close();
+            }
+        }
+    }
 
-                        if (StringUtils.isNotBlank(violation.getVariableName())) {
-                            out.print(renderViolationRow("Variable:", violation.getVariableName()));
-                        }
+    private PrintWriter startClass(String outputDir, String className) throws IOException {
+        PrintWriter out = new PrintWriter(Files.newBufferedWriter(new File(outputDir, className + ".html").toPath(), StandardCharsets.UTF_8));
+        out.println("<!DOCTYPE html>");
+        out.println("<html>");
+        out.println("    <head>");
+        out.println("        <meta charset=\"UTF-8\">");
+        out.print("        <title>PMD - ");
+        out.print(className);
+        out.println("</title>");
+        out.println("    </head>");
+        out.println("    <body>");
+        out.println("        <h2>Class View</h2>");
+        out.print("        <h3 align=\"center\">Class: ");
+        out.print(className);
+        out.println("</h3>");
+        out.println("        <table border=\"\" align=\"center\" cellspacing=\"0\" cellpadding=\"3\">");
+        out.println("        <tr><th>Method</th><th>Violation</th></tr>");
+        return out;
+    }
 
-                        out.print(renderViolationRow("Line:", violation.getEndLine() > 0
-                                ? violation.getBeginLine() + " and " + violation.getEndLine()
-                                : String.valueOf(violation.getBeginLine())));
+    private void renderViolation(PrintWriter out, RuleViolation violation) {
+        out.print("        <tr><td>");
+        out.print(violation.getMethodName());
+        out.print("</td><td>");
+        out.print("<table border=\"0\">");
 
-                        out.print("</table>");
+        out.print(renderViolationRow("Rule:", violation.getRule().getName()));
+        out.print(renderViolationRow("Description:", violation.getDescription()));
 
-                        out.print("</td></tr>");
-                        out.println();
-                    }
-                    out.println("        </table>");
-                    out.println("    </body>");
-                    out.println("</html>");
-                }
-            }
+        if (StringUtils.isNotBlank(violation.getVariableName())) {
+            out.print(renderViolationRow("Variable:", violation.getVariableName()));
         }
+
+        out.print(renderViolationRow("Line:", violation.getEndLine() > 0
+                ? violation.getBeginLine() + " and " + violation.getEndLine()
+                : String.valueOf(violation.getBeginLine())));
+
+        out.print("</table>");
+
+        out.print("</td></tr>");
+        out.println();
+    }
+
+    private void endClass(PrintWriter out) {
+        out.println("        </table>");
+        out.println("    </body>");
+        out.println("</html>");
     }
 
     private String renderViolationRow(String name, String value) {
@@ -205,6 +293,7 @@ public class YAHTMLRenderer extends AbstractAccumulatingRenderer {
         private final String packageName;
         private final String className;
         private int violationCount;
+        private int classViolationCount;
         private final List<RuleViolation> violations = new LinkedList<>();
 
         ReportNode(String packageName) {
@@ -223,6 +312,14 @@ public class YAHTMLRenderer extends AbstractAccumulatingRenderer {
 
         public void addRuleViolation(RuleViolation violation) {
             violations.add(violation);
+            classViolationCount++;
+        }
+
+        /**
+         * Counts a violation of this class without keeping it.
+         */
+        public void countRuleViolation() {
+            classViolationCount++;
         }
 
         public String getPackageName() {
@@ -234,7 +331,7 @@ public class YAHTMLRenderer extends AbstractAccumulatingRenderer {
         }
 
         public int getViolationCount() {
-            return violationCount + violations.size();
+            return violationCount + classViolationCount;
         }
 
         public List<RuleViolation> getViolations() {
@@ -242,7 +339,7 @@ public class YAHTMLRenderer extends AbstractAccumulatingRenderer {
         }
 
         public boolean hasViolations() {
-            return !violations.isEmpty();
+            return classViolationCount > 0;
         }
 
         @Override
@@ -250,7 +347,7 @@ public class YAHTMLRenderer extends AbstractAccumulatingRenderer {
             return "ReportNode[packageName=" + packageName
                 + ",className=" + className
                 + ",violationCount=" + violationCount
-                + ",violations=" + violations.size()
+                + ",violations=" + classViolationCount
                 + "]";
         }
     }
@@ -20,6 +20,7 @@ import java.util.logging.Logger;
 import org.apache.commons.lang3.StringUtils;
 
 import net.sourceforge.pmd.annotation.InternalApi;
+import net.sourceforge.pmd.cache.AuxClasspathIndex;
 
 /**
  * Create a ClassLoader which loads classes using a CLASSPATH like String. If
@@ -39,6 +40,9 @@ public class ClasspathClassLoader extends URLClassLoader {
         registerAsParallelCapable();
     }
 
+    /** What type resolution learned about this classpath in previous analyses, if known. */
+    private AuxClasspathIndex index;
+
     public ClasspathClassLoader(List<File> files, ClassLoader parent) throws IOException {
         super(fileToURL(files), parent);
     }
@@ -100,6 +104,24 @@ public class ClasspathClassLoader extends URLClassLoader {
         return file.getAbsoluteFile().toURI().toURL();
     }
 
+    /**
+     * Returns the index of this classpath, that is persisted with the analysis cache.
+     *
+     * @return The index, or null if there's no analysis cache
+     */
+    public AuxClasspathIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Sets the index of this classpath, which is used by type resolution.
+     *
+     * @param index The index, may be null
+     */
+    public void setIndex(AuxClasspathIndex index) {
+        this.index = index;
+    }
+
     @Override
     public String toString() {
         return new StringBuilder(getClass().getSimpleName())
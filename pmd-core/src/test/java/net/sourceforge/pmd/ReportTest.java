@@ -168,6 +168,30 @@ public class ReportTest implements ThreadSafeReportListener {
         assertEquals(2, treeCount);
     }
 
+    @Test
+    public void testManyViolationsAreSorted() {
+        Report r = new Report();
+        RuleContext ctx = new RuleContext();
+        ctx.setSourceCodeFile(new File("foo"));
+        Rule rule = new MockRule("name", "desc", "msg", "rulesetname");
+        // more violations than are sorted on a single thread, added in reverse order
+        int count = 20000;
+        for (int line = count; line > 0; line--) {
+            r.addRuleViolation(new ParametricRuleViolation<>(rule, ctx, getNode(line, 1), rule.getMessage()));
+        }
+        assertEquals(count, r.size());
+
+        int expectedLine = 1;
+        for (RuleViolation violation : r) {
+            assertEquals(expectedLine++, violation.getBeginLine());
+        }
+
+        // the tree is built on demand and kept up to date afterwards
+        assertEquals(count, r.treeSize());
+        r.addRuleViolation(new ParametricRuleViolation<>(rule, ctx, getNode(count + 1, 1), rule.getMessage()));
+        assertEquals(count + 1, r.treeSize());
+    }
+
     private static Node getNode(int line, int column) {
         DummyNode s = new DummyNode(2);
         DummyNode parent = new DummyNode(1);
@@ -6,6 +6,7 @@ package net.sourceforge.pmd;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
@@ -20,6 +21,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.regex.Pattern;
 
 import org.junit.Test;
@@ -33,6 +36,9 @@ import net.sourceforge.pmd.lang.ast.DummyNode;
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.rule.MockRule;
 import net.sourceforge.pmd.lang.rule.RuleReference;
+import net.sourceforge.pmd.lang.rule.ThreadSafe;
+import net.sourceforge.pmd.properties.PropertyDescriptor;
+import net.sourceforge.pmd.stat.Metric;
 import net.sourceforge.pmd.util.CollectionUtil;
 
 public class RuleSetTest {
@@ -131,6 +137,36 @@ public class RuleSetTest {
         assertEquals("ruleset size wrong", 2, set2.size());
     }
 
+    @Test
+    public void testRuleChecksums() {
+        MockRule rule = new MockRule("name", "desc", "msg", "rulesetname");
+        MockRule otherRule = new MockRule("name2", "desc", "msg", "rulesetname");
+        RuleSets ruleSets = new RuleSets(createRuleSetBuilder("ruleset1").addRule(rule).addRule(otherRule).build());
+
+        long checksum = ruleSets.getRuleChecksums().get(rule);
+        long otherChecksum = ruleSets.getRuleChecksums().get(otherRule);
+        assertEquals("Checksum must be stable", checksum, (long) ruleSets.getRuleChecksums().get(rule));
+
+        rule.setDescription("changed description");
+        assertEquals("Description doesn't influence violations", checksum, (long) ruleSets.getRuleChecksums().get(rule));
+
+        rule.setMessage("changed message");
+        long messageChecksum = ruleSets.getRuleChecksums().get(rule);
+        assertNotEquals("Message change must change the checksum", checksum, messageChecksum);
+
+        rule.setPriority(RulePriority.HIGH);
+        long priorityChecksum = ruleSets.getRuleChecksums().get(rule);
+        assertNotEquals("Priority change must change the checksum", messageChecksum, priorityChecksum);
+        checksum = priorityChecksum;
+
+        @SuppressWarnings("unchecked")
+        PropertyDescriptor<Integer> property = (PropertyDescriptor<Integer>) rule.getPropertyDescriptor("testIntProperty");
+        rule.setProperty(property, 42);
+        assertNotEquals("Property change must change the checksum", checksum,
+                (long) ruleSets.getRuleChecksums().get(rule));
+        assertEquals("Other rule is unchanged", otherChecksum, (long) ruleSets.getRuleChecksums().get(otherRule));
+    }
+
     @Test(expected = RuntimeException.class)
     public void testAddRuleSetByReferenceBad() {
         RuleSet set1 = createRuleSetBuilder("ruleset1")
@@ -622,4 +658,103 @@ public class RuleSetTest {
         assertEquals("There should be a violation", 1, context.getReport().size());
     }
 
+    @Test
+    public void ruleChainVisitsNodesByNameWhenIdsAreShared() {
+        final List<String> visited = new ArrayList<>();
+        RuleSet ruleset = createRuleSetBuilder("ruleChainVisitsNodesByName").addRule(new MockRule() {
+            {
+                addRuleChainVisit("foo");
+                addRuleChainVisit("bar");
+            }
+
+            @Override
+            public void apply(List<? extends Node> nodes, RuleContext ctx) {
+                for (Node node : nodes) {
+                    visited.add(node.getXPathNodeName() + node.getImage());
+                }
+            }
+        }).build();
+
+        // nodes of different types share an id, like for languages not using JJTree
+        DummyNode root = new DummyNode(0, false, "foo");
+        root.setImage("1");
+        String[] names = {"bar", "baz", "foo", "bar"};
+        for (int i = 0; i < names.length; i++) {
+            DummyNode child = new DummyNode(i % 2 == 0 ? 0 : 5000, false, names[i]);
+            child.setImage(String.valueOf(i + 2));
+            root.jjtAddChild(child, i);
+        }
+
+        RuleContext context = new RuleContext();
+        context.setReport(new Report());
+        context.setLanguageVersion(LanguageRegistry.getLanguage(DummyLanguageModule.NAME).getDefaultVersion());
+        new RuleSets(ruleset).apply(Arrays.<Node>asList(root), context,
+                LanguageRegistry.getLanguage(DummyLanguageModule.NAME));
+
+        assertEquals(Arrays.asList("foo1", "foo4", "bar2", "bar5"), visited);
+    }
+
+    @Test
+    public void ruleChainAppliesThreadSafeRulesConcurrently() {
+        RuleSet ruleset = createRuleSetBuilder("ruleChainAppliesThreadSafeRulesConcurrently")
+                .addRule(new ThreadSafeRecordingRule("SafeRule1"))
+                .addRule(new RecordingRule("UnsafeRule"))
+                .addRule(new ThreadSafeRecordingRule("SafeRule2"))
+                .build();
+
+        final List<String> notified = new ArrayList<>();
+        RuleContext context = new RuleContext();
+        context.setReport(new Report());
+        context.getReport().addListener(new ThreadSafeReportListener() {
+            @Override
+            public void ruleViolationAdded(RuleViolation ruleViolation) {
+                notified.add(ruleViolation.getRule().getName());
+            }
+
+            @Override
+            public void metricAdded(Metric metric) {
+                // not interested
+            }
+        });
+        context.setLanguageVersion(LanguageRegistry.getLanguage(DummyLanguageModule.NAME).getDefaultVersion());
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        context.setRuleExecutor(executor);
+        try {
+            new RuleSets(ruleset).apply(makeCompilationUnits(), context,
+                    LanguageRegistry.getLanguage(DummyLanguageModule.NAME));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // rules applied on the current thread are reported first, then the others in order
+        assertEquals(Arrays.asList("UnsafeRule", "SafeRule1", "SafeRule2"), notified);
+        assertEquals(3, context.getReport().size());
+        assertEquals(Thread.currentThread(), ((RecordingRule) ruleset.getRuleByName("UnsafeRule")).thread);
+        assertNotEquals(Thread.currentThread(), ((RecordingRule) ruleset.getRuleByName("SafeRule1")).thread);
+        assertNotEquals(Thread.currentThread(), ((RecordingRule) ruleset.getRuleByName("SafeRule2")).thread);
+    }
+
+    private static class RecordingRule extends MockRule {
+        private volatile Thread thread;
+
+        RecordingRule(String name) {
+            setName(name);
+            addRuleChainVisit("dummyNode");
+        }
+
+        @Override
+        public void apply(List<? extends Node> nodes, RuleContext ctx) {
+            thread = Thread.currentThread();
+            for (Node node : nodes) {
+                addViolationWithMessage(ctx, node, "Test violation of " + getName());
+            }
+        }
+    }
+
+    @ThreadSafe
+    private static class ThreadSafeRecordingRule extends RecordingRule {
+        ThreadSafeRecordingRule(String name) {
+            super(name);
+        }
+    }
 }
@@ -0,0 +1,86 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AuxClasspathIndexTest {
+
+    private static final String JAR = "file:/lib/a.jar";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File createIndexFile() throws IOException {
+        final File file = new File(tempFolder.getRoot(), "cache.auxclasspath");
+        final AuxClasspathIndex index = new AuxClasspathIndex(file, 1L, Collections.singletonMap(JAR, 2L), true);
+        index.putImportedClasses("a.A", new URL("jar:" + JAR + "!/a/A.class"),
+                Collections.singletonMap("List", "java.util.List"));
+        // not contained in a jar of the auxclasspath
+        index.putImportedClasses("b.B", new URL("file:/classes/b/B.class"),
+                Collections.singletonMap("Map", "java.util.Map"));
+        index.addMissing("a.Missing");
+        index.persist();
+        return file;
+    }
+
+    @Test
+    public void testDataIsReusedForUnchangedClasspath() throws IOException {
+        final File file = createIndexFile();
+
+        final AuxClasspathIndex reloaded = new AuxClasspathIndex(file, 1L, Collections.singletonMap(JAR, 2L), true);
+        assertEquals("java.util.List", reloaded.getImportedClasses("a.A").get("List"));
+        assertNull(reloaded.getImportedClasses("b.B"));
+        assertTrue(reloaded.isMissing("a.Missing"));
+        assertFalse(reloaded.isMissing("a.A"));
+    }
+
+    @Test
+    public void testMissingNamesAreDroppedForChangedClasspath() throws IOException {
+        final File file = createIndexFile();
+
+        final Map<String, Long> jars = new HashMap<>();
+        jars.put(JAR, 2L);
+        jars.put("file:/lib/b.jar", 3L);
+        final AuxClasspathIndex reloaded = new AuxClasspathIndex(file, 4L, jars, true);
+        // the unchanged jar is still valid, but the missing class might be in the new one
+        assertEquals("java.util.List", reloaded.getImportedClasses("a.A").get("List"));
+        assertFalse(reloaded.isMissing("a.Missing"));
+    }
+
+    @Test
+    public void testImportedClassesAreDroppedForChangedJar() throws IOException {
+        final File file = createIndexFile();
+
+        final AuxClasspathIndex reloaded = new AuxClasspathIndex(file, 4L, Collections.singletonMap(JAR, 5L), true);
+        assertNull(reloaded.getImportedClasses("a.A"));
+        reloaded.persist();
+
+        final AuxClasspathIndex thirdRun = new AuxClasspathIndex(file, 4L, Collections.singletonMap(JAR, 2L), true);
+        assertNull(thirdRun.getImportedClasses("a.A"));
+    }
+
+    @Test
+    public void testMissingNamesAreNotKeptForDirectories() throws IOException {
+        final File file = new File(tempFolder.getRoot(), "cache.auxclasspath");
+        final AuxClasspathIndex index = new AuxClasspathIndex(file, 1L, Collections.<String, Long>emptyMap(), false);
+        index.addMissing("a.Missing");
+        assertFalse(index.isMissing("a.Missing"));
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.lang.Language;
+
+public class CachedViolationListTest {
+
+    @Test
+    public void testStringsAreStoredOncePerFile() {
+        final CachedViolationList violations = new CachedViolationList(new CachedRuleMapper());
+        // equal, but not identical strings
+        violations.add(mockViolation(1, new String("message"), null));
+        violations.add(mockViolation(2, new String("message"), "var"));
+
+        assertEquals(2, violations.size());
+        final RuleViolation first = violations.get(0);
+        final RuleViolation second = violations.get(1);
+        assertEquals(1, first.getBeginLine());
+        assertEquals(2, second.getBeginLine());
+        assertEquals("message", first.getDescription());
+        assertSame(first.getDescription(), second.getDescription());
+        assertSame(first.getFilename(), second.getFilename());
+        assertNull(first.getVariableName());
+        assertEquals("var", second.getVariableName());
+        assertEquals("net.sourceforge.pmd.SomeRule$$SomeRule$$dummy", ((CachedRuleViolation) first).getRuleKey());
+    }
+
+    @Test
+    public void testAddFromStream() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            CachedRuleViolation.storeToStream(out, mockViolation(3, "message", null));
+            CachedRuleViolation.storeToStream(out, mockViolation(5, "message", null));
+        }
+
+        final CachedViolationList violations = new CachedViolationList(new CachedRuleMapper(), 2);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            violations.addFromStream(in, "Other.java");
+            violations.addFromStream(in, "Other.java");
+        }
+
+        assertEquals(2, violations.size());
+        assertEquals("Other.java", violations.get(1).getFilename());
+        assertEquals(5, violations.get(1).getBeginLine());
+        assertSame(violations.get(0).getDescription(), violations.get(1).getDescription());
+        // stored nulls are read back as empty strings
+        assertEquals("", violations.get(0).getVariableName());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetOutOfBounds() {
+        new CachedViolationList(new CachedRuleMapper()).get(0);
+    }
+
+    private static RuleViolation mockViolation(final int line, final String description, final String variable) {
+        final Rule rule = mock(Rule.class);
+        final Language language = mock(Language.class);
+        when(language.getTerseName()).thenReturn("dummy");
+        when(rule.getLanguage()).thenReturn(language);
+        when(rule.getName()).thenReturn("SomeRule");
+        when(rule.getRuleClass()).thenReturn("net.sourceforge.pmd.SomeRule");
+
+        final RuleViolation rv = mock(RuleViolation.class);
+        when(rv.getFilename()).thenReturn(new String("Foo.java"));
+        when(rv.getRule()).thenReturn(rule);
+        when(rv.getDescription()).thenReturn(description);
+        when(rv.getVariableName()).thenReturn(variable);
+        when(rv.getBeginLine()).thenReturn(line);
+        return rv;
+    }
+}
@@ -20,8 +20,12 @@ import java.net.URLClassLoader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -129,7 +133,7 @@ public class FileAnalysisCacheTest {
     }
 
     @Test
-    public void testRulesetChangeInvalidatesCache() {
+    public void testRulesetChangeWithoutRuleChangeDoesNotInvalidateCache() {
         final RuleSets rs = mock(RuleSets.class);
         final ClassLoader cl = mock(ClassLoader.class);
         
@@ -138,10 +142,46 @@ public class FileAnalysisCacheTest {
         final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
         when(rs.getChecksum()).thenReturn(1L);
         reloadedCache.checkValidity(rs, cl);
-        assertFalse("Cache believes unmodified file is up to date after ruleset changed",
+        assertTrue("Cache believes unmodified file is not up to date after ruleset changed without rule changes",
                 reloadedCache.isUpToDate(sourceFile));
     }
-    
+
+    @Test
+    public void testRuleChangeOnlyInvalidatesChangedRules() {
+        final net.sourceforge.pmd.Rule unchangedRule = mockRule("UnchangedRule");
+        final net.sourceforge.pmd.Rule changedRule = mockRule("ChangedRule");
+        final net.sourceforge.pmd.Rule removedRule = mockRule("RemovedRule");
+        final net.sourceforge.pmd.Rule addedRule = mockRule("AddedRule");
+        final ClassLoader cl = mock(ClassLoader.class);
+
+        final RuleSets rs = mock(RuleSets.class);
+        when(rs.getRuleChecksums()).thenReturn(ruleChecksums(unchangedRule, 1L, changedRule, 2L, removedRule, 3L));
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        cache.checkValidity(rs, cl);
+        cache.isUpToDate(sourceFile);
+        cache.ruleViolationAdded(mockViolation(unchangedRule));
+        cache.ruleViolationAdded(mockViolation(changedRule));
+        cache.ruleViolationAdded(mockViolation(removedRule));
+        cache.persist();
+
+        final RuleSets changedRs = mock(RuleSets.class);
+        when(changedRs.getChecksum()).thenReturn(1L);
+        when(changedRs.getRuleChecksums()).thenReturn(ruleChecksums(unchangedRule, 1L, changedRule, 5L, addedRule, 4L));
+        when(changedRs.getAllRules()).thenReturn(new HashSet<>(Arrays.asList(unchangedRule, changedRule, addedRule)));
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(changedRs, cl);
+
+        assertTrue("Cache believes unmodified file is not up to date after a rule changed",
+                reloadedCache.isUpToDate(sourceFile));
+        assertTrue("Cache believes unchanged rule is not up to date", reloadedCache.isUpToDate(unchangedRule));
+        assertFalse("Cache believes changed rule is up to date", reloadedCache.isUpToDate(changedRule));
+        assertFalse("Cache believes added rule is up to date", reloadedCache.isUpToDate(addedRule));
+
+        final List<RuleViolation> cachedViolations = reloadedCache.getCachedViolations(sourceFile);
+        assertEquals("Only violations of unchanged rules should be cached", 1, cachedViolations.size());
+        assertEquals("UnchangedRule", cachedViolations.get(0).getRule().getName());
+    }
+
     @Test
     public void testAuxClasspathNonExistingAuxclasspathEntriesIgnored() throws MalformedURLException, IOException {
         final RuleSets rs = mock(RuleSets.class);
@@ -349,6 +389,164 @@ public class FileAnalysisCacheTest {
                 cache.isUpToDate(sourceFile));
     }
 
+    @Test
+    public void testFileWithUnchangedMetadataIsNotRead() throws IOException {
+        Files.write(sourceFile.toPath(), "first".getBytes(StandardCharsets.UTF_8));
+        final long lastModified = System.currentTimeMillis() - 10000;
+        sourceFile.setLastModified(lastModified);
+        setupCacheWithFiles(newCacheFile, mock(RuleSets.class), mock(ClassLoader.class), sourceFile);
+
+        // Edit the file, keeping size and modification time
+        Files.write(sourceFile.toPath(), "other".getBytes(StandardCharsets.UTF_8));
+        sourceFile.setLastModified(lastModified);
+
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        assertTrue("Cache read a file with unchanged size and modification time",
+                cache.isUpToDate(sourceFile));
+    }
+
+    @Test
+    public void testFileWithChangedModificationTimeIsRead() throws IOException {
+        Files.write(sourceFile.toPath(), "first".getBytes(StandardCharsets.UTF_8));
+        final long lastModified = System.currentTimeMillis() - 10000;
+        sourceFile.setLastModified(lastModified);
+        setupCacheWithFiles(newCacheFile, mock(RuleSets.class), mock(ClassLoader.class), sourceFile);
+
+        // Only touch the file, the content stays the same
+        sourceFile.setLastModified(lastModified + 5000);
+        assertTrue("Cache believes a touched, unchanged file is not up to date",
+                new FileAnalysisCache(newCacheFile).isUpToDate(sourceFile));
+
+        // Edit the file, keeping the size
+        Files.write(sourceFile.toPath(), "other".getBytes(StandardCharsets.UTF_8));
+        sourceFile.setLastModified(lastModified + 5000);
+        assertFalse("Cache believes a changed file of the same size is up to date",
+                new FileAnalysisCache(newCacheFile).isUpToDate(sourceFile));
+    }
+
+    @Test
+    public void testAuxClasspathJarWithUnchangedMetadataIsNotRead() throws IOException {
+        final RuleSets rs = mock(RuleSets.class);
+        final URLClassLoader cl = mock(URLClassLoader.class);
+
+        final File classpathFile = tempFolder.newFile();
+        Files.write(classpathFile.toPath(), "first".getBytes(StandardCharsets.UTF_8));
+        final long lastModified = System.currentTimeMillis() - 10000;
+        classpathFile.setLastModified(lastModified);
+        when(cl.getURLs()).thenReturn(new URL[] { classpathFile.toURI().toURL(), });
+
+        final net.sourceforge.pmd.Rule r = mock(net.sourceforge.pmd.Rule.class);
+        when(r.isDfa()).thenReturn(true);
+        when(r.getLanguage()).thenReturn(mock(Language.class));
+        when(rs.getAllRules()).thenReturn(Collections.singleton(r));
+
+        setupCacheWithFiles(newCacheFile, rs, cl, sourceFile);
+
+        // Edit the auxclasspath referenced file, keeping size and modification time
+        Files.write(classpathFile.toPath(), "other".getBytes(StandardCharsets.UTF_8));
+        classpathFile.setLastModified(lastModified);
+
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(rs, cl);
+        assertTrue("Cache read an auxclasspath file with unchanged size and modification time",
+                reloadedCache.isUpToDate(sourceFile));
+    }
+
+    @Test
+    public void testPersistKeepsUnchangedAndUpdatesChangedFiles() throws IOException {
+        final RuleSets rs = mock(RuleSets.class);
+        final ClassLoader cl = mock(ClassLoader.class);
+        final File otherSourceFile = tempFolder.newFile("Other.java");
+        setupCacheWithFiles(newCacheFile, rs, cl, sourceFile, otherSourceFile);
+
+        // Edit one of the files and analyze again
+        Files.write(Paths.get(otherSourceFile.getAbsolutePath()), "some text".getBytes());
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        cache.checkValidity(rs, cl);
+        assertTrue(cache.isUpToDate(sourceFile));
+        assertFalse(cache.isUpToDate(otherSourceFile));
+
+        final RuleViolation rv = mock(RuleViolation.class);
+        when(rv.getFilename()).thenReturn(otherSourceFile.getPath());
+        final net.sourceforge.pmd.Rule rule = mock(net.sourceforge.pmd.Rule.class, Mockito.RETURNS_SMART_NULLS);
+        when(rule.getLanguage()).thenReturn(mock(Language.class));
+        when(rv.getRule()).thenReturn(rule);
+        cache.ruleViolationAdded(rv);
+        cache.persist();
+
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(rs, cl);
+        assertTrue("Cache believes unmodified file is not up to date", reloadedCache.isUpToDate(sourceFile));
+        assertTrue("Cache believes updated file is not up to date", reloadedCache.isUpToDate(otherSourceFile));
+        assertEquals(0, reloadedCache.getCachedViolations(sourceFile).size());
+        assertEquals("Cached rule violations count mismatch", 1,
+                reloadedCache.getCachedViolations(otherSourceFile).size());
+    }
+
+    @Test
+    public void testPersistAfterConcurrentChangeRewritesFile() throws IOException {
+        final RuleSets rs = mock(RuleSets.class);
+        final ClassLoader cl = mock(ClassLoader.class);
+        final File otherSourceFile = tempFolder.newFile("Other.java");
+        setupCacheWithFiles(newCacheFile, rs, cl, sourceFile);
+
+        // Two runs load the same cache file, the first one appends to it
+        final FileAnalysisCache first = new FileAnalysisCache(newCacheFile);
+        final FileAnalysisCache second = new FileAnalysisCache(newCacheFile);
+        first.checkValidity(rs, cl);
+        first.isUpToDate(sourceFile);
+        first.isUpToDate(otherSourceFile);
+        first.persist();
+
+        // The second one must not append to the changed file
+        second.checkValidity(rs, cl);
+        second.isUpToDate(sourceFile);
+        assertEquals(0, second.getCachedViolations(sourceFile).size());
+        second.persist();
+
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(rs, cl);
+        assertTrue("Cache believes unmodified file is not up to date", reloadedCache.isUpToDate(sourceFile));
+        assertFalse("Cache kept a file of the overwritten run", reloadedCache.isUpToDate(otherSourceFile));
+    }
+
+    @Test
+    public void testOldCacheFormatIsIgnored() throws IOException {
+        Files.write(newCacheFile.toPath(), "\u0000\u0005old format".getBytes(StandardCharsets.UTF_8));
+
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        assertFalse("Cache believes an unknown file is up to date", cache.isUpToDate(sourceFile));
+        cache.persist();
+
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        assertTrue("Cache believes unmodified file is not up to date", reloadedCache.isUpToDate(sourceFile));
+    }
+
+    private static net.sourceforge.pmd.Rule mockRule(final String name) {
+        final net.sourceforge.pmd.Rule rule = mock(net.sourceforge.pmd.Rule.class);
+        final Language language = mock(Language.class);
+        when(language.getTerseName()).thenReturn("dummy");
+        when(rule.getLanguage()).thenReturn(language);
+        when(rule.getName()).thenReturn(name);
+        when(rule.getRuleClass()).thenReturn("net.sourceforge.pmd." + name);
+        return rule;
+    }
+
+    private RuleViolation mockViolation(final net.sourceforge.pmd.Rule rule) {
+        final RuleViolation rv = mock(RuleViolation.class);
+        when(rv.getFilename()).thenReturn(sourceFile.getPath());
+        when(rv.getRule()).thenReturn(rule);
+        return rv;
+    }
+
+    private static Map<net.sourceforge.pmd.Rule, Long> ruleChecksums(final Object... rulesAndChecksums) {
+        final Map<net.sourceforge.pmd.Rule, Long> checksums = new HashMap<>();
+        for (int i = 0; i < rulesAndChecksums.length; i += 2) {
+            checksums.put((net.sourceforge.pmd.Rule) rulesAndChecksums[i], (Long) rulesAndChecksums[i + 1]);
+        }
+        return checksums;
+    }
+
     private void setupCacheWithFiles(final File cacheFile, final RuleSets ruleSets,
             final ClassLoader classLoader, final File... files) {
         // Setup a cache file with an entry for an empty Source.java with no violations
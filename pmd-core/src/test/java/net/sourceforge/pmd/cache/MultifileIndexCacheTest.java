@@ -0,0 +1,65 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MultifileIndexCacheTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testDataIsReusedForUnchangedFiles() throws IOException {
+        final File file = new File(tempFolder.getRoot(), "cache.multifile");
+        final MultifileIndexCache index = new MultifileIndexCache(file);
+        index.put("Foo.java", "java 11", 1L, new byte[] {1, 2, 3});
+        index.put("Bar.java", "java 11", 2L, new byte[] {4});
+        index.persist();
+
+        final MultifileIndexCache reloaded = new MultifileIndexCache(file);
+        assertArrayEquals(new byte[] {1, 2, 3}, reloaded.get("Foo.java", "java 11", 1L));
+        // changed content or language version
+        assertNull(reloaded.get("Bar.java", "java 11", 3L));
+        assertNull(reloaded.get("Bar.java", "java 1.4", 2L));
+        assertNull(reloaded.get("Baz.java", "java 11", 1L));
+    }
+
+    @Test
+    public void testOnlyDataOfCurrentFilesIsPersisted() throws IOException {
+        final File file = new File(tempFolder.getRoot(), "cache.multifile");
+        final MultifileIndexCache index = new MultifileIndexCache(file);
+        index.put("Foo.java", "java 11", 1L, new byte[] {1});
+        index.put("Bar.java", "java 11", 2L, new byte[] {2});
+        index.persist();
+
+        // Bar.java has been removed, Baz.java is new
+        final MultifileIndexCache secondRun = new MultifileIndexCache(file);
+        assertArrayEquals(new byte[] {1}, secondRun.get("Foo.java", "java 11", 1L));
+        secondRun.put("Baz.java", "java 11", 3L, new byte[] {3});
+        secondRun.persist();
+
+        final MultifileIndexCache reloaded = new MultifileIndexCache(file);
+        assertArrayEquals(new byte[] {1}, reloaded.get("Foo.java", "java 11", 1L));
+        assertNull(reloaded.get("Bar.java", "java 11", 2L));
+        assertArrayEquals(new byte[] {3}, reloaded.get("Baz.java", "java 11", 3L));
+    }
+
+    @Test
+    public void testChecksumOfContent() {
+        assertEquals(MultifileIndexCache.computeChecksum(new byte[] {1, 2}),
+                MultifileIndexCache.computeChecksum(new byte[] {1, 2}));
+        assertEquals(1L, MultifileIndexCache.computeChecksum(new byte[0]));
+    }
+}
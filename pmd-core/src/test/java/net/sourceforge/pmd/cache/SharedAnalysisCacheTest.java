@@ -0,0 +1,212 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.RuleSetFactory;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.lang.rule.MockRule;
+
+public class SharedAnalysisCacheTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File cacheDirectory;
+    private PMDConfiguration configuration;
+
+    @Before
+    public void setUp() throws IOException {
+        cacheDirectory = tempFolder.newFolder("shared-cache");
+        configuration = new PMDConfiguration();
+        configuration.setSourceEncoding("UTF-8");
+    }
+
+    @Test
+    public void testIdenticalFileInOtherLocationIsCacheHit() throws IOException {
+        final File sourceFile = newSourceFile("branch1", "class Foo {}");
+        analyze(ruleSets("message"), sourceFile, true);
+
+        final File copiedFile = newSourceFile("branch2", "class Foo {}");
+        final SharedAnalysisCache cache = newCache(ruleSets("message"));
+        assertTrue("Cache believes identical file is not up to date", cache.isUpToDate(copiedFile));
+
+        final List<RuleViolation> violations = cache.getCachedViolations(copiedFile);
+        assertEquals(1, violations.size());
+        assertEquals("SomeRule", violations.get(0).getRule().getName());
+        assertEquals(copiedFile.getPath(), violations.get(0).getFilename());
+    }
+
+    @Test
+    public void testChangedFileIsCacheMiss() throws IOException {
+        final File sourceFile = newSourceFile("branch1", "class Foo {}");
+        analyze(ruleSets("message"), sourceFile, false);
+
+        final File changedFile = newSourceFile("branch2", "class Bar {}");
+        assertFalse("Cache believes changed file is up to date", newCache(ruleSets("message")).isUpToDate(changedFile));
+    }
+
+    @Test
+    public void testChangedRuleIsCacheMiss() throws IOException {
+        final File sourceFile = newSourceFile("branch1", "class Foo {}");
+        analyze(ruleSets("message"), sourceFile, false);
+
+        assertTrue("Cache believes unchanged file is not up to date", newCache(ruleSets("message")).isUpToDate(sourceFile));
+        assertFalse("Cache believes file is up to date after a rule changed",
+                newCache(ruleSets("changed message")).isUpToDate(sourceFile));
+    }
+
+    @Test
+    public void testOtherApplicableRulesAreCacheMiss() throws IOException {
+        final File sourceFile = newSourceFile("branch1", "class Foo {}");
+        analyze(ruleSets("message", ".*/branch2/.*"), sourceFile, true);
+
+        final File excludedFile = newSourceFile("branch2", "class Foo {}");
+        assertFalse("Cache believes file is up to date, although the rule doesn't apply at its location",
+                newCache(ruleSets("message", ".*/branch2/.*")).isUpToDate(excludedFile));
+    }
+
+    @Test
+    public void testChangedEncodingIsCacheMiss() throws IOException {
+        final File sourceFile = newSourceFile("branch1", "class Foo {}");
+        analyze(ruleSets("message"), sourceFile, false);
+
+        configuration.setSourceEncoding("ISO-8859-1");
+        assertFalse("Cache believes file is up to date after the encoding changed",
+                newCache(ruleSets("message")).isUpToDate(sourceFile));
+    }
+
+    @Test
+    public void testFileOfUnknownLanguageIsCacheMiss() throws IOException {
+        final File sourceFile = new File(tempFolder.newFolder("branch1"), "Foo.unknown");
+        Files.write(sourceFile.toPath(), "class Foo {}".getBytes(StandardCharsets.UTF_8));
+        final SharedAnalysisCache cache = newCache(ruleSets("message"));
+        assertFalse("Cache believes file of unknown language is up to date", cache.isUpToDate(sourceFile));
+        cache.persist();
+
+        assertEquals("File of unknown language must not be stored", 0, cacheDirectory.list().length);
+    }
+
+    @Test
+    public void testFailedStoreDoesNotStopPersist() throws IOException {
+        final File sourceFile = newSourceFile("branch1", "class Foo {}");
+        final File otherFile = newSourceFile("branch2", "class Bar {}");
+        final Map<String, byte[]> entries = new HashMap<>();
+        final AnalysisCacheBackend backend = new AnalysisCacheBackend() {
+            private boolean failed;
+
+            @Override
+            public byte[] get(final String key) {
+                return entries.get(key);
+            }
+
+            @Override
+            public void put(final String key, final byte[] entry) throws IOException {
+                if (!failed) {
+                    failed = true;
+                    throw new IOException("disk full");
+                }
+                entries.put(key, entry);
+            }
+        };
+
+        final SharedAnalysisCache cache = new SharedAnalysisCache(backend, configuration);
+        cache.checkValidity(ruleSets("message"), mock(ClassLoader.class));
+        cache.isUpToDate(sourceFile);
+        cache.isUpToDate(otherFile);
+        cache.persist();
+        assertEquals("The entry after the failed one must still be stored", 1, entries.size());
+    }
+
+    @Test
+    public void testFailedAnalysisIsNotStored() throws IOException {
+        final File sourceFile = newSourceFile("branch1", "class Foo {}");
+        final SharedAnalysisCache cache = newCache(ruleSets("message"));
+        cache.isUpToDate(sourceFile);
+        cache.analysisFailed(sourceFile);
+        cache.persist();
+
+        assertFalse("Cache believes file of failed analysis is up to date",
+                newCache(ruleSets("message")).isUpToDate(sourceFile));
+    }
+
+    @Test
+    public void testDirectoryBackendStoresEntriesAtomically() throws IOException {
+        final DirectoryAnalysisCacheBackend backend = new DirectoryAnalysisCacheBackend(cacheDirectory);
+        assertNull(backend.get("abc-1"));
+
+        backend.put("abc-1", new byte[] {1, 2, 3});
+        backend.put("abc-1", new byte[] {1, 2, 3});
+        assertArrayEquals(new byte[] {1, 2, 3}, backend.get("abc-1"));
+
+        // no temporary files are left behind
+        assertEquals(1, new File(cacheDirectory, "ab").list().length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDirectoryBackendRejectsPaths() throws IOException {
+        new DirectoryAnalysisCacheBackend(cacheDirectory).get("../other");
+    }
+
+    private void analyze(final RuleSets ruleSets, final File sourceFile, final boolean withViolation) {
+        final SharedAnalysisCache cache = newCache(ruleSets);
+        assertFalse(cache.isUpToDate(sourceFile));
+        if (withViolation) {
+            final RuleViolation rv = mock(RuleViolation.class);
+            when(rv.getFilename()).thenReturn(sourceFile.getPath());
+            when(rv.getRule()).thenReturn(newRule("message"));
+            cache.ruleViolationAdded(rv);
+        }
+        cache.persist();
+    }
+
+    private SharedAnalysisCache newCache(final RuleSets ruleSets) {
+        final SharedAnalysisCache cache = new SharedAnalysisCache(new DirectoryAnalysisCacheBackend(cacheDirectory),
+                configuration);
+        cache.checkValidity(ruleSets, mock(ClassLoader.class));
+        return cache;
+    }
+
+    private static RuleSets ruleSets(final String message, final String... excludePatterns) {
+        return new RuleSets(new RuleSetFactory().createNewRuleSet("ruleset", "description", "ruleset.xml",
+                Arrays.asList(excludePatterns), Collections.<String>emptyList(),
+                Collections.<net.sourceforge.pmd.Rule>singletonList(newRule(message))));
+    }
+
+    private static net.sourceforge.pmd.Rule newRule(final String message) {
+        // the rule applies to the files of the dummy language
+        return new MockRule("SomeRule", "description", message, "ruleset");
+    }
+
+    private File newSourceFile(final String folder, final String content) throws IOException {
+        final File file = new File(tempFolder.newFolder(folder), "Foo.dummy");
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
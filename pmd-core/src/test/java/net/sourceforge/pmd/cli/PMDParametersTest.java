@@ -8,6 +8,9 @@ import org.apache.commons.lang3.reflect.FieldUtils;
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.ParameterException;
+
 public class PMDParametersTest {
 
     @Test
@@ -20,4 +23,24 @@ public class PMDParametersTest {
         FieldUtils.writeDeclaredField(parameters, "language", "dummy2", true);
         Assert.assertEquals("1.0", parameters.getVersion());
     }
+
+    @Test
+    public void testMaxFilesInFlight() {
+        PMDParameters parameters = new PMDParameters();
+        new JCommander(parameters).parse("-d", "src", "-R", "rules.xml", "-max-files-in-flight", "4");
+        Assert.assertEquals(4, parameters.getMaxFilesInFlight());
+    }
+
+    @Test(expected = ParameterException.class)
+    public void testMaxFilesInFlightMustBePositive() {
+        new JCommander(new PMDParameters()).parse("-d", "src", "-R", "rules.xml", "-max-files-in-flight", "0");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConflictingProcessorOptions() {
+        PMDParameters parameters = new PMDParameters();
+        new JCommander(parameters).parse("-d", "src", "-R", "rules.xml", "-schedule-by-cost",
+                "-max-files-in-flight", "4");
+        parameters.toConfiguration();
+    }
 }
@@ -5,13 +5,20 @@
 package net.sourceforge.pmd.cpd;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.SystemUtils;
 import org.junit.Assert;
 import org.junit.Assume;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 /**
  * Unit test for {@link CPD}
@@ -21,6 +28,9 @@ public class CPDTest {
     private static final String BASE_TEST_RESOURCE_PATH = "src/test/resources/net/sourceforge/pmd/cpd/files/";
     private static final String TARGET_TEST_RESOURCE_PATH = "target/classes/net/sourceforge/pmd/cpd/files/";
 
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
     private CPD cpd;
 
     // Symlinks are not well supported under Windows - so the tests are
@@ -130,6 +140,102 @@ public class CPDTest {
         }
     }
 
+    @Test
+    public void testParallelTokenizationMatchesSerial() throws Exception {
+        List<File> files = Arrays.asList(new File(BASE_TEST_RESOURCE_PATH, "dup2.java"),
+                new File(BASE_TEST_RESOURCE_PATH, "dup1.java"),
+                new File(BASE_TEST_RESOURCE_PATH, "file_with_utf8_bom.java"),
+                new File(BASE_TEST_RESOURCE_PATH, "real-file.txt"));
+
+        List<String> serial = findMatches(files, 1, MatchEngine.HASH, null);
+        List<String> parallel = findMatches(files, 3, MatchEngine.HASH, null);
+
+        Assert.assertFalse(serial.isEmpty());
+        Assert.assertEquals(serial, parallel);
+    }
+
+    @Test
+    public void testParallelTokenizationOfManyFilesMatchesSerial() throws Exception {
+        // more files than the threads tokenize ahead of the appended files
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            File file = tempFolder.newFile("dup" + i + ".java");
+            FileUtils.copyFile(new File(BASE_TEST_RESOURCE_PATH, i % 2 == 0 ? "dup1.java" : "real-file.txt"), file);
+            files.add(file);
+        }
+
+        List<String> serial = findMatches(files, 1, MatchEngine.HASH, null);
+        List<String> parallel = findMatches(files, 2, MatchEngine.HASH, null);
+
+        Assert.assertFalse(serial.isEmpty());
+        Assert.assertEquals(serial, parallel);
+    }
+
+    @Test
+    public void testSuffixArrayEngineMatchesHashEngine() throws Exception {
+        List<File> files = Arrays.asList(new File(BASE_TEST_RESOURCE_PATH, "dup2.java"),
+                new File(BASE_TEST_RESOURCE_PATH, "dup1.java"),
+                new File(BASE_TEST_RESOURCE_PATH, "file_with_utf8_bom.java"),
+                new File(BASE_TEST_RESOURCE_PATH, "real-file.txt"));
+
+        List<String> hash = findMatches(files, 1, MatchEngine.HASH, null);
+        List<String> suffixArray = findMatches(files, 1, MatchEngine.SUFFIX_ARRAY, null);
+
+        Assert.assertFalse(hash.isEmpty());
+        Assert.assertEquals(hash, suffixArray);
+    }
+
+    @Test
+    public void testTokenCacheMatchesUncachedRun() throws Exception {
+        File changed = tempFolder.newFile("changed.java");
+        FileUtils.copyFile(new File(BASE_TEST_RESOURCE_PATH, "dup1.java"), changed);
+        List<File> files = Arrays.asList(new File(BASE_TEST_RESOURCE_PATH, "dup2.java"), changed,
+                new File(BASE_TEST_RESOURCE_PATH, "real-file.txt"));
+        File cache = new File(tempFolder.getRoot(), "cpd.cache");
+
+        List<String> uncached = findMatches(files, 1, MatchEngine.HASH, null);
+        Assert.assertEquals(uncached, findMatches(files, 1, MatchEngine.HASH, cache));
+        Assert.assertTrue(cache.isFile());
+        Assert.assertEquals(uncached, findMatches(files, 1, MatchEngine.HASH, cache));
+        Assert.assertEquals(uncached, findMatches(files, 3, MatchEngine.HASH, cache));
+
+        // only the changed file is tokenized again
+        FileUtils.write(changed, FileUtils.readFileToString(changed, StandardCharsets.UTF_8)
+                + FileUtils.readFileToString(new File(BASE_TEST_RESOURCE_PATH, "dup2.java"), StandardCharsets.UTF_8),
+                StandardCharsets.UTF_8);
+        uncached = findMatches(files, 1, MatchEngine.HASH, null);
+        Assert.assertEquals(uncached, findMatches(files, 3, MatchEngine.HASH, cache));
+        Assert.assertEquals(uncached, findMatches(files, 1, MatchEngine.HASH, cache));
+    }
+
+    private static List<String> findMatches(List<File> files, int threads, MatchEngine engine, File cache)
+            throws Exception {
+        CPDConfiguration configuration = new CPDConfiguration();
+        configuration.setLanguage(new CpddummyLanguage());
+        configuration.setMinimumTileSize(10);
+        configuration.setThreads(threads);
+        configuration.setMatchEngine(engine);
+        configuration.setCacheLocation(cache);
+        configuration.postContruct();
+        CPD cpd = new CPD(configuration);
+        cpd.add(files);
+        cpd.go();
+
+        List<String> matches = new ArrayList<>();
+        Iterator<Match> iterator = cpd.getMatches();
+        while (iterator.hasNext()) {
+            Match match = iterator.next();
+            StringBuilder description = new StringBuilder().append(match.getTokenCount());
+            for (Mark mark : match) {
+                description.append(' ').append(mark.getFilename()).append(':').append(mark.getBeginLine())
+                        .append('-').append(mark.getEndLine()).append('@').append(mark.getToken().getIndex())
+                        .append('#').append(mark.getToken().getIdentifier());
+            }
+            matches.add(description.toString());
+        }
+        return matches;
+    }
+
     /**
      * Simple listener that fails, if too many files were added and not skipped.
      */
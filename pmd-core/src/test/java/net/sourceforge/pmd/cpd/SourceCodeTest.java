@@ -37,6 +37,15 @@ public class SourceCodeTest {
         assertEquals("Line 1" + PMD.EOL + "Line 2", sourceCode.getSlice(1, 2));
     }
 
+    @Test
+    public void testSliceWithoutLoadedCode() {
+        // the code of files, whose tokens are cached, is only read for the slices
+        SourceCode sourceCode = new SourceCode(new SourceCode.StringCodeLoader(SAMPLE_CODE, "Foo.java"));
+
+        assertEquals("Line 2", sourceCode.getSlice(2, 2));
+        assertEquals("Line 2" + PMD.EOL + "Line 3", sourceCode.getSlice(2, 3));
+    }
+
     @Test
     public void testEncodingDetectionFromBOM() throws Exception {
         FileCodeLoader loader = new SourceCode.FileCodeLoader(new File(BASE_RESOURCE_PATH + "file_with_utf8_bom.java"),
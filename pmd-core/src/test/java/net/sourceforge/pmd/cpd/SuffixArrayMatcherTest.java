@@ -0,0 +1,65 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SuffixArrayMatcherTest {
+
+    @Test
+    public void testPeriodicInputMatchesHashEngine() {
+        assertEquals(findMatches(periodicTokens(500, 7), MatchEngine.HASH),
+                findMatches(periodicTokens(500, 7), MatchEngine.SUFFIX_ARRAY));
+        assertEquals(findMatches(periodicTokens(500, 1), MatchEngine.HASH),
+                findMatches(periodicTokens(500, 1), MatchEngine.SUFFIX_ARRAY));
+    }
+
+    /**
+     * The LCP intervals of periodic input are nested as deep as the input is long.
+     * Visiting all positions of each interval took quadratic time, more than
+     * ten seconds for this input.
+     */
+    @Test(timeout = 10000)
+    public void testPeriodicInputIsNotQuadratic() {
+        List<String> matches = findMatches(periodicTokens(200000, 5), MatchEngine.SUFFIX_ARRAY);
+        assertFalse(matches.isEmpty());
+    }
+
+    private static Tokens periodicTokens(int count, int period) {
+        TokenEntry.clearImages();
+        Tokens tokens = new Tokens();
+        for (int i = 0; i < count; i++) {
+            tokens.add(new TokenEntry("token" + i % period, "Periodic.java", i / period + 1));
+        }
+        tokens.add(TokenEntry.getEOF());
+        return tokens;
+    }
+
+    private static List<String> findMatches(Tokens tokens, MatchEngine engine) {
+        MatchAlgorithm algorithm = new MatchAlgorithm(Collections.<String, SourceCode>emptyMap(), tokens, 20,
+                new CPDNullListener(), engine);
+        algorithm.findMatches();
+
+        List<String> matches = new ArrayList<>();
+        Iterator<Match> iterator = algorithm.matches();
+        while (iterator.hasNext()) {
+            Match match = iterator.next();
+            StringBuilder description = new StringBuilder().append(match.getTokenCount());
+            for (Mark mark : match) {
+                description.append(' ').append(mark.getToken().getIndex());
+            }
+            matches.add(description.toString());
+        }
+        return matches;
+    }
+}
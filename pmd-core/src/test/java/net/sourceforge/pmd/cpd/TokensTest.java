@@ -0,0 +1,109 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TokensTest {
+
+    @Test
+    public void testTokensAreStoredByValue() {
+        TokenEntry.clearImages();
+        Tokens tokens = new Tokens();
+        TokenEntry first = new TokenEntry("public", "Foo.java", 1, 2, 7);
+        tokens.add(first);
+        tokens.add(new TokenEntry("class", "Bar.java", 3));
+        tokens.add(TokenEntry.getEOF());
+
+        assertEquals(3, tokens.size());
+        TokenEntry stored = tokens.getTokens().get(0);
+        assertEquals(first.getIdentifier(), stored.getIdentifier());
+        assertEquals("Foo.java", stored.getTokenSrcID());
+        assertEquals(1, stored.getBeginLine());
+        assertEquals(2, stored.getBeginColumn());
+        assertEquals(7, stored.getEndColumn());
+        assertEquals(0, stored.getIndex());
+        assertEquals("public", stored.toString());
+
+        assertEquals("Bar.java", tokens.getTokens().get(1).getTokenSrcID());
+        assertEquals(-1, tokens.getTokens().get(1).getBeginColumn());
+        assertEquals(1, tokens.getTokens().get(1).getIndex());
+        assertSame(TokenEntry.EOF, tokens.getTokens().get(2));
+    }
+
+    @Test
+    public void testManyTokens() {
+        TokenEntry.clearImages();
+        Tokens tokens = new Tokens();
+        int count = 100000;
+        for (int i = 0; i < count; i++) {
+            tokens.add(new TokenEntry("t" + i % 10, "Foo.java", i + 1));
+        }
+
+        assertEquals(count, tokens.size());
+        int i = 0;
+        for (TokenEntry token : tokens.getTokens()) {
+            assertEquals(i + 1, token.getBeginLine());
+            assertEquals(i, token.getIndex());
+            assertEquals("t" + i % 10, token.toString());
+            i++;
+        }
+        assertEquals(count, i);
+    }
+
+    @Test
+    public void testTokensCanBeReplacedAndRemovedFromTheEnd() {
+        TokenEntry.clearImages();
+        Tokens tokens = new Tokens();
+        tokens.add(new TokenEntry("a", "Foo.java", 1));
+        List<TokenEntry> saved = new ArrayList<>(tokens.getTokens());
+        tokens.add(new TokenEntry("b", "Foo.java", 2));
+        tokens.add(new TokenEntry("c", "Foo.java", 3));
+
+        TokenEntry changed = tokens.getTokens().get(1);
+        changed.setImage("d");
+        tokens.getTokens().set(1, changed);
+        assertEquals("d", tokens.getTokens().get(1).toString());
+
+        tokens.getTokens().clear();
+        tokens.getTokens().addAll(saved);
+        assertEquals(1, tokens.size());
+        assertEquals("a", tokens.getTokens().get(0).toString());
+
+        tokens.add(new TokenEntry("e", "Foo.java", 4));
+        assertEquals("e", tokens.getTokens().get(1).toString());
+        assertEquals(4, tokens.getTokens().get(1).getBeginLine());
+    }
+
+    @Test
+    public void testRestoreCheckpoint() {
+        TokenEntry.clearImages();
+        Tokens tokens = new Tokens();
+        tokens.add(new TokenEntry("a", "Foo.java", 1));
+        tokens.add(TokenEntry.getEOF());
+        Tokens.Checkpoint checkpoint = tokens.checkpoint();
+        tokens.add(new TokenEntry("b", "Bar.java", 1));
+        tokens.add(new TokenEntry("a", "Bar.java", 2));
+        tokens.add(new TokenEntry("c", "Bar.java", 3));
+
+        tokens.restore(checkpoint);
+        assertEquals(2, tokens.size());
+        assertEquals(1, TokenEntry.getImageCount());
+
+        // the identifiers and indexes of the removed tokens are used again
+        TokenEntry next = new TokenEntry("c", "Baz.java", 1);
+        tokens.add(next);
+        assertEquals(2, next.getIdentifier());
+        assertEquals(2, next.getIndex());
+        assertEquals("c", tokens.getTokens().get(2).toString());
+        assertEquals("Baz.java", tokens.getTokens().get(2).getTokenSrcID());
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import net.sourceforge.pmd.lang.ast.Node;
+
+public class BasicMetricMemoizerTest {
+
+    @Test
+    public void testNaNIsMemoized() {
+        BasicMetricMemoizer<Node> memoizer = new BasicMetricMemoizer<>();
+        ParameterizedMetricKey<Node> key = newKey("nan");
+
+        assertNull(memoizer.getMemo(key));
+        memoizer.memoize(key, Double.NaN);
+        assertEquals(Double.NaN, memoizer.getMemo(key), 0);
+    }
+
+    @Test
+    public void testMemoizeManyKeys() {
+        BasicMetricMemoizer<Node> memoizer = new BasicMetricMemoizer<>();
+        List<ParameterizedMetricKey<Node>> keys = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            keys.add(newKey("many" + i));
+        }
+
+        for (int i = keys.size() - 1; i >= 0; i -= 2) {
+            memoizer.memoize(keys.get(i), i);
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            if (i % 2 == 1) {
+                assertEquals(i, memoizer.getMemo(keys.get(i)), 0);
+            } else {
+                assertNull(memoizer.getMemo(keys.get(i)));
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentMemoization() throws Exception {
+        final BasicMetricMemoizer<Node> memoizer = new BasicMetricMemoizer<>();
+        final List<ParameterizedMetricKey<Node>> keys = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            keys.add(newKey("concurrent" + i));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        for (int i = 0; i < keys.size(); i++) {
+                            Double memo = memoizer.getMemo(keys.get(i));
+                            if (memo == null) {
+                                memoizer.memoize(keys.get(i), i * 0.5);
+                            } else {
+                                assertEquals(i * 0.5, memo, 0);
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (int i = 0; i < keys.size(); i++) {
+            Double memo = memoizer.getMemo(keys.get(i));
+            // a result memoized while the slots were grown may be lost
+            if (memo != null) {
+                assertEquals(i * 0.5, memo, 0);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ParameterizedMetricKey<Node> newKey(String name) {
+        MetricKey<Node> key = MetricKeyUtil.of(BasicMetricMemoizerTest.class.getName() + name, mock(Metric.class));
+        return ParameterizedMetricKey.getInstance(key, MetricOptions.emptyOptions());
+    }
+}
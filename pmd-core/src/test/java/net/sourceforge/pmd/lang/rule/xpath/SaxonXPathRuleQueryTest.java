@@ -4,14 +4,19 @@
 
 package net.sourceforge.pmd.lang.rule.xpath;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 
 import org.junit.Assert;
 import org.junit.Test;
 
 import net.sourceforge.pmd.RuleContext;
+import net.sourceforge.pmd.lang.ast.DummyNode;
 import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.ast.xpath.saxon.DocumentNode;
 import net.sourceforge.pmd.properties.PropertyDescriptor;
 
 public class SaxonXPathRuleQueryTest {
@@ -31,6 +36,67 @@ public class SaxonXPathRuleQueryTest {
         assertQuery(0, "//dummyNode[@EmptyList = (\"A\")]", dummy);
     }
 
+    @Test
+    public void testDocumentNodeIsBuiltOncePerFile() {
+        DummyNodeWithListAndEnum dummy = new DummyNodeWithListAndEnum(1);
+        RuleContext ctx = new RuleContext();
+
+        Assert.assertEquals(1, createQuery("//dummyNode[@List = \"A\"]").evaluate(dummy, ctx).size());
+        DocumentNode documentNode = ctx.getXPathDocument();
+        Assert.assertNotNull(documentNode);
+        Assert.assertEquals(1, createQuery("//dummyNode[@Enum = \"FOO\"]").evaluate(dummy, ctx).size());
+        Assert.assertSame(documentNode, ctx.getXPathDocument());
+
+        // another file
+        DummyNodeWithListAndEnum other = new DummyNodeWithListAndEnum(1);
+        Assert.assertEquals(1, createQuery("//dummyNode[@List = \"A\"]").evaluate(other, ctx).size());
+        Assert.assertNotSame(documentNode, ctx.getXPathDocument());
+    }
+
+    @Test
+    public void testRuleChainVisits() {
+        Assert.assertEquals(Arrays.asList("dummyNode", "other"),
+                createQuery("//dummyNode[@Enum = \"FOO\"] | //other").getRuleChainVisits());
+        Assert.assertEquals(Collections.singletonList("other"), createQuery("//other[@Image]/dummyNode").getRuleChainVisits());
+        // positional predicates and paths, that might select a node twice, can't be split
+        Assert.assertEquals(Collections.emptyList(), createQuery("//dummyNode[1]").getRuleChainVisits());
+        Assert.assertEquals(Collections.emptyList(), createQuery("//other/dummyNode | //dummyNode").getRuleChainVisits());
+        Assert.assertEquals(Collections.emptyList(), createQuery("/dummyRootNode//dummyNode").getRuleChainVisits());
+    }
+
+    @Test
+    public void testRuleChainEvaluationMatchesFullEvaluation() {
+        DummyNode root = new DummyNode(0, false, "dummyRootNode");
+        DummyNodeWithListAndEnum first = new DummyNodeWithListAndEnum(1);
+        DummyNode other = new DummyNode(2, false, "other");
+        DummyNodeWithListAndEnum nested = new DummyNodeWithListAndEnum(3);
+        addChild(root, first);
+        addChild(root, other);
+        addChild(other, nested);
+
+        for (String xpath : Arrays.asList("//dummyNode[@Enum = \"FOO\"] | //other", "//other/dummyNode")) {
+            SaxonXPathRuleQuery query = createQuery(xpath);
+            Assert.assertFalse(query.getRuleChainVisits().isEmpty());
+            RuleContext ctx = new RuleContext();
+            List<Node> expected = query.evaluate(root, ctx);
+
+            List<Node> actual = new ArrayList<>();
+            for (Node node : Arrays.asList(first, other, nested)) {
+                if (query.getRuleChainVisits().contains(node.getXPathNodeName())) {
+                    actual.addAll(query.evaluate(node, ctx));
+                }
+            }
+            // the violations are sorted by the report anyway
+            Assert.assertEquals(expected.size(), actual.size());
+            Assert.assertEquals(new HashSet<>(expected), new HashSet<>(actual));
+        }
+    }
+
+    private static void addChild(Node parent, Node child) {
+        child.jjtSetParent(parent);
+        parent.jjtAddChild(child, parent.getNumChildren());
+    }
+
     private static void assertQuery(int resultSize, String xpath, Node node) {
         SaxonXPathRuleQuery query = createQuery(xpath);
         List<Node> result = query.evaluate(node, new RuleContext());
@@ -0,0 +1,123 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.processor;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.RuleContext;
+import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.RulesetsFactoryUtils;
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.rule.AbstractRule;
+import net.sourceforge.pmd.renderers.AbstractIncrementingRenderer;
+import net.sourceforge.pmd.renderers.Renderer;
+import net.sourceforge.pmd.util.datasource.DataSource;
+import net.sourceforge.pmd.util.datasource.internal.AbstractDataSource;
+
+public class BoundedMultiThreadProcessorTest {
+
+    private static final int FILE_COUNT = 20;
+    private static final int MAX_FILES_IN_FLIGHT = 3;
+
+    @Test
+    public void testReportsAreRenderedWhileAnalyzing() throws IOException {
+        PMDConfiguration configuration = new PMDConfiguration();
+        configuration.setRuleSets("rulesets/MultiThreadProcessorTest/bounded.xml");
+        configuration.setThreads(2);
+        configuration.setMaxFilesInFlight(MAX_FILES_IN_FLIGHT);
+
+        List<DataSource> files = new ArrayList<>();
+        for (int i = 0; i < FILE_COUNT; i++) {
+            files.add(new StringDataSource("file" + i + ".dummy", "ABC"));
+        }
+
+        CountingRenderer renderer = new CountingRenderer();
+        renderer.setWriter(new StringWriter());
+        renderer.start();
+        new BoundedMultiThreadProcessor(configuration).processFiles(RulesetsFactoryUtils.defaultFactory(), files,
+                new RuleContext(), Collections.<Renderer>singletonList(renderer));
+        renderer.end();
+
+        Assert.assertEquals("Not all violations have been rendered", FILE_COUNT, renderer.renderedViolations);
+        Assert.assertTrue("Too many files in flight: " + renderer.maxFilesInFlight,
+                renderer.maxFilesInFlight <= MAX_FILES_IN_FLIGHT);
+    }
+
+    private static class StringDataSource extends AbstractDataSource {
+        private final String data;
+        private final String name;
+
+        StringDataSource(String name, String data) {
+            this.name = name;
+            this.data = data;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return new ByteArrayInputStream(data.getBytes("UTF-8"));
+        }
+
+        @Override
+        public String getNiceFileName(boolean shortNames, String inputFileName) {
+            return name;
+        }
+    }
+
+    public static class ViolationPerFileRule extends AbstractRule {
+        @Override
+        public void apply(List<? extends Node> nodes, RuleContext ctx) {
+            addViolation(ctx, nodes.get(0));
+        }
+    }
+
+    private static class CountingRenderer extends AbstractIncrementingRenderer {
+        private final AtomicInteger startedFiles = new AtomicInteger();
+        private int renderedViolations;
+        private int maxFilesInFlight;
+
+        /* default */ CountingRenderer() {
+            super("counting", "counts the files in flight");
+        }
+
+        @Override
+        public String defaultFileExtension() {
+            return null;
+        }
+
+        @Override
+        public void startFileAnalysis(DataSource dataSource) {
+            startedFiles.incrementAndGet();
+        }
+
+        @Override
+        public void renderFileReport(Report report) throws IOException {
+            if (!report.isEmpty()) {
+                maxFilesInFlight = Math.max(maxFilesInFlight, startedFiles.get() - renderedViolations);
+            }
+            super.renderFileReport(report);
+        }
+
+        @Override
+        public void renderFileViolations(Iterator<RuleViolation> violations) throws IOException {
+            while (violations.hasNext()) {
+                violations.next();
+                renderedViolations++;
+            }
+        }
+    }
+}
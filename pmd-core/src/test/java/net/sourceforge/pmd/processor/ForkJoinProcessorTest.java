@@ -0,0 +1,136 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.processor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.RuleContext;
+import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.RulesetsFactoryUtils;
+import net.sourceforge.pmd.renderers.AbstractIncrementingRenderer;
+import net.sourceforge.pmd.renderers.Renderer;
+import net.sourceforge.pmd.util.datasource.DataSource;
+import net.sourceforge.pmd.util.datasource.FileDataSource;
+
+public class ForkJoinProcessorTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testBiggestFilesAreAnalyzedFirst() throws IOException {
+        PMDConfiguration configuration = new PMDConfiguration();
+        configuration.setRuleSets("rulesets/MultiThreadProcessorTest/bounded.xml");
+        configuration.setThreads(1);
+        configuration.setScheduleByCost(true);
+
+        List<DataSource> files = new ArrayList<>();
+        files.add(createFile("small.dummy", 1));
+        files.add(createFile("big.dummy", 100));
+        files.add(createFile("medium.dummy", 10));
+
+        OrderRenderer renderer = new OrderRenderer();
+        renderer.setWriter(new StringWriter());
+        renderer.start();
+        new ForkJoinProcessor(configuration).processFiles(RulesetsFactoryUtils.defaultFactory(), files,
+                new RuleContext(), Collections.<Renderer>singletonList(renderer));
+        renderer.end();
+
+        Assert.assertEquals(3, renderer.renderedViolations);
+        Assert.assertEquals(3, renderer.startedFiles.size());
+        Assert.assertTrue(renderer.startedFiles.get(0).endsWith("big.dummy"));
+        Assert.assertTrue(renderer.startedFiles.get(1).endsWith("medium.dummy"));
+        Assert.assertTrue(renderer.startedFiles.get(2).endsWith("small.dummy"));
+    }
+
+    @Test
+    public void testUnchangedFilesAreAnalyzedLast() throws IOException {
+        File cacheFile = new File(tempFolder.getRoot(), "pmd.cache");
+        List<DataSource> files = new ArrayList<>();
+        files.add(createFile("small.dummy", 1));
+        files.add(createFile("big.dummy", 100));
+        // recently modified files are never considered unchanged without reading them
+        for (File file : tempFolder.getRoot().listFiles()) {
+            file.setLastModified(System.currentTimeMillis() - 60000);
+        }
+        analyzeWithCache(files, cacheFile);
+
+        // only the small file changed, the big one is replayed from the cache
+        File small = new File(tempFolder.getRoot(), "small.dummy");
+        FileUtils.write(small, StringUtils.repeat('a', 2), StandardCharsets.UTF_8);
+        OrderRenderer renderer = analyzeWithCache(files, cacheFile);
+
+        Assert.assertEquals(2, renderer.startedFiles.size());
+        Assert.assertTrue(renderer.startedFiles.get(0).endsWith("small.dummy"));
+        Assert.assertTrue(renderer.startedFiles.get(1).endsWith("big.dummy"));
+    }
+
+    private OrderRenderer analyzeWithCache(List<DataSource> files, File cacheFile) throws IOException {
+        PMDConfiguration configuration = new PMDConfiguration();
+        configuration.setRuleSets("rulesets/MultiThreadProcessorTest/bounded.xml");
+        configuration.setThreads(1);
+        configuration.setScheduleByCost(true);
+        configuration.setAnalysisCacheLocation(cacheFile.getPath());
+
+        OrderRenderer renderer = new OrderRenderer();
+        renderer.setWriter(new StringWriter());
+        renderer.start();
+        RuleContext ctx = new RuleContext();
+        ctx.getReport().addListener(configuration.getAnalysisCache());
+        new ForkJoinProcessor(configuration).processFiles(RulesetsFactoryUtils.defaultFactory(), files,
+                ctx, Collections.<Renderer>singletonList(renderer));
+        renderer.end();
+        configuration.getAnalysisCache().persist();
+        return renderer;
+    }
+
+    private DataSource createFile(String name, int size) throws IOException {
+        File file = tempFolder.newFile(name);
+        FileUtils.write(file, StringUtils.repeat('a', size), StandardCharsets.UTF_8);
+        return new FileDataSource(file);
+    }
+
+    private static class OrderRenderer extends AbstractIncrementingRenderer {
+        private final List<String> startedFiles = Collections.synchronizedList(new ArrayList<String>());
+        private int renderedViolations;
+
+        /* default */ OrderRenderer() {
+            super("order", "records the order of the analyzed files");
+        }
+
+        @Override
+        public String defaultFileExtension() {
+            return null;
+        }
+
+        @Override
+        public void startFileAnalysis(DataSource dataSource) {
+            startedFiles.add(dataSource.getNiceFileName(false, null));
+        }
+
+        @Override
+        public void renderFileViolations(Iterator<RuleViolation> violations) throws IOException {
+            while (violations.hasNext()) {
+                violations.next();
+                renderedViolations++;
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.processor;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.RuleContext;
+import net.sourceforge.pmd.RulesetsFactoryUtils;
+import net.sourceforge.pmd.renderers.Renderer;
+import net.sourceforge.pmd.renderers.TextRenderer;
+import net.sourceforge.pmd.util.datasource.DataSource;
+import net.sourceforge.pmd.util.datasource.internal.AbstractDataSource;
+
+public class VirtualThreadProcessorTest {
+
+    @Test
+    public void testAllFilesAreAnalyzed() throws IOException {
+        Assume.assumeTrue("Virtual threads are not supported", VirtualThreadProcessor.isSupported());
+
+        PMDConfiguration configuration = new PMDConfiguration();
+        configuration.setRuleSets("rulesets/MultiThreadProcessorTest/bounded.xml");
+        configuration.setThreads(1);
+        configuration.setVirtualThreads(true);
+
+        List<DataSource> files = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            files.add(new SlowDataSource("file" + i + ".dummy"));
+        }
+
+        TextRenderer renderer = new TextRenderer();
+        StringWriter writer = new StringWriter();
+        renderer.setWriter(writer);
+        renderer.start();
+        new VirtualThreadProcessor(configuration).processFiles(RulesetsFactoryUtils.defaultFactory(), files,
+                new RuleContext(), Collections.<Renderer>singletonList(renderer));
+        renderer.end();
+
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue("Missing violation for file" + i, writer.toString().contains("file" + i + ".dummy:"));
+        }
+    }
+
+    @Test
+    public void testReadAheadIsBounded() throws IOException {
+        // runs on every Java runtime, the sources are read on platform threads instead of virtual threads
+        PMDConfiguration configuration = new PMDConfiguration();
+        configuration.setRuleSets("rulesets/MultiThreadProcessorTest/bounded.xml");
+        configuration.setThreads(1);
+
+        int fileCount = VirtualThreadProcessor.getReadAheadLimit() * 5;
+        AtomicInteger openSources = new AtomicInteger();
+        AtomicInteger maxOpenSources = new AtomicInteger();
+        List<DataSource> files = new ArrayList<>();
+        for (int i = 0; i < fileCount; i++) {
+            files.add(new SlowDataSource("file" + i + ".dummy", openSources, maxOpenSources));
+        }
+
+        TextRenderer renderer = new TextRenderer();
+        StringWriter writer = new StringWriter();
+        renderer.setWriter(writer);
+        renderer.start();
+        new VirtualThreadProcessor(configuration, Executors.newCachedThreadPool()).processFiles(
+                RulesetsFactoryUtils.defaultFactory(), files, new RuleContext(),
+                Collections.<Renderer>singletonList(renderer));
+        renderer.end();
+
+        for (int i = 0; i < fileCount; i++) {
+            Assert.assertTrue("Missing violation for file" + i, writer.toString().contains("file" + i + ".dummy:"));
+        }
+        Assert.assertTrue("Too many sources open: " + maxOpenSources.get(),
+                maxOpenSources.get() <= VirtualThreadProcessor.getReadAheadLimit());
+    }
+
+    private static class SlowDataSource extends AbstractDataSource {
+        private final String name;
+        private final AtomicInteger openSources;
+        private final AtomicInteger maxOpenSources;
+
+        SlowDataSource(String name) {
+            this(name, new AtomicInteger(), new AtomicInteger());
+        }
+
+        SlowDataSource(String name, AtomicInteger openSources, AtomicInteger maxOpenSources) {
+            this.name = name;
+            this.openSources = openSources;
+            this.maxOpenSources = maxOpenSources;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            int open = openSources.incrementAndGet();
+            synchronized (maxOpenSources) {
+                maxOpenSources.set(Math.max(maxOpenSources.get(), open));
+            }
+            try {
+                // simulate blocking I/O
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return new ByteArrayInputStream("ABC".getBytes("UTF-8")) {
+                @Override
+                public void close() {
+                    openSources.decrementAndGet();
+                }
+            };
+        }
+
+        @Override
+        public String getNiceFileName(boolean shortNames, String inputFileName) {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.renderers;
+
+/**
+ * Runs the tests of {@link SummaryHTMLRendererTest} with the violations kept
+ * in temporary files, the output must be the same.
+ */
+public class StreamingSummaryHTMLRendererTest extends SummaryHTMLRendererTest {
+
+    @Override
+    public Renderer getRenderer() {
+        Renderer result = super.getRenderer();
+        result.setProperty(AbstractAccumulatingRenderer.STREAMING, true);
+        return result;
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.renderers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import net.sourceforge.pmd.FooRule;
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleContext;
+import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.RuleViolationComparator;
+import net.sourceforge.pmd.lang.ast.DummyNode;
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.rule.ParametricRuleViolation;
+
+public class ViolationSpillTest {
+
+    @Test
+    public void testSegmentsAreMergedInOrder() throws IOException {
+        Rule rule = new FooRule();
+        try (ViolationSpill spill = new ViolationSpill(RuleViolationComparator.INSTANCE, 3)) {
+            // 10 violations in 4 segments, each segment is only sorted by itself
+            int[] lines = {7, 3, 9, 1, 10, 4, 2, 8, 6, 5};
+            for (int line : lines) {
+                spill.add(newRuleViolation(rule, line));
+            }
+
+            Iterator<RuleViolation> violations = spill.iterator();
+            for (int line = 1; line <= lines.length; line++) {
+                RuleViolation violation = violations.next();
+                assertEquals(line, violation.getBeginLine());
+                assertEquals("Foo.java", violation.getFilename());
+                assertEquals("violation in line " + line, violation.getDescription());
+                assertSame(rule, violation.getRule());
+            }
+            assertFalse(violations.hasNext());
+        }
+    }
+
+    @Test
+    public void testManySegmentsAreMergedInSeveralPasses() throws IOException {
+        Rule rule = new FooRule();
+        // 100 segments of 2 violations each, but only 3 segments may be open at the same time
+        try (ViolationSpill spill = new ViolationSpill(RuleViolationComparator.INSTANCE, 2, 3)) {
+            for (int i = 0; i < 200; i++) {
+                spill.add(newRuleViolation(rule, (i * 37) % 200 + 1));
+            }
+
+            Iterator<RuleViolation> violations = spill.iterator();
+            for (int line = 1; line <= 200; line++) {
+                assertEquals(line, violations.next().getBeginLine());
+            }
+            assertFalse(violations.hasNext());
+        }
+    }
+
+    @Test
+    public void testEmptySpill() throws IOException {
+        try (ViolationSpill spill = new ViolationSpill(RuleViolationComparator.INSTANCE)) {
+            assertFalse(spill.iterator().hasNext());
+        }
+    }
+
+    private static RuleViolation newRuleViolation(Rule rule, int line) {
+        DummyNode node = new DummyNode(1);
+        node.testingOnlySetBeginLine(line);
+        node.testingOnlySetBeginColumn(1);
+        RuleContext ctx = new RuleContext();
+        ctx.setSourceCodeFile(new File("Foo.java"));
+        return new ParametricRuleViolation<Node>(rule, ctx, node, "violation in line " + line);
+    }
+}
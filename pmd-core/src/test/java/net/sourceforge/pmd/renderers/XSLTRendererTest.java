@@ -31,4 +31,19 @@ public class XSLTRendererTest {
         String result = ReportTest.render(renderer, report);
         Assert.assertTrue(result.contains("violation message"));
     }
+
+    @Test
+    public void testStreaming() throws Exception {
+        XSLTRenderer renderer = new XSLTRenderer();
+        renderer.setProperty(AbstractAccumulatingRenderer.STREAMING, true);
+        Report report = new Report();
+        DummyNode node = new DummyNode(1);
+        node.testingOnlySetBeginLine(1);
+        node.testingOnlySetBeginColumn(1);
+        RuleViolation rv = new ParametricRuleViolation<Node>(new FooRule(), new RuleContext(), node,
+                "violation message");
+        report.addRuleViolation(rv);
+        String result = ReportTest.render(renderer, report);
+        Assert.assertTrue(result.contains("violation message"));
+    }
 }
@@ -284,6 +284,8 @@ public class JavaTokenizer extends JavaCCTokenizer {
                     int lastTokenIndex = tokenEntries.size() - 1;
                     TokenEntry lastToken = tokenEntries.getTokens().get(lastTokenIndex);
                     lastToken.setImage(prevIdentifier);
+                    // the tokens are stored by value, so the changed token has to be stored again
+                    tokenEntries.getTokens().set(lastTokenIndex, lastToken);
                 }
             }
         }
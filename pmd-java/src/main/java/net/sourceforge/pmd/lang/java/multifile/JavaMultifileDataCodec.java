@@ -0,0 +1,230 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.multifile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Stack;
+
+import net.sourceforge.pmd.annotation.InternalApi;
+import net.sourceforge.pmd.lang.MultifileDataCodec;
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.java.ast.ASTAnyTypeDeclaration;
+import net.sourceforge.pmd.lang.java.ast.ASTCompilationUnit;
+import net.sourceforge.pmd.lang.java.ast.ASTFieldDeclaration;
+import net.sourceforge.pmd.lang.java.ast.ASTMethodOrConstructorDeclaration;
+import net.sourceforge.pmd.lang.java.multifile.signature.JavaFieldSignature;
+import net.sourceforge.pmd.lang.java.multifile.signature.JavaOperationSignature;
+import net.sourceforge.pmd.lang.java.multifile.signature.JavaOperationSignature.Role;
+import net.sourceforge.pmd.lang.java.multifile.signature.JavaSignature.Visibility;
+import net.sourceforge.pmd.lang.java.qname.JavaTypeQualifiedName;
+
+/**
+ * Fills its own PackageStats like the {@link MultifileVisitorFacade}, and stores the classes, operations and fields
+ * of the file as a sequence of records. Each class is recorded with its qualified name, and the members are
+ * added to the last recorded class.
+ */
+@InternalApi
+public final class JavaMultifileDataCodec implements MultifileDataCodec {
+
+    private static final byte END = 0;
+    private static final byte CLASS = 1;
+    private static final byte OPERATION = 2;
+    private static final byte FIELD = 3;
+
+    private static final Visibility[] VISIBILITIES = Visibility.values();
+    private static final Role[] ROLES = Role.values();
+
+    private final PackageStats toplevel = new PackageStats();
+    /** Set once the multifile analysis ran, before the rules are applied on other threads. */
+    private boolean frozen;
+
+
+    @Override
+    public void gather(Node rootNode, DataOutput out) throws IOException {
+        checkNotFrozen();
+        RecordingVisitor visitor = new RecordingVisitor(toplevel);
+        ((ASTCompilationUnit) rootNode).jjtAccept(visitor, null);
+        visitor.records.writeByte(END);
+        visitor.records.flush();
+        out.write(visitor.bytes.toByteArray());
+    }
+
+
+    @Override
+    public void freeze() {
+        frozen = true;
+    }
+
+
+    /**
+     * Returns the multifile data gathered or restored so far.
+     *
+     * @return The project mirror
+     */
+    ProjectMirror getProjectMirror() {
+        return toplevel;
+    }
+
+
+    @Override
+    public void restore(DataInput in) throws IOException {
+        checkNotFrozen();
+        ClassStats current = null;
+
+        for (byte record = in.readByte(); record != END; record = in.readByte()) {
+            switch (record) {
+            case CLASS:
+                List<String> packagePath = readNames(in);
+                List<String> classPath = readNames(in);
+                current = toplevel.getClassStats(packagePath, classPath, true);
+                break;
+            case OPERATION:
+                String operation = in.readUTF();
+                Visibility opVisibility = readConstant(in, VISIBILITIES);
+                Role role = readConstant(in, ROLES);
+                JavaOperationSignature opSig = JavaOperationSignature.get(opVisibility, role, in.readBoolean());
+                checkClass(current).addOperation(operation, opSig);
+                break;
+            case FIELD:
+                String field = in.readUTF();
+                Visibility fieldVisibility = readConstant(in, VISIBILITIES);
+                boolean isStatic = in.readBoolean();
+                JavaFieldSignature fieldSig = JavaFieldSignature.get(fieldVisibility, isStatic, in.readBoolean());
+                checkClass(current).addField(field, fieldSig);
+                break;
+            default:
+                throw new IOException("Unknown multifile record " + record);
+            }
+        }
+    }
+
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("The multifile data is frozen");
+        }
+    }
+
+
+    private static ClassStats checkClass(ClassStats current) throws IOException {
+        if (current == null) {
+            throw new IOException("Member recorded outside of a class");
+        }
+        return current;
+    }
+
+
+    private static List<String> readNames(DataInput in) throws IOException {
+        int count = in.readInt();
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            names.add(in.readUTF());
+        }
+        return names;
+    }
+
+
+    private static <T> T readConstant(DataInput in, T[] constants) throws IOException {
+        int ordinal = in.readByte();
+        if (ordinal < 0 || ordinal >= constants.length) {
+            throw new IOException("Unknown constant " + ordinal);
+        }
+        return constants[ordinal];
+    }
+
+
+    /**
+     * Records the data while filling the PackageStats. The records are written to memory, so writing them can't fail.
+     */
+    private static final class RecordingVisitor extends MultifileVisitor {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream records = new DataOutputStream(bytes);
+        private final Stack<JavaTypeQualifiedName> classes = new Stack<>();
+        /** The last recorded class, to which the members are added. */
+        private JavaTypeQualifiedName recordedClass;
+
+
+        RecordingVisitor(PackageStats toplevel) {
+            super(toplevel);
+        }
+
+
+        @Override
+        public Object visit(ASTAnyTypeDeclaration node, Object data) {
+            classes.push(node.getQualifiedName());
+            // recorded even without members, the class itself is part of the data
+            recordClass();
+            super.visit(node, data);
+            classes.pop();
+            return data;
+        }
+
+
+        @Override
+        public Object visit(ASTMethodOrConstructorDeclaration node, Object data) {
+            try {
+                recordClass();
+                JavaOperationSignature sig = node.getSignature();
+                records.writeByte(OPERATION);
+                records.writeUTF(node.getQualifiedName().getOperation());
+                records.writeByte(sig.visibility.ordinal());
+                records.writeByte(sig.role.ordinal());
+                records.writeBoolean(sig.isAbstract);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return super.visit(node, data);
+        }
+
+
+        @Override
+        public Object visit(ASTFieldDeclaration node, Object data) {
+            try {
+                recordClass();
+                JavaFieldSignature sig = node.getSignature();
+                records.writeByte(FIELD);
+                records.writeUTF(node.getVariableName());
+                records.writeByte(sig.visibility.ordinal());
+                records.writeBoolean(sig.isStatic);
+                records.writeBoolean(sig.isFinal);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return super.visit(node, data);
+        }
+
+
+        /** Records the current class, unless the members are already added to it. */
+        private void recordClass() {
+            JavaTypeQualifiedName current = classes.peek();
+            if (current.equals(recordedClass)) {
+                return;
+            }
+            try {
+                records.writeByte(CLASS);
+                writeNames(current.getPackageList());
+                writeNames(current.getClassList());
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            recordedClass = current;
+        }
+
+
+        private void writeNames(List<String> names) throws IOException {
+            records.writeInt(names.size());
+            for (String name : names) {
+                records.writeUTF(name);
+            }
+        }
+    }
+}
@@ -4,10 +4,10 @@
 
 package net.sourceforge.pmd.lang.java.multifile;
 
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import net.sourceforge.pmd.lang.java.multifile.signature.JavaFieldSigMask;
 import net.sourceforge.pmd.lang.java.multifile.signature.JavaOperationSigMask;
@@ -20,16 +20,19 @@ import net.sourceforge.pmd.lang.java.qname.JavaTypeQualifiedName;
  * stores information about the classes and subpackages it contains. This object provides signature matching utilities
  * to metrics.
  *
+ * <p>The hierarchy may be created concurrently, e.g. while the multifile analysis of several files runs in parallel.
+ *
  * @author Clément Fournier
  * @see ClassStats
  * @since 6.0.0
  */
 final class PackageStats implements ProjectMirror {
 
+    /** Filled by the {@link MultifileVisitorFacade}, if the multifile analysis doesn't run before the rules. */
     static final PackageStats INSTANCE = new PackageStats();
 
-    private final Map<String, PackageStats> subPackages = new HashMap<>();
-    private final Map<String, ClassStats> classes = new HashMap<>();
+    private final ConcurrentMap<String, PackageStats> subPackages = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ClassStats> classes = new ConcurrentHashMap<>();
 
 
     /**
@@ -51,15 +54,29 @@ final class PackageStats implements ProjectMirror {
      * @return The new ClassStats, or the one that was found. Can return null only if createIfNotFound is unset
      */
     /* default */ ClassStats getClassStats(JavaTypeQualifiedName qname, boolean createIfNotFound) {
-        PackageStats container = getSubPackage(qname, createIfNotFound);
+        return getClassStats(qname.getPackageList(), qname.getClassList(), createIfNotFound);
+    }
+
+
+    /**
+     * Gets the ClassStats corresponding to the named resource, like {@link #getClassStats(JavaTypeQualifiedName, boolean)}.
+     *
+     * @param packagePath      The names of the packages containing the class
+     * @param classPath        The names of the enclosing classes and of the class itself
+     * @param createIfNotFound Create hierarchy if missing
+     *
+     * @return The new ClassStats, or the one that was found. Can return null only if createIfNotFound is unset
+     */
+    /* default */ ClassStats getClassStats(List<String> packagePath, List<String> classPath, boolean createIfNotFound) {
+        PackageStats container = getSubPackage(packagePath, createIfNotFound);
 
         if (container == null) {
             return null;
         }
 
-        String topClassName = qname.getClassList().get(0);
+        String topClassName = classPath.get(0);
         if (createIfNotFound && container.classes.get(topClassName) == null) {
-            container.classes.put(topClassName, new ClassStats());
+            container.classes.putIfAbsent(topClassName, new ClassStats());
         }
 
         ClassStats next = container.classes.get(topClassName);
@@ -68,7 +85,7 @@ final class PackageStats implements ProjectMirror {
             return null;
         }
 
-        Iterator<String> it = qname.getClassList().iterator();
+        Iterator<String> it = classPath.iterator();
         if (it.hasNext()) {
             it.next();
         }
@@ -86,23 +103,22 @@ final class PackageStats implements ProjectMirror {
      * Returns the deepest PackageStats that contains the named resource. If the second parameter is set, creates the
      * missing PackageStats along the way.
      *
-     * @param qname            The qualified name of the resource
+     * @param packagePath      The names of the packages containing the resource
      * @param createIfNotFound If set to true, the hierarch is created if missing
      *
      * @return The deepest package that contains this resource. Can only return null if createIfNotFound is unset
      */
-    private PackageStats getSubPackage(JavaTypeQualifiedName qname, boolean createIfNotFound) {
-        if (qname.getPackageList().isEmpty()) {
+    private PackageStats getSubPackage(List<String> packagePath, boolean createIfNotFound) {
+        if (packagePath.isEmpty()) {
             return this; // the toplevel
         }
 
-        List<String> packagePath = qname.getPackageList();
         PackageStats next = this;
 
         for (Iterator<String> it = packagePath.iterator(); it.hasNext() && next != null;) {
             String currentPackage = it.next();
             if (createIfNotFound && next.subPackages.get(currentPackage) == null) {
-                next.subPackages.put(currentPackage, new PackageStats());
+                next.subPackages.putIfAbsent(currentPackage, new PackageStats());
             }
 
             next = next.subPackages.get(currentPackage);
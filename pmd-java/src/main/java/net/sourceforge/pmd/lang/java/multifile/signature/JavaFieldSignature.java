@@ -4,8 +4,8 @@
 
 package net.sourceforge.pmd.lang.java.multifile.signature;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import net.sourceforge.pmd.lang.java.ast.ASTFieldDeclaration;
 
@@ -16,7 +16,7 @@ import net.sourceforge.pmd.lang.java.ast.ASTFieldDeclaration;
  */
 public final class JavaFieldSignature extends JavaSignature<ASTFieldDeclaration> {
 
-    private static final Map<Integer, JavaFieldSignature> POOL = new HashMap<>();
+    private static final ConcurrentMap<Integer, JavaFieldSignature> POOL = new ConcurrentHashMap<>();
 
     public final boolean isStatic;
     public final boolean isFinal;
@@ -65,9 +65,24 @@ public final class JavaFieldSignature extends JavaSignature<ASTFieldDeclaration>
      * @return The signature of the field
      */
     public static JavaFieldSignature buildFor(ASTFieldDeclaration node) {
-        int code = code(Visibility.get(node), node.isStatic(), node.isFinal());
+        return get(Visibility.get(node), node.isStatic(), node.isFinal());
+    }
+
+
+    /**
+     * Returns the field signature with the given properties, e.g. to restore a stored signature.
+     *
+     * @param visibility The visibility of the field
+     * @param isStatic   Whether the field is static
+     * @param isFinal    Whether the field is final
+     *
+     * @return The signature
+     */
+    public static JavaFieldSignature get(Visibility visibility, boolean isStatic, boolean isFinal) {
+        int code = code(visibility, isStatic, isFinal);
         if (!POOL.containsKey(code)) {
-            POOL.put(code, new JavaFieldSignature(Visibility.get(node), node.isStatic(), node.isFinal()));
+            // several threads may build the same signature, but only one is pooled
+            POOL.putIfAbsent(code, new JavaFieldSignature(visibility, isStatic, isFinal));
         }
         return POOL.get(code);
     }
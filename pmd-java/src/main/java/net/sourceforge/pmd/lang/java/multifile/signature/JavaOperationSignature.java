@@ -9,6 +9,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -30,7 +31,7 @@ import net.sourceforge.pmd.lang.symboltable.NameOccurrence;
  */
 public final class JavaOperationSignature extends JavaSignature<ASTMethodOrConstructorDeclaration> {
 
-    private static final Map<Integer, JavaOperationSignature> POOL = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Integer, JavaOperationSignature> POOL = new ConcurrentHashMap<>();
     public final Role role;
     public final boolean isAbstract;
 
@@ -78,9 +79,24 @@ public final class JavaOperationSignature extends JavaSignature<ASTMethodOrConst
      * @return The signature of the parameter
      */
     public static JavaOperationSignature buildFor(ASTMethodOrConstructorDeclaration node) {
-        int code = code(Visibility.get(node), Role.get(node), node.isAbstract());
+        return get(Visibility.get(node), Role.get(node), node.isAbstract());
+    }
+
+
+    /**
+     * Returns the operation signature with the given properties, e.g. to restore a stored signature.
+     *
+     * @param visibility The visibility of the operation
+     * @param role       The role of the operation
+     * @param isAbstract Whether the operation is abstract
+     *
+     * @return The signature
+     */
+    public static JavaOperationSignature get(Visibility visibility, Role role, boolean isAbstract) {
+        int code = code(visibility, role, isAbstract);
         if (!POOL.containsKey(code)) {
-            POOL.put(code, new JavaOperationSignature(Visibility.get(node), Role.get(node), node.isAbstract()));
+            // several threads may build the same signature, but only one is pooled
+            POOL.putIfAbsent(code, new JavaOperationSignature(visibility, role, isAbstract));
         }
         return POOL.get(code);
     }
@@ -11,7 +11,9 @@ import net.sourceforge.pmd.lang.java.ast.ASTPrimaryPrefix;
 import net.sourceforge.pmd.lang.java.ast.ASTUnaryExpression;
 import net.sourceforge.pmd.lang.java.ast.ASTUnaryExpressionNotPlusMinus;
 import net.sourceforge.pmd.lang.java.rule.AbstractJavaRule;
+import net.sourceforge.pmd.lang.rule.ThreadSafe;
 
+@ThreadSafe
 public class AvoidMultipleUnaryOperatorsRule extends AbstractJavaRule {
 
     public AvoidMultipleUnaryOperatorsRule() {
@@ -18,7 +18,9 @@ import net.sourceforge.pmd.lang.java.ast.ASTVariableInitializer;
 import net.sourceforge.pmd.lang.java.ast.AccessNode;
 import net.sourceforge.pmd.lang.java.rule.AbstractJavaRule;
 import net.sourceforge.pmd.lang.java.symboltable.VariableNameDeclaration;
+import net.sourceforge.pmd.lang.rule.ThreadSafe;
 
+@ThreadSafe
 public class NullAssignmentRule extends AbstractJavaRule {
 
     public NullAssignmentRule() {
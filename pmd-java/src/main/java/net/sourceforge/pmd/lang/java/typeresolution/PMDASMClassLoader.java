@@ -6,16 +6,20 @@ package net.sourceforge.pmd.lang.java.typeresolution;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.objectweb.asm.ClassReader;
 
 import net.sourceforge.pmd.annotation.InternalApi;
+import net.sourceforge.pmd.cache.AuxClasspathIndex;
 import net.sourceforge.pmd.lang.java.typeresolution.visitors.PMDASMVisitor;
+import net.sourceforge.pmd.util.ClasspathClassLoader;
 
 /*
  * I've refactored this class to not cache the results any more. This is a
@@ -33,13 +37,28 @@ import net.sourceforge.pmd.lang.java.typeresolution.visitors.PMDASMVisitor;
  * 
  * Note: since git show 46ad3a4700b7a233a177fa77d08110127a85604c the cache is using
  * a concurrent hash map to avoid synchronizing on the class loader instance.
+ *
+ * If the parent is a ClasspathClassLoader with an AuxClasspathIndex, the negative
+ * cases and the imported classes are additionally taken from and recorded in the
+ * index, which is persisted with the analysis cache. The next analysis then doesn't
+ * need to search the classpath for the same missing names or read the same class files.
+ *
+ * Several analyses may run concurrently with different auxclasspaths, e.g. when PMD is
+ * embedded in a build server. The loaders of the most recently used parents are pooled, so
+ * that the analyses don't evict each other's loader, and the imported classes read from jars
+ * are shared by all loaders through the SharedJarIndex.
  */
 @InternalApi
 @Deprecated
 public final class PMDASMClassLoader extends ClassLoader {
 
-    private static PMDASMClassLoader cachedPMDASMClassLoader;
-    private static ClassLoader cachedClassLoader;
+    /** The maximum number of pooled loaders, i.e. of analyses running concurrently. */
+    private static final int POOL_SIZE = 8;
+    private static final ConcurrentMap<ClassLoader, PMDASMClassLoader> POOL = new ConcurrentHashMap<>();
+    private static final AtomicLong CLOCK = new AtomicLong();
+
+    /** Only used to find the least recently used loader, so a stale value doesn't matter. */
+    private long lastUsed;
 
     /**
      * Caches the names of the classes that we can't load or that don't exist.
@@ -57,30 +76,80 @@ public final class PMDASMClassLoader extends ClassLoader {
     /**
      * A new PMDASMClassLoader is created for each compilation unit, this method
      * allows to reuse the same PMDASMClassLoader across all the compilation
-     * units.
+     * units. The loaders of several parents are pooled, the loader of the
+     * least recently used parent is dropped, once the pool is full.
      */
-    public static synchronized PMDASMClassLoader getInstance(ClassLoader parent) {
-        if (parent.equals(cachedClassLoader)) {
-            return cachedPMDASMClassLoader;
+    public static PMDASMClassLoader getInstance(ClassLoader parent) {
+        return getPooledInstance(parent);
+    }
+
+    private static PMDASMClassLoader getPooledInstance(ClassLoader parent) {
+        PMDASMClassLoader loader = POOL.get(parent);
+        if (loader == null) {
+            loader = createInstance(parent);
+        }
+        loader.lastUsed = CLOCK.incrementAndGet();
+        return loader;
+    }
+
+    private static synchronized PMDASMClassLoader createInstance(ClassLoader parent) {
+        PMDASMClassLoader loader = POOL.get(parent);
+        if (loader != null) {
+            return loader;
+        }
+        if (POOL.size() >= POOL_SIZE) {
+            ClassLoader eldest = null;
+            long eldestUse = Long.MAX_VALUE;
+            for (Map.Entry<ClassLoader, PMDASMClassLoader> entry : POOL.entrySet()) {
+                if (entry.getValue().lastUsed < eldestUse) {
+                    eldest = entry.getKey();
+                    eldestUse = entry.getValue().lastUsed;
+                }
+            }
+            POOL.remove(eldest);
+        }
+        loader = new PMDASMClassLoader(parent);
+        POOL.put(parent, loader);
+        return loader;
+    }
+
+    private AuxClasspathIndex getIndex() {
+        ClassLoader parent = getParent();
+        return parent instanceof ClasspathClassLoader ? ((ClasspathClassLoader) parent).getIndex() : null;
+    }
+
+    private boolean isKnownMissing(String name, AuxClasspathIndex index) {
+        if (dontBother.containsKey(name)) {
+            return true;
+        }
+        if (index != null && index.isMissing(name)) {
+            dontBother.put(name, Boolean.TRUE);
+            return true;
+        }
+        return false;
+    }
+
+    private void addMissing(String name, AuxClasspathIndex index) {
+        dontBother.put(name, Boolean.TRUE);
+        if (index != null) {
+            index.addMissing(name);
         }
-        cachedClassLoader = parent;
-        cachedPMDASMClassLoader = new PMDASMClassLoader(parent);
-        return cachedPMDASMClassLoader;
     }
 
     @Override
     public Class<?> loadClass(String name) throws ClassNotFoundException {
-        if (dontBother.containsKey(name)) {
+        AuxClasspathIndex index = getIndex();
+        if (isKnownMissing(name, index)) {
             throw new ClassNotFoundException(name);
         }
 
         try {
             return super.loadClass(name);
         } catch (ClassNotFoundException e) {
-            dontBother.put(name, Boolean.TRUE);
+            addMissing(name, index);
             throw e;
         } catch (NoClassDefFoundError e) {
-            dontBother.put(name, Boolean.TRUE);
+            addMissing(name, index);
             // rethrow as ClassNotFoundException, as the remaining part just
             // deals with that
             // see also: https://sourceforge.net/p/pmd/bugs/1319/
@@ -99,14 +168,46 @@ public final class PMDASMClassLoader extends ClassLoader {
      * @return whether the class can be resolved
      */
     public boolean couldResolve(String name) {
-        return !dontBother.containsKey(name);
+        return !isKnownMissing(name, getIndex());
     }
 
-    public synchronized Map<String, String> getImportedClasses(String name) throws ClassNotFoundException {
-        if (dontBother.containsKey(name)) {
+    public Map<String, String> getImportedClasses(String name) throws ClassNotFoundException {
+        AuxClasspathIndex index = getIndex();
+        if (isKnownMissing(name, index)) {
             throw new ClassNotFoundException(name);
         }
-        try (InputStream classResource = getResourceAsStream(name.replace('.', '/') + ".class")) {
+        Map<String, String> stored = index == null ? null : index.getImportedClasses(name);
+        if (stored != null) {
+            return stored;
+        }
+
+        URL classFile = getResource(name.replace('.', '/') + ".class");
+        if (classFile == null) {
+            addMissing(name, index);
+            throw new ClassNotFoundException(name);
+        }
+        try {
+            // another analysis might have read the class from the same jar already
+            String jarKey = SharedJarIndex.getJarKey(classFile);
+            Map<String, String> imports = jarKey == null ? null : SharedJarIndex.INSTANCE.get(jarKey, name);
+            if (imports == null) {
+                imports = readImportedClasses(name, classFile);
+                if (jarKey != null) {
+                    imports = SharedJarIndex.INSTANCE.put(jarKey, name, imports);
+                }
+            }
+            if (index != null) {
+                index.putImportedClasses(name, classFile, imports);
+            }
+            return imports;
+        } catch (IOException e) {
+            dontBother.put(name, Boolean.TRUE);
+            throw new ClassNotFoundException(name, e);
+        }
+    }
+
+    private Map<String, String> readImportedClasses(String name, URL classFile) throws IOException {
+        try (InputStream classResource = classFile.openStream()) {
             ClassReader reader = new ClassReader(classResource);
             PMDASMVisitor asmVisitor = new PMDASMVisitor(name);
             reader.accept(asmVisitor, 0);
@@ -125,9 +226,6 @@ public final class PMDASMClassLoader extends ClassLoader {
                 }
             }
             return asmVisitor.getPackages();
-        } catch (IOException e) {
-            dontBother.put(name, Boolean.TRUE);
-            throw new ClassNotFoundException(name, e);
         }
     }
 }
@@ -0,0 +1,138 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.typeresolution;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The imported classes of the class files, that have been read from jars or
+ * from the Java runtime. The index is shared by all {@link PMDASMClassLoader}s,
+ * so that concurrent analyses with different auxclasspaths reuse what the
+ * others read from the same jars.
+ *
+ * <p>A jar is identified by its path, size and modification time, so that a
+ * changed jar gets a new entry. The imported classes of a class never change
+ * once added, they can be read without locking. Only the jars, that have been
+ * used least recently, are dropped, once there are too many of them.
+ */
+final class SharedJarIndex {
+
+    static final SharedJarIndex INSTANCE = new SharedJarIndex(256);
+
+    /** The key of the classes of the Java runtime, which can't change while running. */
+    private static final String RUNTIME = "jrt";
+
+    private final int maxJars;
+    private final ConcurrentMap<String, JarContent> jars = new ConcurrentHashMap<>();
+    private final AtomicLong clock = new AtomicLong();
+
+    SharedJarIndex(int maxJars) {
+        this.maxJars = maxJars;
+    }
+
+    /**
+     * Returns the key of the jar containing the given class file, or null if
+     * it's not contained in a jar, e.g. in a directory, which might change
+     * at any time.
+     *
+     * @param classFile The URL of the class file
+     */
+    static String getJarKey(URL classFile) {
+        if ("jrt".equals(classFile.getProtocol())) {
+            return RUNTIME;
+        }
+        if (!"jar".equals(classFile.getProtocol())) {
+            return null;
+        }
+        String path = classFile.getPath();
+        int separator = path.indexOf("!/");
+        if (separator < 0 || !path.startsWith("file:")) {
+            return null;
+        }
+        try {
+            File jar = new File(new URL(path.substring(0, separator)).toURI());
+            return jar.getPath() + '@' + jar.length() + '@' + jar.lastModified();
+        } catch (URISyntaxException | MalformedURLException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the imported classes of the given class from the given jar.
+     *
+     * @param jarKey    The key of the jar, see {@link #getJarKey(URL)}
+     * @param className The binary name of the class
+     * @return The unmodifiable imported classes, or null if the class has not been read yet
+     */
+    Map<String, String> get(String jarKey, String className) {
+        JarContent content = jars.get(jarKey);
+        if (content == null) {
+            return null;
+        }
+        content.lastUsed = clock.incrementAndGet();
+        return content.classes.get(className);
+    }
+
+    /**
+     * Adds the imported classes of the given class from the given jar.
+     *
+     * @param jarKey    The key of the jar, see {@link #getJarKey(URL)}
+     * @param className The binary name of the class
+     * @param imports   The imported classes
+     * @return The unmodifiable imported classes
+     */
+    Map<String, String> put(String jarKey, String className, Map<String, String> imports) {
+        JarContent content = jars.get(jarKey);
+        if (content == null) {
+            content = addJar(jarKey);
+        }
+        content.lastUsed = clock.incrementAndGet();
+        Map<String, String> unmodifiable = Collections.unmodifiableMap(new HashMap<>(imports));
+        Map<String, String> previous = content.classes.putIfAbsent(className, unmodifiable);
+        return previous == null ? unmodifiable : previous;
+    }
+
+    private synchronized JarContent addJar(String jarKey) {
+        JarContent content = jars.get(jarKey);
+        if (content != null) {
+            return content;
+        }
+        if (jars.size() >= maxJars) {
+            removeLeastRecentlyUsed();
+        }
+        content = new JarContent();
+        jars.put(jarKey, content);
+        return content;
+    }
+
+    private void removeLeastRecentlyUsed() {
+        String eldest = null;
+        long eldestUse = Long.MAX_VALUE;
+        for (Map.Entry<String, JarContent> entry : jars.entrySet()) {
+            if (entry.getValue().lastUsed < eldestUse) {
+                eldest = entry.getKey();
+                eldestUse = entry.getValue().lastUsed;
+            }
+        }
+        if (eldest != null) {
+            jars.remove(eldest);
+        }
+    }
+
+    private static final class JarContent {
+        private final ConcurrentMap<String, Map<String, String>> classes = new ConcurrentHashMap<>();
+        /** Only used to find the least recently used jar, so a stale value doesn't matter. */
+        private long lastUsed;
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.multifile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import net.sourceforge.pmd.lang.java.multifile.signature.JavaFieldSigMask;
+import net.sourceforge.pmd.lang.java.multifile.signature.JavaOperationSigMask;
+import net.sourceforge.pmd.lang.java.multifile.signature.JavaOperationSignature.Role;
+import net.sourceforge.pmd.lang.java.qname.JavaTypeQualifiedName;
+import net.sourceforge.pmd.lang.java.qname.QualifiedNameFactory;
+import net.sourceforge.pmd.lang.java.symboltable.BaseNonParserTest;
+
+/**
+ * Tests, that the stored multifile data restores the same PackageStats.
+ */
+public class JavaMultifileDataCodecTest extends BaseNonParserTest {
+
+    private static final String TEST = "package org.foo; class Boo {"
+        + "  private int bar;"
+        + "  public int getBar() { return bar; }"
+        + "  class Inner { void foo() {} }"
+        + "  public static final String BAZ = \"\";"
+        + "  void qux() {}"
+        + "}";
+
+    @Test
+    public void testRestoreGatheredData() throws IOException {
+        JavaMultifileDataCodec gathered = new JavaMultifileDataCodec();
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        gathered.gather(parseCode(TEST), new DataOutputStream(data));
+        assertMirror(gathered);
+
+        JavaMultifileDataCodec restored = new JavaMultifileDataCodec();
+        restored.restore(new DataInputStream(new ByteArrayInputStream(data.toByteArray())));
+        assertMirror(restored);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFrozenDataCantBeChanged() throws IOException {
+        JavaMultifileDataCodec codec = new JavaMultifileDataCodec();
+        codec.freeze();
+        codec.gather(parseCode(TEST), new DataOutputStream(new ByteArrayOutputStream()));
+    }
+
+    private void assertMirror(JavaMultifileDataCodec codec) {
+        ClassStats boo = (ClassStats) codec.getProjectMirror().getClassMirror(qname("org.foo.Boo"));
+        ClassStats inner = (ClassStats) codec.getProjectMirror().getClassMirror(qname("org.foo.Boo$Inner"));
+        assertNotNull(boo);
+        assertNotNull(inner);
+
+        JavaOperationSigMask getters = new JavaOperationSigMask();
+        getters.restrictRolesTo(Role.GETTER_OR_SETTER);
+        assertTrue(boo.hasMatchingOpSig("getBar()", getters));
+        // declared after the nested class
+        assertTrue(boo.hasMatchingOpSig("qux()", new JavaOperationSigMask()));
+        assertFalse(inner.hasMatchingOpSig("qux()", new JavaOperationSigMask()));
+        assertTrue(inner.hasMatchingOpSig("foo()", new JavaOperationSigMask()));
+        assertEquals(2, boo.countMatchingOpSigs(new JavaOperationSigMask()));
+
+        JavaFieldSigMask instanceFields = new JavaFieldSigMask();
+        instanceFields.forbidStatic();
+        assertTrue(boo.hasMatchingFieldSig("bar", instanceFields));
+        assertFalse(boo.hasMatchingFieldSig("BAZ", instanceFields));
+        assertEquals(2, boo.countMatchingFieldSigs(new JavaFieldSigMask()));
+    }
+
+    private static JavaTypeQualifiedName qname(String name) {
+        return (JavaTypeQualifiedName) QualifiedNameFactory.ofString(name);
+    }
+}
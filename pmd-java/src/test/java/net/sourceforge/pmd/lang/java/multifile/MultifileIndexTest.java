@@ -0,0 +1,178 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.multifile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.RuleContext;
+import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.RulesetsFactoryUtils;
+import net.sourceforge.pmd.ThreadSafeReportListener;
+import net.sourceforge.pmd.cache.MultifileIndexCache;
+import net.sourceforge.pmd.lang.java.ast.ASTClassOrInterfaceDeclaration;
+import net.sourceforge.pmd.lang.java.ast.ASTCompilationUnit;
+import net.sourceforge.pmd.lang.java.qname.JavaTypeQualifiedName;
+import net.sourceforge.pmd.lang.java.qname.QualifiedNameFactory;
+import net.sourceforge.pmd.lang.java.rule.AbstractJavaRule;
+import net.sourceforge.pmd.processor.AbstractPMDProcessor;
+import net.sourceforge.pmd.processor.MonoThreadProcessor;
+import net.sourceforge.pmd.processor.MultiThreadProcessor;
+import net.sourceforge.pmd.renderers.Renderer;
+import net.sourceforge.pmd.stat.Metric;
+import net.sourceforge.pmd.util.datasource.DataSource;
+import net.sourceforge.pmd.util.datasource.FileDataSource;
+import net.sourceforge.pmd.util.datasource.ReaderDataSource;
+
+/**
+ * Tests, that the multifile data of all files is gathered before any rule is applied.
+ */
+public class MultifileIndexTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private PMDConfiguration configuration;
+    private List<DataSource> files;
+
+    @Before
+    public void setUp() throws IOException {
+        File ruleset = tempFolder.newFile("ruleset.xml");
+        write(ruleset, "<?xml version=\"1.0\"?>\n"
+                + "<ruleset name=\"Multifile\" xmlns=\"http://pmd.sourceforge.net/ruleset/2.0.0\">\n"
+                + "  <description>Multifile</description>\n"
+                + "  <rule name=\"OtherClassMissing\" language=\"java\" message=\"Other class missing\"\n"
+                + "        class=\"" + OtherClassMissingRule.class.getName() + "\"/>\n"
+                + "</ruleset>\n");
+
+        configuration = new PMDConfiguration();
+        configuration.setRuleSets(ruleset.getPath());
+        configuration.setIgnoreIncrementalAnalysis(true);
+
+        files = new ArrayList<>();
+        for (String className : new String[] {"First", "Second"}) {
+            File file = tempFolder.newFile(className + ".java");
+            write(file, "package multifile; public class " + className + " { void foo() { } }");
+            files.add(new FileDataSource(file));
+        }
+    }
+
+    @Test
+    public void testRulesSeeAllFilesMonoThread() {
+        configuration.setThreads(0);
+        assertEquals(0, countViolations(new MonoThreadProcessor(configuration)));
+    }
+
+    @Test
+    public void testRulesSeeAllFilesMultiThread() {
+        configuration.setThreads(2);
+        assertEquals(0, countViolations(new MultiThreadProcessor(configuration)));
+    }
+
+    @Test
+    public void testReaderIsIndexedAndProcessed() {
+        configuration.setThreads(0);
+        files.clear();
+        files.add(new ReaderDataSource(new StringReader("package multifile; public class First { }"), "First.java"));
+        // the reader can only be read once, but the missing class is still reported
+        assertEquals(1, countViolations(new MonoThreadProcessor(configuration)));
+    }
+
+    @Test
+    public void testIndexIsNotSharedBetweenAnalyses() {
+        configuration.setThreads(0);
+        assertEquals(0, countViolations(new MonoThreadProcessor(configuration)));
+
+        // the data of the removed file must not be left over from the first analysis
+        files.remove(1);
+        assertEquals(1, countViolations(new MonoThreadProcessor(configuration)));
+    }
+
+    @Test
+    public void testIndexIsStoredNextToAnalysisCache() throws IOException {
+        File cacheFile = new File(tempFolder.getRoot(), "pmd.cache");
+        configuration.setIgnoreIncrementalAnalysis(false);
+        configuration.setAnalysisCacheLocation(cacheFile.getPath());
+        configuration.setThreads(0);
+        assertEquals(0, countViolations(new MonoThreadProcessor(configuration)));
+        configuration.getAnalysisCache().persist();
+
+        // only the changed file is parsed, the other one is restored
+        File first = new File(files.get(0).getNiceFileName(false, null));
+        write(first, "package multifile; public class First { void bar() { } }");
+        configuration.setAnalysisCacheLocation(cacheFile.getPath());
+        assertEquals(0, countViolations(new MonoThreadProcessor(configuration)));
+        configuration.getAnalysisCache().persist();
+
+        MultifileIndexCache index = new MultifileIndexCache(new File(cacheFile.getPath() + ".multifile"));
+        for (DataSource file : files) {
+            String fileName = file.getNiceFileName(false, null);
+            byte[] content = Files.readAllBytes(new File(fileName).toPath());
+            String version = configuration.getLanguageVersionOfFile(fileName).getTerseName();
+            assertNotNull(index.get(fileName, version, MultifileIndexCache.computeChecksum(content)));
+        }
+    }
+
+    private int countViolations(AbstractPMDProcessor processor) {
+        final AtomicInteger violations = new AtomicInteger();
+        RuleContext ctx = new RuleContext();
+        ctx.getReport().addListener(new ThreadSafeReportListener() {
+            @Override
+            public void ruleViolationAdded(RuleViolation ruleViolation) {
+                violations.incrementAndGet();
+            }
+
+            @Override
+            public void metricAdded(Metric metric) {
+                // ignored
+            }
+        });
+        processor.processFiles(RulesetsFactoryUtils.defaultFactory(), files, ctx,
+                Collections.<Renderer>emptyList());
+        return violations.get();
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reports a violation, if the multifile data of the other class of the test is missing.
+     */
+    public static class OtherClassMissingRule extends AbstractJavaRule {
+
+        public OtherClassMissingRule() {
+            setMultifile(true);
+        }
+
+        @Override
+        public Object visit(ASTCompilationUnit node, Object data) {
+            String className = node.getFirstDescendantOfType(ASTClassOrInterfaceDeclaration.class).getSimpleName();
+            String otherClassName = "First".equals(className) ? "Second" : "First";
+            JavaTypeQualifiedName otherClass = (JavaTypeQualifiedName) QualifiedNameFactory.ofString("multifile." + otherClassName);
+            ProjectMirror mirror = ((JavaMultifileDataCodec) ((RuleContext) data).getMultifileData()).getProjectMirror();
+            if (mirror.getClassMirror(otherClass) == null) {
+                addViolation(data, node);
+            }
+            return data;
+        }
+    }
+}
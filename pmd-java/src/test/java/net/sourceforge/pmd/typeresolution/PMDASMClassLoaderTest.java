@@ -5,19 +5,37 @@
 package net.sourceforge.pmd.typeresolution;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.Collections;
 import java.util.Map;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
 
+import org.apache.commons.io.IOUtils;
 import org.junit.Before;
 import org.junit.Ignore;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import net.sourceforge.pmd.cache.AuxClasspathIndex;
 import net.sourceforge.pmd.lang.java.typeresolution.PMDASMClassLoader;
+import net.sourceforge.pmd.util.ClasspathClassLoader;
 
 public class PMDASMClassLoaderTest {
 
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
     private PMDASMClassLoader cl;
 
     @Before
@@ -57,6 +75,69 @@ public class PMDASMClassLoaderTest {
                 imports.get("ClassWithImportInnerOnDemand"));
     }
 
+    @Test
+    public void testAuxClasspathIndexIsReused() throws Exception {
+        String className = "net.sourceforge.pmd.typeresolution.ClassWithImportOnDemand";
+        String classFile = className.replace('.', '/') + ".class";
+        File jar = tempFolder.newFile("aux.jar");
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+             InputStream in = getClass().getClassLoader().getResourceAsStream(classFile)) {
+            out.putNextEntry(new ZipEntry(classFile));
+            IOUtils.copy(in, out);
+        }
+        File indexFile = new File(tempFolder.getRoot(), "cache.auxclasspath");
+        Map<String, Long> jarChecksums = Collections.singletonMap(jar.toURI().toURL().toString(), 42L);
+
+        try (ClasspathClassLoader auxclasspath = new ClasspathClassLoader(Collections.singletonList(jar), null)) {
+            AuxClasspathIndex index = new AuxClasspathIndex(indexFile, 1L, jarChecksums, true);
+            auxclasspath.setIndex(index);
+            PMDASMClassLoader firstRun = PMDASMClassLoader.getInstance(auxclasspath);
+            assertEquals("java.util.List", firstRun.getImportedClasses(className).get("List"));
+            try {
+                firstRun.loadClass("that.clazz.doesnot.Exist");
+                fail();
+            } catch (ClassNotFoundException e) {
+                // expected
+            }
+            index.persist();
+        }
+
+        // the jar is not read again, the index knows the imported classes and the missing class
+        try (ClasspathClassLoader emptyClasspath = new ClasspathClassLoader(Collections.<File>emptyList(), null)) {
+            AuxClasspathIndex index = new AuxClasspathIndex(indexFile, 1L, jarChecksums, true);
+            assertTrue(index.isMissing("that.clazz.doesnot.Exist"));
+            emptyClasspath.setIndex(index);
+            PMDASMClassLoader secondRun = PMDASMClassLoader.getInstance(emptyClasspath);
+            assertEquals("java.util.List", secondRun.getImportedClasses(className).get("List"));
+            assertFalse(secondRun.couldResolve("that.clazz.doesnot.Exist"));
+        }
+    }
+
+    @Test
+    public void testLoadersOfConcurrentAnalysesArePooled() throws Exception {
+        String className = "net.sourceforge.pmd.typeresolution.ClassWithImportOnDemand";
+        String classFile = className.replace('.', '/') + ".class";
+        File jar = tempFolder.newFile("aux.jar");
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+             InputStream in = getClass().getClassLoader().getResourceAsStream(classFile)) {
+            out.putNextEntry(new ZipEntry(classFile));
+            IOUtils.copy(in, out);
+        }
+
+        try (ClasspathClassLoader first = new ClasspathClassLoader(Collections.singletonList(jar), null);
+             ClasspathClassLoader second = new ClasspathClassLoader(Collections.singletonList(jar), null)) {
+            PMDASMClassLoader firstLoader = PMDASMClassLoader.getInstance(first);
+            PMDASMClassLoader secondLoader = PMDASMClassLoader.getInstance(second);
+            assertNotSame(firstLoader, secondLoader);
+            // the analyses don't evict each other
+            assertSame(firstLoader, PMDASMClassLoader.getInstance(first));
+            assertSame(secondLoader, PMDASMClassLoader.getInstance(second));
+
+            // the class is only read once from the jar
+            assertSame(firstLoader.getImportedClasses(className), secondLoader.getImportedClasses(className));
+        }
+    }
+
     /**
      * Unit test for bug 3546093.
      *